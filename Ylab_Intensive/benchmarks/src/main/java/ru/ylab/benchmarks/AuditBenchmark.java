@@ -0,0 +1,60 @@
+package ru.ylab.benchmarks;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.enums.Action;
+import main.java.ru.ylab.repository.AuditLogRepository;
+import main.java.ru.ylab.service.AuditService;
+import main.java.ru.ylab.service.impl.AsyncAuditServiceImpl;
+import main.java.ru.ylab.service.impl.AuditServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость записи аудита для вызывающего потока: синхронная запись и асинхронная через кольцевой буфер.
+ * <p>
+ * Журнал создаётся заново на каждую итерацию, чтобы накопленные записи не искажали следующие замеры.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class AuditBenchmark {
+
+    /**
+     * {@code sync} — {@link AuditServiceImpl}, {@code async} — {@link AsyncAuditServiceImpl}.
+     */
+    @Param({"sync", "async"})
+    private String auditImpl;
+
+    private AuditService auditService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        AuditLogRepository repository = new AuditLogRepository(new AppData());
+        auditService = "async".equals(auditImpl)
+                ? new AsyncAuditServiceImpl(repository)
+                : new AuditServiceImpl(repository);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        if (auditService instanceof AsyncAuditServiceImpl asyncAudit) {
+            asyncAudit.close();
+        }
+    }
+
+    @Benchmark
+    public void log() {
+        auditService.log("admin", Action.SEARCH, "Поиск: pro");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void logContended() {
+        auditService.log("admin", Action.SEARCH, "Поиск: pro");
+    }
+}
@@ -0,0 +1,84 @@
+package ru.ylab.benchmarks;
+
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.service.CacheService;
+import main.java.ru.ylab.service.impl.CacheServiceImpl;
+import main.java.ru.ylab.service.impl.ShardedCacheServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение из кэша с заданной долей попаданий: однопоточное и при конкуренции четырёх потоков.
+ * <p>
+ * В кэш заранее кладутся {@code keySpace} ключей (ёмкость вдвое больше, вытеснения нет);
+ * промах — запрос ключа, которого в кэше никогда не было.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+    private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int SHARDS = 16;
+
+    /**
+     * {@code lru} — {@link CacheServiceImpl}, {@code sharded} — {@link ShardedCacheServiceImpl}.
+     */
+    @Param({"lru", "sharded"})
+    private String cacheImpl;
+
+    @Param({"0.5", "0.9", "0.99"})
+    private double hitRatio;
+
+    @Param({"100", "10000"})
+    private int keySpace;
+
+    private CacheService cache;
+    private String[] hitKeys;
+    private String[] missKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = "sharded".equals(cacheImpl)
+                ? new ShardedCacheServiceImpl(TTL_MILLIS, keySpace * 2, SHARDS)
+                : new CacheServiceImpl(TTL_MILLIS, keySpace * 2);
+        List<Product> value = CatalogDataGenerator.generate(20).getProducts().values().stream().toList();
+        hitKeys = new String[keySpace];
+        missKeys = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            hitKeys[i] = "search_product_" + i;
+            missKeys[i] = "search_missing_" + i;
+            cache.put(hitKeys[i], value);
+        }
+    }
+
+    /**
+     * Свой генератор у каждого потока, чтобы выбор ключа не был точкой конкуренции.
+     */
+    @State(Scope.Thread)
+    public static class KeyChooser {
+        private final SplittableRandom random = new SplittableRandom(CatalogDataGenerator.DEFAULT_SEED);
+    }
+
+    @Benchmark
+    public List<Product> get(KeyChooser chooser) {
+        return lookup(chooser.random);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Product> getContended(KeyChooser chooser) {
+        return lookup(chooser.random);
+    }
+
+    private List<Product> lookup(SplittableRandom random) {
+        String[] keys = random.nextDouble() < hitRatio ? hitKeys : missKeys;
+        return cache.get(keys[random.nextInt(keys.length)]);
+    }
+}
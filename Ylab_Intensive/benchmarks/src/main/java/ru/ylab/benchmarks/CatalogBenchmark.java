@@ -0,0 +1,91 @@
+package ru.ylab.benchmarks;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.OffHeapProductMap;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.ProductPage;
+import main.java.ru.ylab.model.ProductQuery;
+import main.java.ru.ylab.repository.ProductRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск и фильтры {@link ProductRepository} на каталогах разного размера.
+ * <p>
+ * Индексы строятся в {@code @Setup}, поэтому измеряются только запросы.
+ * Число потоков задаётся параметром JMH {@code -t}, например {@code -t 4}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class CatalogBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int catalogSize;
+
+    /**
+     * {@code heap} — {@code IntProductMap}, {@code offheap} — {@link OffHeapProductMap}.
+     */
+    @Param({"heap", "offheap"})
+    private String productStorage;
+
+    private ProductRepository repository;
+    private ProductQuery compositeQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AppData data = CatalogDataGenerator.generate(catalogSize);
+        if ("offheap".equals(productStorage)) {
+            data.moveProductsTo(new OffHeapProductMap(data.getCategories(), data.getBrands()));
+        }
+        repository = new ProductRepository(data);
+        repository.getAllCategories(); // первый запрос строит индексы
+        compositeQuery = ProductQuery.all()
+                .withCategory("Electronics")
+                .withBrand("Apple")
+                .withPriceRange(500.0, 1500.0)
+                .withNameContaining("pro");
+    }
+
+    @Benchmark
+    public List<Product> searchByName() {
+        return repository.searchByName("pro");
+    }
+
+    @Benchmark
+    public ProductPage searchByNameFirstPage() {
+        return repository.searchByNamePage("pro", ProductPage.FIRST_PAGE, 20);
+    }
+
+    @Benchmark
+    public List<Product> findByCategory() {
+        return repository.findByCategory("Shoes");
+    }
+
+    @Benchmark
+    public List<Product> findByPriceRange() {
+        return repository.findByPriceRange(100.0, 200.0);
+    }
+
+    @Benchmark
+    public List<Product> compositeQuery() {
+        return repository.query(compositeQuery);
+    }
+
+    @Benchmark
+    public Map<String, Integer> categoryFacets() {
+        return repository.countByCategory("Apple");
+    }
+
+    @Benchmark
+    public Product findById() {
+        return repository.findById(catalogSize / 2).orElse(null);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.ylab.benchmarks;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.repository.ProductRepository;
+import main.java.ru.ylab.service.impl.UserServiceImpl;
+
+import java.util.SplittableRandom;
+
+/**
+ * Синтетический каталог для бенчмарков.
+ * <p>
+ * Товары строятся из тех же десяти образцов, что и тестовые данные {@code Main.initializeTestData}
+ * (те же категории, бренды и порядок цен): к названию добавляется номер, цена случайно отклоняется
+ * от образца не больше чем на 50%. Генератор детерминирован — одинаковый {@code seed}
+ * даёт одинаковый каталог во всех форках и запусках.
+ * </p>
+ */
+public final class CatalogDataGenerator {
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final Product[] TEMPLATES = {
+            new Product(0, "MacBook Pro 16", "Electronics", "Apple", 2499.99, "Мощный ноутбук для профессионалов"),
+            new Product(0, "iPhone 15 Pro", "Electronics", "Apple", 999.99, "Флагманский смартфон"),
+            new Product(0, "Dell XPS 15", "Electronics", "Dell", 1799.99, "Ультрабук для работы"),
+            new Product(0, "Samsung Galaxy S24", "Electronics", "Samsung", 899.99, "Топовый Android-смартфон"),
+            new Product(0, "Nike Air Max", "Shoes", "Nike", 129.99, "Спортивные кроссовки"),
+            new Product(0, "Adidas Ultraboost", "Shoes", "Adidas", 179.99, "Беговые кроссовки"),
+            new Product(0, "Sony WH-1000XM5", "Electronics", "Sony", 399.99, "Наушники с шумоподавлением"),
+            new Product(0, "Levi's 501 Jeans", "Clothing", "Levi's", 89.99, "Классические джинсы"),
+            new Product(0, "The North Face Jacket", "Clothing", "The North Face", 249.99, "Зимняя куртка"),
+            new Product(0, "Kindle Paperwhite", "Electronics", "Amazon", 139.99, "Электронная книга"),
+    };
+
+    private CatalogDataGenerator() {
+    }
+
+    /**
+     * Данные с {@code productCount} товарами и тестовыми пользователями {@code admin} и {@code user1}.
+     */
+    public static AppData generate(int productCount, long seed) {
+        AppData data = new AppData();
+        UserServiceImpl userService = new UserServiceImpl(data);
+        userService.register("admin", "admin123");
+        userService.register("user1", "password");
+
+        ProductRepository repository = new ProductRepository(data);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < productCount; i++) {
+            Product template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+            double price = Math.round(template.getPrice() * (0.5 + random.nextDouble()) * 100) / 100.0;
+            repository.add(new Product(0, template.getName() + " #" + i, template.getCategory(),
+                    template.getBrand(), price, template.getDescription()));
+        }
+        return data;
+    }
+
+    public static AppData generate(int productCount) {
+        return generate(productCount, DEFAULT_SEED);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.ylab.benchmarks;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.service.DataStorage;
+import main.java.ru.ylab.service.impl.BinaryDataStorageImpl;
+import main.java.ru.ylab.service.impl.DataStorageImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Сохранение и загрузка полного снимка: Java-сериализация и бинарный колоночный формат.
+ * <p>
+ * Файлы пишутся во временный каталог, который удаляется после прогона.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class StorageBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int catalogSize;
+
+    /**
+     * {@code serialized} — {@link DataStorageImpl}, {@code binary} — {@link BinaryDataStorageImpl}.
+     */
+    @Param({"serialized", "binary"})
+    private String format;
+
+    private Path directory;
+    private DataStorage storage;
+    private AppData data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ylab-storage-bench");
+        String dataFile = directory.resolve("marketplace_data").toString();
+        String backupFile = directory.resolve("marketplace_data_backup").toString();
+        storage = "binary".equals(format)
+                ? new BinaryDataStorageImpl(dataFile, backupFile)
+                : new DataStorageImpl(dataFile, backupFile);
+        data = CatalogDataGenerator.generate(catalogSize);
+        storage.save(data); // load читает этот файл
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void save() {
+        storage.save(data);
+    }
+
+    @Benchmark
+    public AppData load() {
+        return storage.load();
+    }
+}
@@ -1,30 +1,41 @@
+import main.java.ru.ylab.metrics.MetricsRegistry;
 import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRetentionPolicy;
+import main.java.ru.ylab.model.CacheRefreshPolicy;
+import main.java.ru.ylab.model.OffHeapProductMap;
 import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.repository.AuditArchive;
+import main.java.ru.ylab.repository.AuditLogRepository;
 import main.java.ru.ylab.repository.ProductRepository;
 import main.java.ru.ylab.service.AuditService;
 import main.java.ru.ylab.service.CacheService;
 import main.java.ru.ylab.service.CatalogService;
+import main.java.ru.ylab.service.DataStorage;
 import main.java.ru.ylab.service.UserService;
 import main.java.ru.ylab.service.impl.*;
 import main.java.ru.ylab.ui.ConsoleMenu;
 
-
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Scanner;
 
 public class Main {
 
     private static AppData appData;
-    private static DataStorageImpl dataStorage;
+    private static DataStorage dataStorage;
+    private static MetricsRegistry metrics;
 
     public static void main(String[] args) {
         System.out.println("==============================================");
         System.out.println("  Маркетплейс: Product Catalog Service");
         System.out.println("==============================================\n");
 
-        dataStorage = new DataStorageImpl();
+        metrics = createMetricsRegistry();
+        dataStorage = metered(createDataStorage());
 
         appData = dataStorage.load();
-
+        configureProductStorage();
 
         if (appData.getProducts().isEmpty()) {
             System.out.println("Первый запуск - создаём тестовые данные...\n");
@@ -33,30 +44,179 @@ public class Main {
 
         // Инициализация всех компонентов
         ProductRepository productRepository = new ProductRepository(appData);
-        AuditService auditService = new AuditServiceImpl(appData);
+        AuditLogRepository auditLogRepository = createAuditLogRepository();
+        AuditService rawAuditService = createAuditService(auditLogRepository);
+        AuditService auditService = metrics != null
+                ? new MeteredAuditServiceImpl(rawAuditService, metrics)
+                : rawAuditService;
         UserService userService = new UserServiceImpl(appData);
-        CacheService cacheService = new CacheServiceImpl();
+        CacheService cacheService = createCacheService(productRepository);
         CatalogService catalogService = new CatalogServiceImpl(productRepository, auditService, cacheService);
+        if (metrics != null) {
+            catalogService = new MeteredCatalogServiceImpl(catalogService, metrics);
+        }
 
 
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n\nСохранение данных перед выходом...");
+            if (rawAuditService instanceof AsyncAuditServiceImpl asyncAudit) {
+                asyncAudit.close();
+            }
             dataStorage.save(appData);
+            if (cacheService instanceof TieredCacheServiceImpl tieredCache) {
+                tieredCache.close();
+            }
             System.out.println("Данные сохранены. До свидания!");
+            dumpMetrics();
         }));
 
         // Запуск консольного меню
         Scanner scanner = new Scanner(System.in);
 
         try (scanner) {
-            ConsoleMenu menu = new ConsoleMenu(catalogService, userService, auditService, scanner, cacheService);
+            ConsoleMenu menu = new ConsoleMenu(catalogService, userService, auditService, scanner, cacheService, metrics);
             menu.start();
         }
 
         System.out.println("\nСпасибо за использование системы! До свидания!");
     }
 
+    /**
+     * Выбор хранилища: {@code -Dstorage.mode=journal} включает журнал изменений со снимками,
+     * {@code -Dstorage.mode=binary} — компактный бинарный снимок,
+     * {@code -Dstorage.mode=mapped} — тот же снимок, отображённый в память с ленивым чтением товаров,
+     * {@code -Dstorage.mode=checkpoint} — фоновое сохранение изменений контрольными точками
+     * (интервал {@code -Dstorage.flush.interval} в мс, порог {@code -Dstorage.flush.threshold}),
+     * по умолчанию состояние целиком сериализуется при выходе.
+     * Режим {@code mapped} несовместим с {@code -Dproduct.storage=offheap}.
+     */
+    private static DataStorage createDataStorage() {
+        String mode = System.getProperty("storage.mode", "");
+        return switch (mode.toLowerCase()) {
+            case "journal" -> new JournalDataStorageImpl();
+            case "binary" -> new BinaryDataStorageImpl();
+            case "mapped" -> {
+                if (offHeapProducts()) {
+                    // перенос вне кучи декодирует весь снимок и теряет ленивое чтение из файла
+                    throw new IllegalArgumentException(
+                            "-Dproduct.storage=offheap нельзя совмещать с -Dstorage.mode=mapped");
+                }
+                yield new MappedDataStorageImpl();
+            }
+            case "checkpoint" -> new CheckpointDataStorageImpl(
+                    Long.getLong("storage.flush.interval", 5_000),
+                    Integer.getInteger("storage.flush.threshold", 1_000));
+            default -> new DataStorageImpl();
+        };
+    }
+
+    /**
+     * Метрики вызовов каталога, аудита и хранилища включены по умолчанию;
+     * {@code -Dmetrics.enabled=false} отключает их.
+     */
+    private static MetricsRegistry createMetricsRegistry() {
+        return Boolean.parseBoolean(System.getProperty("metrics.enabled", "true")) ? new MetricsRegistry() : null;
+    }
+
+    private static DataStorage metered(DataStorage storage) {
+        return metrics != null ? new MeteredDataStorageImpl(storage, metrics) : storage;
+    }
+
+    /**
+     * При выходе метрики сохраняются в JSON, если задан {@code -Dmetrics.dump=<файл>}.
+     */
+    private static void dumpMetrics() {
+        String file = System.getProperty("metrics.dump");
+        if (metrics == null || file == null) {
+            return;
+        }
+        try {
+            metrics.writeJson(Path.of(file));
+            System.out.println("Метрики сохранены в " + file);
+        } catch (IOException e) {
+            System.err.println("Ошибка сохранения метрик: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Выбор хранилища товаров в памяти: {@code -Dproduct.storage=offheap} переносит товары
+     * в колоночное хранилище вне кучи (для очень больших каталогов), по умолчанию — массив в куче.
+     */
+    private static void configureProductStorage() {
+        if (offHeapProducts()) {
+            appData.moveProductsTo(new OffHeapProductMap(appData.getCategories(), appData.getBrands()));
+        }
+    }
+
+    private static boolean offHeapProducts() {
+        return "offheap".equalsIgnoreCase(System.getProperty("product.storage"));
+    }
+
+    /**
+     * Выбор реализации кэша: {@code -Dcache.impl=sharded} включает сегментированный
+     * потокобезопасный кэш, по умолчанию используется LRU на {@code LinkedHashMap}.
+     * <p>
+     * {@code -Dcache.refresh.ahead} (мс до конца TTL) и {@code -Dcache.stale.window} (мс после TTL)
+     * задают фоновую перезагрузку записей; по умолчанию ({@code 0}) оба режима выключены.
+     * </p>
+     * <p>
+     * Размер кэша ограничен количеством записей {@code -Dcache.max.entries} (по умолчанию 100)
+     * и, если задан, бюджетом памяти {@code -Dcache.max.bytes} (по оценке веса результатов).
+     * </p>
+     * <p>
+     * {@code -Dcache.l2.bytes} включает второй уровень кэша вне кучи такого размера,
+     * {@code -Dcache.l2.file} — его сохранение между запусками.
+     * </p>
+     */
+    private static CacheService createCacheService(ProductRepository repository) {
+        long ttlMillis = 1000 * 60 * 5; // 5 минут
+        int maxSize = Integer.getInteger("cache.max.entries", 100);
+        long maxWeightBytes = Long.getLong("cache.max.bytes", CacheService.UNLIMITED_WEIGHT);
+        CacheRefreshPolicy refreshPolicy = new CacheRefreshPolicy(
+                Long.getLong("cache.refresh.ahead", 0),
+                Long.getLong("cache.stale.window", 0));
+        CacheService cache = "sharded".equalsIgnoreCase(System.getProperty("cache.impl"))
+                ? new ShardedCacheServiceImpl(ttlMillis, maxSize, maxWeightBytes, 16, refreshPolicy)
+                : new CacheServiceImpl(ttlMillis, maxSize, maxWeightBytes, refreshPolicy);
+
+        long l2Bytes = Long.getLong("cache.l2.bytes", 0);
+        if (l2Bytes <= 0) {
+            return cache;
+        }
+        String l2File = System.getProperty("cache.l2.file");
+        return new TieredCacheServiceImpl(cache, repository, l2Bytes, refreshPolicy,
+                l2File != null ? Path.of(l2File) : null);
+    }
+
+    /**
+     * Политика хранения аудита: {@code -Daudit.retention.days} и/или {@code -Daudit.retention.max}
+     * ограничивают записи в памяти, более старые переносятся в сжатые сегменты каталога {@code audit_archive}.
+     */
+    private static AuditLogRepository createAuditLogRepository() {
+        Long days = Long.getLong("audit.retention.days");
+        AuditRetentionPolicy retention = new AuditRetentionPolicy(
+                days != null ? Duration.ofDays(days) : null,
+                Integer.getInteger("audit.retention.max", 0));
+        if (!retention.isLimited()) {
+            return new AuditLogRepository(appData);
+        }
+        return new AuditLogRepository(appData, retention, new AuditArchive(Path.of("audit_archive")));
+    }
+
+    /**
+     * Выбор реализации аудита: {@code -Daudit.async=true} включает асинхронную запись через кольцевой буфер
+     * (ёмкость {@code -Daudit.buffer}, поведение при переполнении {@code -Daudit.backpressure=BLOCK|DROP|CALLER_RUNS}).
+     */
+    private static AuditService createAuditService(AuditLogRepository repository) {
+        if (!Boolean.getBoolean("audit.async")) {
+            return new AuditServiceImpl(repository);
+        }
+        AsyncAuditServiceImpl.Backpressure backpressure = AsyncAuditServiceImpl.Backpressure.valueOf(
+                System.getProperty("audit.backpressure", "BLOCK").toUpperCase());
+        return new AsyncAuditServiceImpl(repository, Integer.getInteger("audit.buffer", 65_536), backpressure);
+    }
+
     private static void initializeTestData() {
 
         UserServiceImpl userService = new UserServiceImpl(appData);
@@ -0,0 +1,161 @@
+package main.java.ru.ylab.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Реестр метрик операций ({@code catalog.searchByName}, {@code audit.log}, {@code storage.save} ...).
+ * <p>
+ * {@link #measure(String, Supplier)} замеряет время вызова через {@link System#nanoTime()} и,
+ * если JVM это поддерживает, память, выделенную вызывающим потоком
+ * ({@code com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}).
+ * Запись в гистограммы без блокировок, поэтому замер добавляет к вызову порядка сотни наносекунд.
+ * </p>
+ * <p>
+ * {@link #snapshot()} сводит метрики в p50/p99/p999, пропускную способность и скорость выделения памяти,
+ * {@link #toJson()} и {@link #writeJson(Path)} отдают их в машиночитаемом виде.
+ * </p>
+ */
+public class MetricsRegistry {
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private volatile long startNanos = System.nanoTime();
+
+    public OperationMetrics operation(String name) {
+        return operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    /**
+     * Выполняет вызов и записывает его задержку, выделенную память и исключение, если оно было.
+     */
+    public <T> T measure(String name, Supplier<T> call) {
+        OperationMetrics metrics = operation(name);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            metrics.record(elapsed, allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore, failed);
+        }
+    }
+
+    public void measure(String name, Runnable call) {
+        measure(name, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Обнуляет все метрики и время отсчёта пропускной способности.
+     */
+    public void reset() {
+        operations.clear();
+        startNanos = System.nanoTime();
+    }
+
+    public double getUptimeSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    /**
+     * Сводки по всем операциям, упорядоченные по имени.
+     */
+    public List<OperationSnapshot> snapshot() {
+        double seconds = Math.max(getUptimeSeconds(), 1e-9);
+        List<OperationSnapshot> result = new ArrayList<>();
+        for (OperationMetrics metrics : operations.values()) {
+            LatencyHistogram.Snapshot latency = metrics.latencySnapshot();
+            long count = latency.getCount();
+            long allocated = metrics.getAllocatedBytes();
+            result.add(new OperationSnapshot(metrics.getName(),
+                    count,
+                    metrics.getErrors(),
+                    count / seconds,
+                    latency.percentile(0.50),
+                    latency.percentile(0.99),
+                    latency.percentile(0.999),
+                    latency.getMaxNanos(),
+                    latency.getMeanNanos(),
+                    THREADS == null ? -1 : count == 0 ? 0 : allocated / count,
+                    THREADS == null ? -1 : allocated / seconds));
+        }
+        result.sort(Comparator.comparing(OperationSnapshot::name));
+        return result;
+    }
+
+    /**
+     * Снимок метрик в JSON: {@code {"uptimeSeconds": ..., "operations": [{"name": ..., "count": ..., ...}]}}.
+     * Задержки в наносекундах, скорость выделения — в байтах в секунду.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\n  \"uptimeSeconds\": ").append(number(getUptimeSeconds()))
+                .append(",\n  \"operations\": [");
+        List<OperationSnapshot> snapshots = snapshot();
+        for (int i = 0; i < snapshots.size(); i++) {
+            OperationSnapshot s = snapshots.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"name\": \"").append(escape(s.name())).append('"')
+                    .append(", \"count\": ").append(s.count())
+                    .append(", \"errors\": ").append(s.errors())
+                    .append(", \"throughputPerSecond\": ").append(number(s.throughputPerSecond()))
+                    .append(", \"p50Nanos\": ").append(s.p50Nanos())
+                    .append(", \"p99Nanos\": ").append(s.p99Nanos())
+                    .append(", \"p999Nanos\": ").append(s.p999Nanos())
+                    .append(", \"maxNanos\": ").append(s.maxNanos())
+                    .append(", \"meanNanos\": ").append(number(s.meanNanos()))
+                    .append(", \"allocatedBytesPerOp\": ").append(s.allocatedBytesPerOp())
+                    .append(", \"allocationBytesPerSecond\": ").append(number(s.allocationRate()))
+                    .append('}');
+        }
+        json.append(snapshots.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return json.toString();
+    }
+
+    public void writeJson(Path file) throws IOException {
+        Files.writeString(file, toJson(), StandardCharsets.UTF_8);
+    }
+
+    // ==================== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ====================
+
+    /**
+     * Байты, выделенные текущим потоком с его запуска, или {@code -1}, если подсчёт недоступен.
+     */
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
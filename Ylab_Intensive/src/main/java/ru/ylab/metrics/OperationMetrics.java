@@ -0,0 +1,47 @@
+package main.java.ru.ylab.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики одной операции: гистограмма задержек, число ошибок и выделенная память.
+ * Все счётчики обновляются без блокировок.
+ */
+public final class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param allocated байты, выделенные вызывающим потоком за время операции, или {@code -1}, если неизвестно
+     */
+    void record(long elapsedNanos, long allocated, boolean failed) {
+        latency.record(elapsedNanos);
+        if (allocated > 0) {
+            allocatedBytes.add(allocated);
+        }
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    LatencyHistogram.Snapshot latencySnapshot() {
+        return latency.snapshot();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+}
@@ -0,0 +1,28 @@
+package main.java.ru.ylab.metrics;
+
+/**
+ * Сводка по операции на момент снимка.
+ *
+ * @param count                вызовов с момента запуска (или сброса)
+ * @param errors               вызовов, завершившихся исключением
+ * @param throughputPerSecond  вызовов в секунду за то же время
+ * @param p50Nanos             медиана задержки
+ * @param p99Nanos             99-й перцентиль задержки
+ * @param p999Nanos            99.9-й перцентиль задержки
+ * @param maxNanos             наибольшая задержка
+ * @param meanNanos            средняя задержка
+ * @param allocatedBytesPerOp  в среднем выделено памяти за вызов ({@code -1}, если JVM не поддерживает подсчёт)
+ * @param allocationRate       байт в секунду, выделенных этой операцией
+ */
+public record OperationSnapshot(String name,
+                                long count,
+                                long errors,
+                                double throughputPerSecond,
+                                long p50Nanos,
+                                long p99Nanos,
+                                long p999Nanos,
+                                long maxNanos,
+                                double meanNanos,
+                                long allocatedBytesPerOp,
+                                double allocationRate) {
+}
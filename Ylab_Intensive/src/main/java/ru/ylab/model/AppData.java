@@ -1,12 +1,16 @@
 package main.java.ru.ylab.model;
 
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 public class AppData implements Serializable {
@@ -14,22 +18,105 @@ public class AppData implements Serializable {
     private static final long serialVersionUID = 1L;
 
     // Все данные приложения
-    private final Map<Integer, Product> products;
+    private volatile Map<Integer, Product> products;
     private final Map<String, User> users;
     private final List<AuditRecord> auditRecords;
     private int nextProductId;
 
+    // Словари категорий и брендов (не сериализуются: общие строки товаров и так пишутся в поток один раз)
+    private final transient StringDictionary categories = new StringDictionary();
+    private final transient StringDictionary brands = new StringDictionary();
+
+    // Подписчики на изменения (не сериализуются)
+    private final transient List<DataChangeListener> listeners = new CopyOnWriteArrayList<>();
+
     public AppData() {
-        this.products = new HashMap<>();
-        this.users = new HashMap<>();
-        this.auditRecords = new ArrayList<>();
+        this.products = new IntProductMap();
+        this.users = new ConcurrentHashMap<>();
+        this.auditRecords = Collections.synchronizedList(new ArrayList<>());
+        this.nextProductId = 1;
+    }
+
+    /**
+     * Данные с заданным хранилищем товаров (например, отображённым в память снимком).
+     */
+    public AppData(Map<Integer, Product> products) {
+        this.products = products;
+        this.users = new ConcurrentHashMap<>();
+        this.auditRecords = Collections.synchronizedList(new ArrayList<>());
         this.nextProductId = 1;
     }
 
+    private AppData(AppData loaded) {
+        this.products = loaded.products instanceof IntProductMap
+                ? loaded.products
+                : new IntProductMap(loaded.products);
+        for (Product product : List.copyOf(products.values())) {
+            Product interned = internAttributes(product);
+            if (interned != product) {
+                products.put(interned.getId(), interned);
+            }
+        }
+        this.users = new ConcurrentHashMap<>(loaded.users);
+        this.auditRecords = Collections.synchronizedList(new ArrayList<>(loaded.auditRecords));
+        this.nextProductId = loaded.nextProductId;
+    }
+
+    /**
+     * Сериализованная копия синхронизированного списка ({@code writeReplace}) использует собственный монитор,
+     * поэтому запись аудита на время сериализации блокируем явно.
+     */
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        synchronized (auditRecords) {
+            out.defaultWriteObject();
+        }
+    }
+
+    /**
+     * Данные, сохранённые старыми версиями, содержат несинхронизированные коллекции
+     * (и {@code HashMap} товаров) — после десериализации переносим их в потокобезопасные
+     * и в {@link IntProductMap}. Категории и бренды товаров заменяются общими строками словарей.
+     */
+    @Serial
+    private Object readResolve() {
+        return new AppData(this);
+    }
+
     public Map<Integer, Product> getProducts() {
         return products;
     }
 
+    /**
+     * Переносит товары в другое хранилище (например, {@link OffHeapProductMap}) и дальше работает с ним.
+     * Вызывается до создания репозиториев: они запоминают ссылку на хранилище.
+     */
+    public synchronized void moveProductsTo(Map<Integer, Product> storage) {
+        storage.putAll(products);
+        products = storage;
+    }
+
+    public StringDictionary getCategories() {
+        return categories;
+    }
+
+    public StringDictionary getBrands() {
+        return brands;
+    }
+
+    /**
+     * Товар с категорией и брендом из словарей (тот же объект, если строки уже общие).
+     */
+    public Product internAttributes(Product product) {
+        String category = categories.intern(product.getCategory());
+        String brand = brands.intern(product.getBrand());
+        if (category == product.getCategory() && brand == product.getBrand()) {
+            return product;
+        }
+        return new Product(product.getId(), product.getName(), category, brand, product.getPrice(),
+                product.getDescription(), product.getCreatedDate(), product.getModifiedDate());
+    }
+
     public Map<String, User> getUsers() {
         return users;
     }
@@ -38,16 +125,69 @@ public class AppData implements Serializable {
         return auditRecords;
     }
 
-    public int getNextProductId() {
+    /**
+     * Добавляет записи аудита и уведомляет подписчиков под монитором списка аудита.
+     * Хранилище, которое под тем же монитором копирует список для снимка, получает точный срез:
+     * о записях в копии подписчики уже уведомлены, о записях вне её — ещё нет.
+     */
+    public void addAuditRecords(List<AuditRecord> records) {
+        synchronized (auditRecords) {
+            auditRecords.addAll(records);
+            for (AuditRecord record : records) {
+                fireAuditRecorded(record);
+            }
+        }
+    }
+
+    public synchronized int getNextProductId() {
         return nextProductId;
     }
 
-    public void setNextProductId(int nextProductId) {
+    public synchronized void setNextProductId(int nextProductId) {
         this.nextProductId = nextProductId;
     }
 
+    /**
+     * Атомарно выдаёт следующий свободный ID товара.
+     */
+    public synchronized int allocateProductId() {
+        return nextProductId++;
+    }
+
+    public void addChangeListener(DataChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(DataChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void fireProductSaved(Product product) {
+        for (DataChangeListener listener : listeners) {
+            listener.onProductSaved(product);
+        }
+    }
+
+    public void fireProductDeleted(int productId) {
+        for (DataChangeListener listener : listeners) {
+            listener.onProductDeleted(productId);
+        }
+    }
+
+    public void fireUserSaved(User user) {
+        for (DataChangeListener listener : listeners) {
+            listener.onUserSaved(user);
+        }
+    }
+
+    public void fireAuditRecorded(AuditRecord record) {
+        for (DataChangeListener listener : listeners) {
+            listener.onAuditRecorded(record);
+        }
+    }
+
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return String.format("AppData{products=%d, users=%d, auditRecords=%d, nextProductId=%d}",
                 products.size(), users.size(), auditRecords.size(), nextProductId);
     }
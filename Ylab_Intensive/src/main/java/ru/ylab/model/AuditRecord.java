@@ -20,7 +20,11 @@ public class AuditRecord implements Serializable {
     private final String details;
 
     public AuditRecord(String username, Action action, String details) {
-        this.timestamp = LocalDateTime.now();
+        this(LocalDateTime.now(), username, action, details);
+    }
+
+    public AuditRecord(LocalDateTime timestamp, String username, Action action, String details) {
+        this.timestamp = timestamp;
         this.username = username;
         this.action = action;
         this.details = details;
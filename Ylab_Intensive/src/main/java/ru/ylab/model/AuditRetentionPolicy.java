@@ -0,0 +1,33 @@
+package main.java.ru.ylab.model;
+
+import java.time.Duration;
+
+/**
+ * Политика хранения записей аудита в памяти.
+ * <p>
+ * Записи старше {@code maxAge} или сверх {@code maxRecords} переносятся в архив на диске.
+ * Перенос выполняется целыми сегментами по времени, начиная со старых, поэтому в памяти остаётся
+ * не больше {@code maxRecords} записей, но может остаться и заметно меньше: если переполнен
+ * текущий сегмент, в архив уходит и он.
+ * </p>
+ *
+ * @param maxAge     максимальный возраст записи в памяти ({@code null} — без ограничения)
+ * @param maxRecords максимальное количество записей в памяти ({@code 0} — без ограничения)
+ */
+public record AuditRetentionPolicy(Duration maxAge, int maxRecords) {
+
+    public static final AuditRetentionPolicy UNLIMITED = new AuditRetentionPolicy(null, 0);
+
+    public AuditRetentionPolicy {
+        if (maxAge != null && (maxAge.isNegative() || maxAge.isZero())) {
+            throw new IllegalArgumentException("Срок хранения должен быть положительным");
+        }
+        if (maxRecords < 0) {
+            throw new IllegalArgumentException("Количество записей не может быть отрицательным");
+        }
+    }
+
+    public boolean isLimited() {
+        return maxAge != null || maxRecords > 0;
+    }
+}
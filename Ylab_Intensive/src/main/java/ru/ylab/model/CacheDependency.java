@@ -0,0 +1,106 @@
+package main.java.ru.ylab.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Зависимость записи кэша от товаров каталога.
+ * <p>
+ * Результат запроса меняется только тогда, когда меняется товар, удовлетворяющий запросу,
+ * поэтому зависимость совпадает с условием самого запроса. При изменении товара
+ * инвалидируются только записи, для которых {@link #dependsOn(Product)} вернул {@code true}
+ * для старой или новой версии товара.
+ * </p>
+ */
+public interface CacheDependency extends Serializable {
+
+    /**
+     * Проверяет, может ли изменение товара повлиять на закэшированный результат.
+     *
+     * @param product изменённый товар (старая или новая версия)
+     * @return {@code true}, если запись нужно инвалидировать
+     */
+    boolean dependsOn(Product product);
+
+    static CacheDependency any() {
+        return Any.INSTANCE;
+    }
+
+    static CacheDependency category(String category) {
+        return new Category(category);
+    }
+
+    static CacheDependency brand(String brand) {
+        return new Brand(brand);
+    }
+
+    static CacheDependency priceRange(double minPrice, double maxPrice) {
+        return new PriceRange(minPrice, maxPrice);
+    }
+
+    static CacheDependency nameContains(String keyword) {
+        return new NameContains(keyword.toLowerCase());
+    }
+
+    /**
+     * Зависимость от товаров, удовлетворяющих всем условиям сразу (составной запрос).
+     */
+    static CacheDependency allOf(List<CacheDependency> dependencies) {
+        if (dependencies.isEmpty()) {
+            return any();
+        }
+        return dependencies.size() == 1 ? dependencies.get(0) : new AllOf(List.copyOf(dependencies));
+    }
+
+    /**
+     * Зависит от любого изменения каталога (например, список всех товаров).
+     */
+    enum Any implements CacheDependency {
+        INSTANCE;
+
+        @Override
+        public boolean dependsOn(Product product) {
+            return true;
+        }
+    }
+
+    record Category(String category) implements CacheDependency {
+        @Override
+        public boolean dependsOn(Product product) {
+            return category.equals(product.getCategory());
+        }
+    }
+
+    record Brand(String brand) implements CacheDependency {
+        @Override
+        public boolean dependsOn(Product product) {
+            return brand.equals(product.getBrand());
+        }
+    }
+
+    record PriceRange(double minPrice, double maxPrice) implements CacheDependency {
+        @Override
+        public boolean dependsOn(Product product) {
+            return product.getPrice() >= minPrice && product.getPrice() <= maxPrice;
+        }
+    }
+
+    record NameContains(String lowerKeyword) implements CacheDependency {
+        @Override
+        public boolean dependsOn(Product product) {
+            return product.getName().toLowerCase().contains(lowerKeyword);
+        }
+    }
+
+    record AllOf(List<CacheDependency> dependencies) implements CacheDependency {
+        @Override
+        public boolean dependsOn(Product product) {
+            for (CacheDependency dependency : dependencies) {
+                if (!dependency.dependsOn(product)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,22 +1,69 @@
 package main.java.ru.ylab.model;
 
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Запись кэша. Список неизменяемый, а товары — неизменяемые {@link Product},
+ * поэтому данные отдаются вызывающему коду без копирования.
+ * <p>
+ * {@code weight} — оценка занимаемой памяти в байтах, по ней кэш соблюдает бюджет памяти.
+ * Оценка сверху: товары считаются принадлежащими записи, хотя при хранении в куче они обычно
+ * общие с репозиторием (а товары из {@link OffHeapProductMap} создаются для каждого результата заново).
+ * Категория и бренд не учитываются — их строки общие для всех товаров ({@link StringDictionary}).
+ * </p>
+ */
 public record CacheEntry(List<Product> data, // Кэшированные данные
-                         long timestamp) {// Время создания записи (в миллисекундах)
-    public CacheEntry(List<Product> data, long timestamp) {
-        this.data = new ArrayList<>(data.stream().map(Product::copy).toList()); // Создаём КОПИЮ списка для безопасности
-        this.timestamp = timestamp;
+                         long timestamp, // Время создания записи (в миллисекундах)
+                         CacheDependency dependency, // От каких товаров зависит запись
+                         long weight) { // Оценка занимаемой памяти (в байтах)
+
+    private static final int ENTRY_OVERHEAD = 96; // запись, узел карты и ключ
+    private static final int PRODUCT_SHALLOW = 48; // заголовок, id, price и шесть ссылок
+    private static final int DATE_TIME = 72; // LocalDateTime с LocalDate и LocalTime
+    private static final int STRING_OVERHEAD = 40; // String и заголовок byte[]
+
+    public CacheEntry {
+        data = List.copyOf(data); // неизменяемый снимок списка, сами товары не копируются
     }
 
-    @Override
-    public List<Product> data() {
-        return data.stream().map(Product::copy).toList();
+    public CacheEntry(List<Product> data, long timestamp, CacheDependency dependency) {
+        this(data, timestamp, dependency, estimateWeight(data));
+    }
+
+    /**
+     * Оценивает память, занимаемую списком результатов, в байтах (64-битная JVM со сжатыми ссылками).
+     */
+    public static long estimateWeight(List<Product> data) {
+        long weight = ENTRY_OVERHEAD + align(16 + 4L * data.size()); // массив неизменяемого списка
+        for (Product product : data) {
+            weight += PRODUCT_SHALLOW + 2 * DATE_TIME
+                    + stringWeight(product.getName())
+                    + stringWeight(product.getDescription());
+        }
+        return weight;
+    }
+
+    private static long stringWeight(String value) {
+        if (value == null) {
+            return 0;
+        }
+        // Строка хранится в Latin-1, если все символы в него укладываются, иначе по два байта на символ
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING_OVERHEAD + align((long) value.length() * bytesPerChar);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
     }
 
     @Override
     public String toString() {
-        return String.format("timestamp: %d, data: %s", timestamp, data);
+        return String.format("timestamp: %d, dependency: %s, weight: %d, data: %s", timestamp, dependency, weight, data);
     }
 }
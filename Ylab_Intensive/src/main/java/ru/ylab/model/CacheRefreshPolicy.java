@@ -0,0 +1,48 @@
+package main.java.ru.ylab.model;
+
+/**
+ * Политика обновления записей кэша, загружаемых через загрузчик.
+ * <p>
+ * Запись моложе {@code ttl - refreshAheadMillis} отдаётся как есть. Ближе к концу TTL она тоже отдаётся,
+ * но в фоне запускается её перезагрузка (refresh-ahead). Устаревшая запись ещё
+ * {@code staleWhileRevalidateMillis} после TTL отдаётся вместе с фоновой перезагрузкой
+ * (stale-while-revalidate), и только после этого окна вызывающий ждёт загрузки.
+ * </p>
+ * <p>
+ * Окно относится только к истечению TTL: инвалидированные записи удаляются сразу.
+ * </p>
+ *
+ * @param refreshAheadMillis          за сколько миллисекунд до конца TTL начинать перезагрузку ({@code 0} — не начинать)
+ * @param staleWhileRevalidateMillis  сколько миллисекунд после TTL отдавать устаревшую запись ({@code 0} — не отдавать)
+ */
+public record CacheRefreshPolicy(long refreshAheadMillis, long staleWhileRevalidateMillis) {
+
+    public static final CacheRefreshPolicy DISABLED = new CacheRefreshPolicy(0, 0);
+
+    public CacheRefreshPolicy {
+        if (refreshAheadMillis < 0 || staleWhileRevalidateMillis < 0) {
+            throw new IllegalArgumentException("Интервалы обновления кэша не могут быть отрицательными");
+        }
+    }
+
+    /**
+     * Запись старше TTL; без окна stale-while-revalidate это промах.
+     */
+    public boolean isExpired(long ageMillis, long ttlMillis) {
+        return ageMillis > ttlMillis;
+    }
+
+    /**
+     * Запись ещё можно отдать: она не старше TTL плюс окно stale-while-revalidate.
+     */
+    public boolean isServable(long ageMillis, long ttlMillis) {
+        return ageMillis - ttlMillis <= staleWhileRevalidateMillis;
+    }
+
+    /**
+     * Запись пора перезагрузить в фоне.
+     */
+    public boolean needsRefresh(long ageMillis, long ttlMillis) {
+        return ageMillis > ttlMillis - refreshAheadMillis;
+    }
+}
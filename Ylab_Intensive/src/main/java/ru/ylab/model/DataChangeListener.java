@@ -0,0 +1,36 @@
+package main.java.ru.ylab.model;
+
+/**
+ * Получатель уведомлений об изменениях {@link AppData}.
+ * <p>
+ * Репозиторий и сервисы сообщают о каждом изменении после того, как оно применено к данным.
+ * Используется хранилищами, которым нужно сохранять изменения по мере их появления,
+ * а не только полным снимком при выходе.
+ * </p>
+ * <p>
+ * Методы вызываются в потоке, выполнившем изменение, поэтому реализации должны быть быстрыми
+ * и потокобезопасными.
+ * </p>
+ */
+public interface DataChangeListener {
+
+    /**
+     * Товар добавлен или заменён новой версией.
+     */
+    void onProductSaved(Product product);
+
+    /**
+     * Товар удалён.
+     */
+    void onProductDeleted(int productId);
+
+    /**
+     * Зарегистрирован пользователь.
+     */
+    void onUserSaved(User user);
+
+    /**
+     * Добавлена запись аудита.
+     */
+    void onAuditRecorded(AuditRecord record);
+}
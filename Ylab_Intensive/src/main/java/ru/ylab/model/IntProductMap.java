@@ -0,0 +1,265 @@
+package main.java.ru.ylab.model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Хранилище товаров — массив, индексированный id.
+ * <p>
+ * ID выдаются подряд счётчиком {@link AppData#allocateProductId()}, поэтому массив почти не имеет дыр:
+ * на товар приходится одна ссылка (4 байта при сжатых указателях) вместо узла хеш-таблицы,
+ * объекта {@code Integer} и ячейки таблицы (~55 байт). Методы с примитивным {@code int}
+ * ({@link #get(int)}, {@link #put(int, Product)}, {@link #remove(int)}) не упаковывают ключ.
+ * </p>
+ * <p>
+ * Массив растёт, только пока остаётся плотным: не больше {@code MAX_SLOTS_PER_PRODUCT} ячеек на товар
+ * (и не меньше {@code MIN_DENSE_CAPACITY}). Товар с id за этой границей — например, id из повреждённого
+ * файла или после долгой истории удалений — хранится в упорядоченной карте, а не выделяет массив
+ * на {@code id + 1} ячеек. Когда товаров становится достаточно, массив растёт и забирает такие товары.
+ * </p>
+ * <p>
+ * Потокобезопасно: чтение без блокировок (ячейки читаются с семантикой acquire,
+ * массив заменяется целиком при росте), изменения синхронизированы.
+ * Обход слабо согласован, как у {@link java.util.concurrent.ConcurrentHashMap}.
+ * </p>
+ */
+public final class IntProductMap extends AbstractMap<Integer, Product> implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MIN_DENSE_CAPACITY = 1024;
+    private static final int MAX_SLOTS_PER_PRODUCT = 8;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Product[].class);
+
+    private transient volatile Product[] slots = new Product[INITIAL_CAPACITY];
+    private transient volatile NavigableMap<Integer, Product> sparse = new ConcurrentSkipListMap<>(); // id >= slots.length
+    private transient volatile int size;
+
+    public IntProductMap() {
+    }
+
+    public IntProductMap(Map<Integer, Product> products) {
+        for (Map.Entry<Integer, Product> entry : products.entrySet()) {
+            put(entry.getKey().intValue(), entry.getValue());
+        }
+    }
+
+    // ==================== ПРИМИТИВНЫЙ ДОСТУП ====================
+
+    public Product get(int id) {
+        Product[] current = slots;
+        if (id < 0) {
+            return null;
+        }
+        if (id >= current.length) {
+            // Перенесённый в массив товар удаляется из карты только после публикации массива
+            return sparse.get(id);
+        }
+        return (Product) SLOT.getAcquire(current, id);
+    }
+
+    public boolean containsKey(int id) {
+        return get(id) != null;
+    }
+
+    public synchronized Product put(int id, Product product) {
+        if (id < 0) {
+            throw new IllegalArgumentException("ID товара не может быть отрицательным: " + id);
+        }
+        Objects.requireNonNull(product, "product");
+        Product[] current = ensureCapacity(id);
+        if (id >= current.length) {
+            Product previous = sparse.put(id, product);
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+        Product previous = current[id];
+        SLOT.setRelease(current, id, product);
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    public synchronized Product remove(int id) {
+        Product[] current = slots;
+        if (id >= current.length) {
+            Product previous = sparse.remove(id);
+            if (previous != null) {
+                size--;
+            }
+            return previous;
+        }
+        if (id < 0 || current[id] == null) {
+            return null;
+        }
+        Product previous = current[id];
+        SLOT.setRelease(current, id, (Product) null);
+        size--;
+        return previous;
+    }
+
+    // ==================== MAP ====================
+
+    @Override
+    public Product get(Object key) {
+        return key instanceof Integer id ? get(id.intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Product put(Integer id, Product product) {
+        return put(id.intValue(), product);
+    }
+
+    @Override
+    public Product remove(Object key) {
+        return key instanceof Integer id ? remove(id.intValue()) : null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        slots = new Product[INITIAL_CAPACITY];
+        sparse = new ConcurrentSkipListMap<>();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<Integer, Product>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Integer, Product>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Расширяет массив до {@code id}, если он останется плотным, и переносит в него товары из карты.
+     *
+     * @return текущий массив; если {@code id} за его границей, товар хранится в карте
+     */
+    private Product[] ensureCapacity(int id) {
+        Product[] current = slots;
+        if (id < current.length) {
+            return current;
+        }
+        long allowed = Math.max(MIN_DENSE_CAPACITY, (size + 1L) * MAX_SLOTS_PER_PRODUCT);
+        if (id >= allowed) {
+            return current;
+        }
+        long capacity = Math.min(allowed, Math.max(id + 1L, current.length + (current.length >> 1)));
+        capacity = Math.max(id + 1L, Math.min(capacity, Integer.MAX_VALUE - 8)); // предел длины массива
+        Product[] grown = Arrays.copyOf(current, (int) capacity);
+        NavigableMap<Integer, Product> moved = sparse.headMap((int) capacity, false);
+        for (Map.Entry<Integer, Product> entry : moved.entrySet()) {
+            grown[entry.getKey()] = entry.getValue();
+        }
+        slots = grown;
+        moved.clear(); // после публикации массива: читатель старого массива ещё находит товар в карте
+        return grown;
+    }
+
+    /**
+     * Обход по возрастанию id: сначала массив, затем товары карты за его границей;
+     * удаление через итератор поддерживается.
+     */
+    private final class EntryIterator implements Iterator<Entry<Integer, Product>> {
+        private final Product[] snapshot = slots;
+        private final Iterator<Entry<Integer, Product>> beyond = sparse.tailMap(snapshot.length, true).entrySet().iterator();
+        private int index = -1;
+        private int lastReturned = -1;
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex() >= 0 || beyond.hasNext();
+        }
+
+        @Override
+        public Entry<Integer, Product> next() {
+            int found = nextIndex();
+            if (found < 0) {
+                Entry<Integer, Product> entry = beyond.next();
+                index = snapshot.length;
+                lastReturned = entry.getKey();
+                return new SimpleImmutableEntry<>(entry);
+            }
+            index = found;
+            lastReturned = found;
+            return new SimpleImmutableEntry<>(found, (Product) SLOT.getAcquire(snapshot, found));
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            IntProductMap.this.remove(lastReturned);
+            lastReturned = -1;
+        }
+
+        private int nextIndex() {
+            for (int i = index + 1; i < snapshot.length; i++) {
+                if (SLOT.getAcquire(snapshot, i) != null) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // ==================== СЕРИАЛИЗАЦИЯ ====================
+
+    @Serial
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        Product[] current = slots;
+        for (int id = 0; id < current.length; id++) {
+            if (current[id] != null) {
+                out.writeInt(id);
+                out.writeObject(current[id]);
+            }
+        }
+        for (Map.Entry<Integer, Product> entry : sparse.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        slots = new Product[INITIAL_CAPACITY];
+        sparse = new ConcurrentSkipListMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            put(id, (Product) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package main.java.ru.ylab.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Колоночное хранилище товаров вне кучи, индексированное id.
+ * <p>
+ * Каждое поле хранится отдельной колонкой в прямом {@link ByteBuffer}: цена — {@code double},
+ * даты — секунды и наносекунды UTC, категория и бренд — коды словарей (их мало, сами строки
+ * хранятся один раз), название и описание — смещения в байтовой арене UTF-8.
+ * Словари передаются в конструктор — обычно это словари {@link AppData}, поэтому собранные товары
+ * ссылаются на те же строки категорий и брендов, что и индексы {@code ProductRepository}.
+ * Само хранилище не держит в куче ни одного объекта на товар: {@link Product} собирается из колонок
+ * при каждом чтении целиком, вместе с названием и описанием, и сразу становится мусором молодого поколения.
+ * </p>
+ * <p>
+ * Индексы {@code ProductRepository} при этом остаются в куче: битовые множества id, категорий,
+ * брендов и триграмм названий (около 2 байт на id в каждом множестве, где он есть, без объектов на товар)
+ * и строки уникальных триграмм. Они растут с каталогом, но намного медленнее, чем товары в куче.
+ * </p>
+ * <p>
+ * {@link #findIdsByPriceRange(double, double)} просматривает всю непрерывную колонку цен, O(n) —
+ * {@code ProductRepository} использует его вместо отдельного индекса цен.
+ * </p>
+ * <p>
+ * Арена только дописывается: при изменении товара старые строки не освобождаются
+ * (перезапись снимка и перезапуск создают компактную арену). Колонки адресуются {@code int}-смещениями,
+ * поэтому id должен быть меньше {@link #MAX_ROWS} (самая широкая колонка — 8 байт на строку — не больше 2 ГБ).
+ * Потокобезопасно: чтение и запись разделены {@link ReadWriteLock}.
+ * </p>
+ */
+public final class OffHeapProductMap extends AbstractMap<Integer, Product> implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Наибольшее число строк колонок: смещение в колонке из 8-байтовых значений должно помещаться в {@code int}.
+     */
+    public static final int MAX_ROWS = Integer.MAX_VALUE / Long.BYTES;
+
+    private static final int INITIAL_ROWS = 1024;
+    private static final int INITIAL_ARENA = 64 * 1024;
+    private static final int NO_STRING = -1;
+    private static final long NULL_SECONDS = Long.MIN_VALUE;
+
+    private final transient ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final transient StringDictionary categories; // коды категорий
+    private final transient StringDictionary brands; // коды брендов
+
+    private transient int rows; // ёмкость колонок
+    private transient ByteBuffer present; // byte: 1 — строка занята
+    private transient ByteBuffer prices; // double
+    private transient ByteBuffer createdSeconds; // long
+    private transient ByteBuffer createdNanos; // int
+    private transient ByteBuffer modifiedSeconds; // long
+    private transient ByteBuffer modifiedNanos; // int
+    private transient ByteBuffer categoryCodes; // int — код словаря
+    private transient ByteBuffer brandCodes; // int — код словаря
+    private transient ByteBuffer nameRefs; // int — смещение в арене
+    private transient ByteBuffer descriptionRefs; // int — смещение в арене или NO_STRING
+    private transient ByteBuffer arena; // [int длина][байты UTF-8]
+    private transient int size;
+
+    /**
+     * @param categories словарь кодов категорий (обычно {@link AppData#getCategories()})
+     * @param brands     словарь кодов брендов (обычно {@link AppData#getBrands()})
+     */
+    public OffHeapProductMap(StringDictionary categories, StringDictionary brands) {
+        this.categories = Objects.requireNonNull(categories);
+        this.brands = Objects.requireNonNull(brands);
+        allocateColumns(INITIAL_ROWS);
+        arena = ByteBuffer.allocateDirect(INITIAL_ARENA);
+    }
+
+    /**
+     * Хранилище с собственными словарями (строки категорий и брендов не общие с {@link AppData}).
+     */
+    public OffHeapProductMap() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    // ==================== ПРИМИТИВНЫЙ ДОСТУП ====================
+
+    /**
+     * Собирает товар из колонок: каждый вызов создаёт новый {@link Product} и декодирует
+     * название и описание из арены, даже если вызывающему нужна только цена или категория.
+     */
+    public Product get(int id) {
+        lock.readLock().lock();
+        try {
+            return isPresent(id) ? decode(id) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Product put(int id, Product product) {
+        if (id < 0 || id >= MAX_ROWS) {
+            throw new IllegalArgumentException("ID товара вне допустимого диапазона [0, " + MAX_ROWS + "): " + id);
+        }
+        lock.writeLock().lock();
+        try {
+            if (id >= rows) {
+                growColumns((int) Math.min(MAX_ROWS, Math.max(id + 1L, rows + (rows >> 1))));
+            }
+            Product previous = isPresent(id) ? decode(id) : null;
+            encode(id, product);
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Product remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (!isPresent(id)) {
+                return null;
+            }
+            Product previous = decode(id);
+            present.put(id, (byte) 0);
+            size--;
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * id товаров с ценой в диапазоне (включительно), по возрастанию — последовательный проход по колонке цен.
+     */
+    public int[] findIdsByPriceRange(double lowerBound, double upperBound) {
+        lock.readLock().lock();
+        try {
+            int[] result = new int[16];
+            int count = 0;
+            for (int id = 0; id < rows; id++) {
+                if (present.get(id) == 0) {
+                    continue;
+                }
+                double price = prices.getDouble(id * Double.BYTES); // id < MAX_ROWS: без переполнения
+                if (price >= lowerBound && price <= upperBound) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = id;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== MAP ====================
+
+    @Override
+    public Product get(Object key) {
+        return key instanceof Integer id ? get(id.intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof Integer id)) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return isPresent(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Product put(Integer id, Product product) {
+        return put(id.intValue(), product);
+    }
+
+    @Override
+    public Product remove(Object key) {
+        return key instanceof Integer id ? remove(id.intValue()) : null;
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            allocateColumns(INITIAL_ROWS);
+            arena = ByteBuffer.allocateDirect(INITIAL_ARENA);
+            size = 0; // коды словаря остаются действительными
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<Entry<Integer, Product>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Integer, Product>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return OffHeapProductMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Сериализуется обычное хранилище в куче (например, при сохранении через {@code DataStorageImpl}).
+     */
+    @Serial
+    private Object writeReplace() {
+        return new IntProductMap(this);
+    }
+
+    // ==================== КОЛОНКИ ====================
+
+    private boolean isPresent(int id) {
+        return id >= 0 && id < rows && present.get(id) != 0;
+    }
+
+    private Product decode(int id) {
+        return new Product(id,
+                readString(nameRefs.getInt(id * Integer.BYTES)),
+                decodeCode(categories, categoryCodes.getInt(id * Integer.BYTES)),
+                decodeCode(brands, brandCodes.getInt(id * Integer.BYTES)),
+                prices.getDouble(id * Double.BYTES),
+                readString(descriptionRefs.getInt(id * Integer.BYTES)),
+                readDateTime(createdSeconds, createdNanos, id),
+                readDateTime(modifiedSeconds, modifiedNanos, id));
+    }
+
+    private void encode(int id, Product product) {
+        prices.putDouble(id * Double.BYTES, product.getPrice());
+        writeDateTime(createdSeconds, createdNanos, id, product.getCreatedDate());
+        writeDateTime(modifiedSeconds, modifiedNanos, id, product.getModifiedDate());
+        categoryCodes.putInt(id * Integer.BYTES, code(categories, product.getCategory()));
+        brandCodes.putInt(id * Integer.BYTES, code(brands, product.getBrand()));
+        nameRefs.putInt(id * Integer.BYTES, appendString(product.getName()));
+        descriptionRefs.putInt(id * Integer.BYTES, appendString(product.getDescription()));
+        present.put(id, (byte) 1);
+    }
+
+    private static int code(StringDictionary dictionary, String value) {
+        return value == null ? StringDictionary.NO_CODE : dictionary.encode(value);
+    }
+
+    private static String decodeCode(StringDictionary dictionary, int code) {
+        return code == StringDictionary.NO_CODE ? null : dictionary.decode(code);
+    }
+
+    private int appendString(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (arena.remaining() < Integer.BYTES + bytes.length) {
+            long required = (long) arena.position() + Integer.BYTES + bytes.length;
+            long capacity = Math.max(required, (long) arena.capacity() * 2);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Арена строк превысила 2 ГБ");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+            grown.put(arena.flip());
+            arena = grown;
+        }
+        int offset = arena.position();
+        arena.putInt(bytes.length);
+        arena.put(bytes);
+        return offset;
+    }
+
+    private String readString(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[arena.getInt(offset)];
+        arena.get(offset + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime readDateTime(ByteBuffer seconds, ByteBuffer nanos, int id) {
+        long value = seconds.getLong(id * Long.BYTES);
+        if (value == NULL_SECONDS) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(value, nanos.getInt(id * Integer.BYTES), ZoneOffset.UTC);
+    }
+
+    private static void writeDateTime(ByteBuffer seconds, ByteBuffer nanos, int id, LocalDateTime value) {
+        seconds.putLong(id * Long.BYTES, value == null ? NULL_SECONDS : value.toEpochSecond(ZoneOffset.UTC));
+        nanos.putInt(id * Integer.BYTES, value == null ? 0 : value.getNano());
+    }
+
+    private void allocateColumns(int capacity) {
+        rows = capacity;
+        present = ByteBuffer.allocateDirect(columnBytes(capacity, Byte.BYTES));
+        prices = ByteBuffer.allocateDirect(columnBytes(capacity, Double.BYTES));
+        createdSeconds = ByteBuffer.allocateDirect(columnBytes(capacity, Long.BYTES));
+        createdNanos = ByteBuffer.allocateDirect(columnBytes(capacity, Integer.BYTES));
+        modifiedSeconds = ByteBuffer.allocateDirect(columnBytes(capacity, Long.BYTES));
+        modifiedNanos = ByteBuffer.allocateDirect(columnBytes(capacity, Integer.BYTES));
+        categoryCodes = ByteBuffer.allocateDirect(columnBytes(capacity, Integer.BYTES));
+        brandCodes = ByteBuffer.allocateDirect(columnBytes(capacity, Integer.BYTES));
+        nameRefs = ByteBuffer.allocateDirect(columnBytes(capacity, Integer.BYTES));
+        descriptionRefs = ByteBuffer.allocateDirect(columnBytes(capacity, Integer.BYTES));
+    }
+
+    private void growColumns(int capacity) {
+        present = grow(present, columnBytes(capacity, Byte.BYTES));
+        prices = grow(prices, columnBytes(capacity, Double.BYTES));
+        createdSeconds = grow(createdSeconds, columnBytes(capacity, Long.BYTES));
+        createdNanos = grow(createdNanos, columnBytes(capacity, Integer.BYTES));
+        modifiedSeconds = grow(modifiedSeconds, columnBytes(capacity, Long.BYTES));
+        modifiedNanos = grow(modifiedNanos, columnBytes(capacity, Integer.BYTES));
+        categoryCodes = grow(categoryCodes, columnBytes(capacity, Integer.BYTES));
+        brandCodes = grow(brandCodes, columnBytes(capacity, Integer.BYTES));
+        nameRefs = grow(nameRefs, columnBytes(capacity, Integer.BYTES));
+        descriptionRefs = grow(descriptionRefs, columnBytes(capacity, Integer.BYTES));
+        rows = capacity;
+    }
+
+    /**
+     * Размер колонки в байтах, посчитанный в {@code long}: {@code capacity * width} может не поместиться в {@code int}.
+     */
+    private static int columnBytes(int capacity, int width) {
+        long bytes = (long) capacity * width;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Колонка из " + capacity + " строк превысила 2 ГБ");
+        }
+        return (int) bytes;
+    }
+
+    private static ByteBuffer grow(ByteBuffer column, int bytes) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(bytes);
+        grown.put(column.clear());
+        return grown.clear();
+    }
+
+    /**
+     * Обход по возрастанию id; каждый товар собирается под блокировкой чтения.
+     */
+    private final class EntryIterator implements Iterator<Entry<Integer, Product>> {
+        private int nextId = -1;
+        private Product next;
+        private int lastReturned = -1;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            lock.readLock().lock();
+            try {
+                for (int id = nextId + 1; id < rows; id++) {
+                    if (present.get(id) != 0) {
+                        nextId = id;
+                        next = decode(id);
+                        return true;
+                    }
+                }
+                nextId = rows;
+                return false;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Entry<Integer, Product> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Product result = next;
+            next = null;
+            lastReturned = nextId;
+            return new SimpleImmutableEntry<>(nextId, result);
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            OffHeapProductMap.this.remove(lastReturned);
+            lastReturned = -1;
+        }
+    }
+}
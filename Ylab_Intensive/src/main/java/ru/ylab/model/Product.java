@@ -5,38 +5,41 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
+/**
+ * Товар каталога. Неизменяемый: все поля финальные, изменение товара создаёт новый экземпляр,
+ * поэтому один объект безопасно разделяется между репозиторием, кэшем и вызывающим кодом без копирования.
+ */
 public class Product implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
-    private int id;
+    private final int id;
     private final String name;
     private final String category;
     private final String brand;
-    private double price;
-    private String description;
-    private LocalDateTime createdDate;
-    private LocalDateTime modifiedDate;
+    private final double price;
+    private final String description;
+    private final LocalDateTime createdDate;
+    private final LocalDateTime modifiedDate;
 
     public Product(String name, String category, String brand, double price, String description) {
-        this.name = name;
-        this.category = category;
-        this.brand = brand;
-        this.price = price;
-        this.description = description;
-        setModifiedDate();
-        setCreatedDate();
+        this(0, name, category, brand, price, description);
     }
 
     public Product(int id, String name, String category, String brand, double price, String description) {
+        this(id, name, category, brand, price, description, LocalDateTime.now(), LocalDateTime.now());
+    }
+
+    public Product(int id, String name, String category, String brand, double price, String description,
+                   LocalDateTime createdDate, LocalDateTime modifiedDate) {
         this.id = id;
         this.name = name;
         this.category = category;
         this.brand = brand;
         this.price = price;
         this.description = description;
-        setModifiedDate();
-        setCreatedDate();
+        this.createdDate = createdDate;
+        this.modifiedDate = modifiedDate;
     }
 
     public int getId() {
@@ -71,29 +74,6 @@ public class Product implements Serializable {
         return modifiedDate;
     }
 
-    public Product copy() {
-        Product copied =  new Product(this.id, this.name, this.category,
-                this.brand, this.price, this.description);
-
-        copied.createdDate = this.createdDate;
-        copied.modifiedDate = this.modifiedDate;
-        return copied;
-
-    }
-    private void setModifiedDate() {
-        if (modifiedDate == null) {
-            modifiedDate = LocalDateTime.now();
-        } else if (modifiedDate.isBefore(LocalDateTime.now())) {
-            modifiedDate = LocalDateTime.now();
-        }
-    }
-
-    private void setCreatedDate() {
-        if (createdDate == null) {
-            createdDate = LocalDateTime.now();
-        }
-    }
-
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
@@ -0,0 +1,39 @@
+package main.java.ru.ylab.model;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Страница товаров, упорядоченных по возрастанию id.
+ * <p>
+ * Курсор — id последнего товара страницы: следующая страница начинается строго после него,
+ * поэтому добавление и удаление товаров между запросами не сдвигает и не дублирует результаты.
+ * Первая страница запрашивается с курсором {@link #FIRST_PAGE}; есть ли следующая, сообщает
+ * только {@link #hasNext()}, а не особое значение курсора.
+ * </p>
+ */
+public record ProductPage(List<Product> items, // Товары страницы
+                          boolean hasNext) { // Есть ли за страницей ещё товары
+
+    public static final int FIRST_PAGE = 0; // курсор первой страницы: id товаров положительные
+    public static final ProductPage EMPTY = new ProductPage(List.of(), false);
+
+    public ProductPage {
+        items = List.copyOf(items);
+        if (hasNext && items.isEmpty()) {
+            throw new IllegalArgumentException("За пустой страницей не может быть следующей");
+        }
+    }
+
+    /**
+     * Курсор следующей страницы — id последнего товара этой.
+     *
+     * @throws NoSuchElementException если страница последняя
+     */
+    public int nextCursor() {
+        if (!hasNext) {
+            throw new NoSuchElementException("Страница последняя");
+        }
+        return items.get(items.size() - 1).getId();
+    }
+}
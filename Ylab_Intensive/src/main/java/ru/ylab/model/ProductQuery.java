@@ -0,0 +1,103 @@
+package main.java.ru.ylab.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Составной запрос к каталогу: все заданные условия должны выполняться одновременно.
+ * <p>
+ * Незаданное условие — {@code null}. Запрос неизменяем, условия добавляются методами {@code with...}:
+ * <pre>{@code
+ * ProductQuery query = ProductQuery.all()
+ *         .withCategory("Electronics")
+ *         .withBrand("Apple")
+ *         .withPriceRange(500, 1500);
+ * }</pre>
+ * </p>
+ */
+public record ProductQuery(String category, // Точное совпадение категории
+                           String brand, // Точное совпадение бренда
+                           Double minPrice, // Нижняя граница цены (включительно)
+                           Double maxPrice, // Верхняя граница цены (включительно)
+                           String keyword) { // Подстрока названия без учёта регистра
+
+    private static final ProductQuery ALL = new ProductQuery(null, null, null, null, null);
+
+    public ProductQuery {
+        category = blankToNull(category);
+        brand = blankToNull(brand);
+        keyword = blankToNull(keyword);
+        if (minPrice != null && minPrice < 0 || maxPrice != null && maxPrice < 0) {
+            throw new IllegalArgumentException("Цена не может быть отрицательной");
+        }
+    }
+
+    /**
+     * Запрос без условий — весь каталог.
+     */
+    public static ProductQuery all() {
+        return ALL;
+    }
+
+    public ProductQuery withCategory(String category) {
+        return new ProductQuery(category, brand, minPrice, maxPrice, keyword);
+    }
+
+    public ProductQuery withBrand(String brand) {
+        return new ProductQuery(category, brand, minPrice, maxPrice, keyword);
+    }
+
+    public ProductQuery withPriceRange(double minPrice, double maxPrice) {
+        return new ProductQuery(category, brand, minPrice, maxPrice, keyword);
+    }
+
+    public ProductQuery withNameContaining(String keyword) {
+        return new ProductQuery(category, brand, minPrice, maxPrice, keyword);
+    }
+
+    public boolean hasPriceRange() {
+        return minPrice != null || maxPrice != null;
+    }
+
+    public double lowerPrice() {
+        return minPrice != null ? minPrice : 0;
+    }
+
+    public double upperPrice() {
+        return maxPrice != null ? maxPrice : Double.MAX_VALUE;
+    }
+
+    /**
+     * Проверяет товар по всем условиям запроса.
+     */
+    public boolean matches(Product product) {
+        return (category == null || category.equals(product.getCategory()))
+                && (brand == null || brand.equals(product.getBrand()))
+                && (!hasPriceRange() || product.getPrice() >= lowerPrice() && product.getPrice() <= upperPrice())
+                && (keyword == null || product.getName().toLowerCase().contains(keyword.toLowerCase()));
+    }
+
+    /**
+     * Зависимость записи кэша: результат меняется, только если меняется подходящий под запрос товар.
+     */
+    public CacheDependency dependency() {
+        List<CacheDependency> dependencies = new ArrayList<>();
+        if (category != null) {
+            dependencies.add(CacheDependency.category(category));
+        }
+        if (brand != null) {
+            dependencies.add(CacheDependency.brand(brand));
+        }
+        if (hasPriceRange()) {
+            dependencies.add(CacheDependency.priceRange(lowerPrice(), upperPrice()));
+        }
+        if (keyword != null) {
+            dependencies.add(CacheDependency.nameContains(keyword));
+        }
+        return CacheDependency.allOf(dependencies);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
@@ -0,0 +1,84 @@
+package main.java.ru.ylab.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь строк с небольшим числом различных значений (категории, бренды).
+ * <p>
+ * Каждая строка получает постоянный код {@code 0, 1, 2, ...} и хранится один раз:
+ * {@link #intern(String)} возвращает общий экземпляр, поэтому товары одной категории
+ * ссылаются на одну строку, а сравнение {@link String#equals(Object)} завершается на проверке ссылок.
+ * Коды используются как индексы массивов в {@code ProductRepository} и в бинарном снимке.
+ * </p>
+ * <p>
+ * Потокобезопасно: поиск кода и чтение значения без блокировок, новые значения добавляются синхронизированно.
+ * Коды не освобождаются — словарь рассчитан на значения, которых немного.
+ * </p>
+ */
+public final class StringDictionary {
+    /**
+     * Код строки, которой нет в словаре.
+     */
+    public static final int NO_CODE = -1;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private volatile int size;
+
+    /**
+     * Код значения; новое значение добавляется в словарь.
+     */
+    public int encode(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Значение словаря не может быть null");
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    /**
+     * Код значения или {@link #NO_CODE}, если его нет в словаре (словарь не меняется).
+     */
+    public int codeOf(String value) {
+        if (value == null) {
+            return NO_CODE;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : NO_CODE;
+    }
+
+    public String decode(int code) {
+        if (code < 0 || code >= size) {
+            throw new IllegalArgumentException("Нет значения с кодом " + code);
+        }
+        return values[code];
+    }
+
+    /**
+     * Общий экземпляр строки, равной {@code value}; {@code null} остаётся {@code null}.
+     */
+    public String intern(String value) {
+        return value == null ? null : decode(encode(value));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int code = size;
+        if (code == values.length) {
+            values = Arrays.copyOf(values, code * 2);
+        }
+        values[code] = value;
+        size = code + 1; // публикуем значение до кода: decode не увидит пустую ячейку
+        codes.put(value, code);
+        return code;
+    }
+}
@@ -0,0 +1,179 @@
+package main.java.ru.ylab.repository;
+
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.enums.Action;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Архив записей аудита: каталог сжатых GZIP файлов-сегментов.
+ * <p>
+ * Имя файла {@code audit_<первая>_<последняя>_<номер>.gz} содержит время первой и последней записи
+ * (секунды UTC), поэтому {@link #readAfter(LocalDateTime)} открывает только сегменты,
+ * в которых могут быть подходящие записи.
+ * </p>
+ * <p>
+ * Опубликованный файл больше не меняется и не удаляется, поэтому список файлов можно получить
+ * под блокировкой хранилища ({@link #segmentsAfter(LocalDateTime)}), а распаковать их
+ * ({@link #read(List, LocalDateTime)}) — уже после её снятия.
+ * </p>
+ */
+public class AuditArchive {
+    private static final String PREFIX = "audit_";
+    private static final String SUFFIX = ".gz";
+
+    private final Path directory;
+    private long nextSequence;
+
+    public AuditArchive(Path directory) {
+        this.directory = directory;
+        for (SegmentFile file : listSegments()) {
+            nextSequence = Math.max(nextSequence, file.sequence + 1);
+        }
+    }
+
+    /**
+     * Сжимает непустой упорядоченный по времени сегмент во временный файл. В архиве (и в {@link #readAfter(LocalDateTime)})
+     * он появится только после {@link #publish(Staged)}, поэтому долгую запись можно выполнять
+     * без блокировок читателей.
+     */
+    synchronized Staged stage(List<AuditRecord> records) throws IOException {
+        Files.createDirectories(directory);
+        long first = seconds(records.get(0).getTimestamp());
+        long last = seconds(records.get(records.size() - 1).getTimestamp());
+        Path target = directory.resolve(PREFIX + first + "_" + last + "_" + nextSequence + SUFFIX);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024)))) {
+            out.writeInt(records.size());
+            for (AuditRecord record : records) {
+                writeRecord(out, record);
+            }
+        }
+        nextSequence++;
+        return new Staged(tmp, target);
+    }
+
+    /**
+     * Атомарно добавляет подготовленный сегмент в архив.
+     */
+    void publish(Staged staged) throws IOException {
+        Files.move(staged.tmp, staged.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Сегмент, записанный во временный файл, но ещё не добавленный в архив.
+     */
+    record Staged(Path tmp, Path target) {
+    }
+
+    /**
+     * Архивные записи строго после указанного момента, упорядоченные по времени.
+     */
+    List<AuditRecord> readAfter(LocalDateTime dateTime) throws IOException {
+        return read(segmentsAfter(dateTime), dateTime);
+    }
+
+    /**
+     * Опубликованные файлы, в которых могут быть записи строго после указанного момента.
+     * Только читает каталог, файлы не открывает.
+     */
+    List<Path> segmentsAfter(LocalDateTime dateTime) {
+        long from = seconds(dateTime);
+        List<Path> result = new ArrayList<>();
+        for (SegmentFile file : listSegments()) {
+            if (file.lastSecond >= from) {
+                result.add(file.path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Записи указанных файлов строго после указанного момента, упорядоченные по времени.
+     */
+    static List<AuditRecord> read(List<Path> files, LocalDateTime dateTime) throws IOException {
+        List<AuditRecord> result = new ArrayList<>();
+        for (Path file : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(file), 64 * 1024)))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    AuditRecord record = readRecord(in);
+                    if (record.getTimestamp().isAfter(dateTime)) {
+                        result.add(record);
+                    }
+                }
+            }
+        }
+        result.sort((a, b) -> a.getTimestamp().compareTo(b.getTimestamp()));
+        return result;
+    }
+
+    // ==================== ФАЙЛЫ ====================
+
+    private List<SegmentFile> listSegments() {
+        List<SegmentFile> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                String[] parts = name.substring(PREFIX.length(), name.length() - SUFFIX.length()).split("_");
+                try {
+                    segments.add(new SegmentFile(path, Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignored) {
+                    // посторонний файл с похожим именем
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения архива аудита: " + e.getMessage());
+        }
+        return segments;
+    }
+
+    private record SegmentFile(Path path, long lastSecond, long sequence) {
+    }
+
+    // ==================== ЗАПИСИ ====================
+
+    private static void writeRecord(DataOutput out, AuditRecord record) throws IOException {
+        out.writeLong(seconds(record.getTimestamp()));
+        out.writeInt(record.getTimestamp().getNano());
+        writeNullableString(out, record.getUsername());
+        out.writeByte(record.getAction().ordinal());
+        writeNullableString(out, record.getDetails());
+    }
+
+    private static AuditRecord readRecord(DataInput in) throws IOException {
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        return new AuditRecord(timestamp, readNullableString(in), Action.values()[in.readByte()], readNullableString(in));
+    }
+
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static long seconds(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,372 @@
+package main.java.ru.ylab.repository;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.AuditRetentionPolicy;
+import main.java.ru.ylab.model.enums.Action;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Хранилище записей аудита, разбитое на сегменты по времени.
+ * <p>
+ * Каждый сегмент покрывает интервал {@code segmentDuration} и хранит свои записи упорядоченными
+ * по времени, а также списки записей по пользователю и по типу действия. Поэтому:
+ * <ul>
+ *   <li>{@link #findAfter(LocalDateTime)} пропускает старые сегменты и бинарным поиском находит
+ *       начало внутри первого подходящего</li>
+ *   <li>{@link #findByUser(String)} и {@link #findByAction(Action)} обходят только записи
+ *       нужного пользователя или действия</li>
+ * </ul>
+ * Записи обычно приходят по возрастанию времени и просто дописываются в конец сегмента;
+ * запоздавшая запись вставляется на своё место.
+ * </p>
+ * <p>
+ * Если задана {@link AuditRetentionPolicy}, старые сегменты целиком переносятся в {@link AuditArchive}
+ * и удаляются из памяти и из {@link AppData} (а значит, и из сохраняемого снимка).
+ * {@link #findAfter(LocalDateTime)} прозрачно дочитывает архив; остальные выборки работают
+ * по записям в памяти. Под блокировкой чтения она лишь собирает записи в памяти и список
+ * архивных файлов, а распаковывает их после её снятия, поэтому не задерживает добавление записей.
+ * </p>
+ * <p>
+ * Под блокировкой записи сегмент только передаётся на архивацию (остаётся видимым для выборок).
+ * Сжатие в файл выполняется уже после её снятия одним из добавляющих потоков; под блокировкой
+ * остаётся лишь атомарное переименование готового файла вместе с удалением сегмента из памяти,
+ * поэтому выборки не видят записи дважды. Записи удаляются из {@link AppData} тоже без блокировки
+ * хранилища.
+ * </p>
+ * <p>
+ * Потокобезопасно: сегменты защищены {@link ReadWriteLock}. Все результаты упорядочены по времени.
+ * </p>
+ */
+public class AuditLogRepository {
+    private static final Duration DEFAULT_SEGMENT_DURATION = Duration.ofHours(1);
+    private static final Comparator<AuditRecord> BY_TIME = Comparator.comparing(AuditRecord::getTimestamp);
+
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>(); // номер интервала -> сегмент
+    private final Deque<Segment> archiving = new ArrayDeque<>(); // переданы на архивацию, ещё видимы выборкам
+    private final long segmentSeconds;
+    private final AppData appData;
+    private final AuditRetentionPolicy retention;
+    private final AuditArchive archive;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock archiveLock = new ReentrantLock(); // архивацию выполняет один поток
+    private int size; // записи в segments
+    private int archivingSize; // записи в archiving
+
+    public AuditLogRepository(AppData appData, Duration segmentDuration,
+                              AuditRetentionPolicy retention, AuditArchive archive) {
+        if (segmentDuration.getSeconds() <= 0) {
+            throw new IllegalArgumentException("Длительность сегмента должна быть не меньше секунды");
+        }
+        if (retention.isLimited() && archive == null) {
+            throw new IllegalArgumentException("Для политики хранения нужен архив");
+        }
+        this.appData = appData;
+        this.segmentSeconds = segmentDuration.getSeconds();
+        this.retention = retention;
+        this.archive = archive;
+
+        List<AuditRecord> records = appData.getAuditRecords();
+        synchronized (records) {
+            for (AuditRecord record : records) {
+                index(record);
+            }
+        }
+        detachExpired();
+        archivePending();
+    }
+
+    public AuditLogRepository(AppData appData, AuditRetentionPolicy retention, AuditArchive archive) {
+        this(appData, DEFAULT_SEGMENT_DURATION, retention, archive);
+    }
+
+    public AuditLogRepository(AppData appData) {
+        this(appData, DEFAULT_SEGMENT_DURATION, AuditRetentionPolicy.UNLIMITED, null);
+    }
+
+    // CREATE
+
+    public void add(AuditRecord record) {
+        lock.writeLock().lock();
+        try {
+            appData.addAuditRecords(List.of(record));
+            index(record);
+            detachExpired();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        archivePending();
+    }
+
+    /**
+     * Добавляет пачку записей под одной блокировкой записи.
+     */
+    public void addAll(List<AuditRecord> records) {
+        lock.writeLock().lock();
+        try {
+            appData.addAuditRecords(records);
+            for (AuditRecord record : records) {
+                index(record);
+            }
+            detachExpired();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        archivePending();
+    }
+
+    // READ
+
+    public List<AuditRecord> findAll() {
+        lock.readLock().lock();
+        try {
+            List<AuditRecord> result = new ArrayList<>(size + archivingSize);
+            for (Segment segment : allSegments()) {
+                result.addAll(segment.records);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<AuditRecord> findByUser(String username) {
+        lock.readLock().lock();
+        try {
+            List<AuditRecord> result = new ArrayList<>();
+            for (Segment segment : allSegments()) {
+                List<AuditRecord> postings = segment.byUser.get(username);
+                if (postings != null) {
+                    result.addAll(postings);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<AuditRecord> findByAction(Action action) {
+        lock.readLock().lock();
+        try {
+            List<AuditRecord> result = new ArrayList<>();
+            for (Segment segment : allSegments()) {
+                List<AuditRecord> postings = segment.byAction.get(action);
+                if (postings != null) {
+                    result.addAll(postings);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Записи строго после указанного момента, включая перенесённые в архив.
+     */
+    public List<AuditRecord> findAfter(LocalDateTime dateTime) {
+        List<AuditRecord> result = new ArrayList<>();
+        List<Path> archived;
+        boolean merged;
+        lock.readLock().lock();
+        try {
+            // Файл публикуется вместе с удалением сегмента из памяти, поэтому записи не видны дважды
+            archived = archive != null ? archive.segmentsAfter(dateTime) : List.of();
+            merged = !archived.isEmpty() || !archiving.isEmpty();
+            List<Segment> tail = new ArrayList<>(archiving);
+            tail.addAll(segments.tailMap(segmentOf(dateTime), true).values());
+            for (Segment segment : tail) {
+                List<AuditRecord> records = segment.records;
+                int from = firstAfter(records, dateTime);
+                result.addAll(from == 0 ? records : records.subList(from, records.size()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (!archived.isEmpty()) {
+            result.addAll(readArchive(archived, dateTime));
+        }
+        if (merged) {
+            result.sort(BY_TIME); // запоздавшие записи в памяти могут быть старше архивных и архивируемых
+        }
+        return result;
+    }
+
+    public int count() {
+        lock.readLock().lock();
+        try {
+            return size + archivingSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== ХРАНЕНИЕ ====================
+
+    /**
+     * Передаёт на архивацию самые старые сегменты, пока нарушена политика хранения.
+     * При превышении {@code maxRecords} передаётся и текущий сегмент, поэтому после добавления
+     * в памяти остаётся не больше {@code maxRecords} записей (не считая ещё не записанных в архив).
+     * Вызывается под блокировкой записи (или из конструктора); файлов не пишет.
+     * Запись, пришедшая в интервал переданного сегмента, попадёт в новый сегмент и будет архивирована отдельно.
+     */
+    private void detachExpired() {
+        if (!retention.isLimited()) {
+            return;
+        }
+        long cutoff = retention.maxAge() == null
+                ? Long.MIN_VALUE
+                : LocalDateTime.now().minus(retention.maxAge()).toEpochSecond(ZoneOffset.UTC);
+
+        while (!segments.isEmpty()) {
+            Map.Entry<Long, Segment> oldest = segments.firstEntry();
+            boolean expired = (oldest.getKey() + 1) * segmentSeconds <= cutoff;
+            boolean overflow = retention.maxRecords() > 0 && size > retention.maxRecords();
+            if (!expired && !overflow) {
+                return;
+            }
+            Segment segment = segments.pollFirstEntry().getValue();
+            size -= segment.records.size();
+            archiving.addLast(segment);
+            archivingSize += segment.records.size();
+        }
+    }
+
+    /**
+     * Архивирует переданные сегменты вне блокировки хранилища. Если архивацией уже занят
+     * другой поток, сразу возвращается: тот поток заберёт и эти сегменты.
+     */
+    private void archivePending() {
+        if (archive == null || !archiveLock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                Segment segment;
+                lock.readLock().lock();
+                try {
+                    segment = archiving.peekFirst();
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (segment == null) {
+                    return;
+                }
+
+                // Переданный сегмент больше не меняется, поэтому читается без блокировки
+                AuditArchive.Staged staged;
+                try {
+                    staged = archive.stage(segment.records);
+                } catch (IOException e) {
+                    System.err.println("Ошибка архивации аудита: " + e.getMessage());
+                    return; // записи остаются в памяти, попробуем при следующем добавлении
+                }
+
+                lock.writeLock().lock();
+                try {
+                    archive.publish(staged);
+                    archiving.pollFirst();
+                    archivingSize -= segment.records.size();
+                } catch (IOException e) {
+                    System.err.println("Ошибка архивации аудита: " + e.getMessage());
+                    return;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                removeFromAppData(segment.records);
+            }
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    private void removeFromAppData(List<AuditRecord> archived) {
+        Set<AuditRecord> identities = Collections.newSetFromMap(new IdentityHashMap<>(archived.size() * 2));
+        identities.addAll(archived);
+        List<AuditRecord> records = appData.getAuditRecords();
+        synchronized (records) {
+            records.removeIf(identities::contains);
+        }
+    }
+
+    private static List<AuditRecord> readArchive(List<Path> files, LocalDateTime dateTime) {
+        try {
+            return AuditArchive.read(files, dateTime);
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения архива аудита: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // ==================== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ====================
+
+    private Iterable<Segment> allSegments() {
+        if (archiving.isEmpty()) {
+            return segments.values();
+        }
+        List<Segment> all = new ArrayList<>(archiving);
+        all.addAll(segments.values());
+        return all;
+    }
+
+    private void index(AuditRecord record) {
+        Segment segment = segments.computeIfAbsent(segmentOf(record.getTimestamp()), key -> new Segment());
+        insertInOrder(segment.records, record);
+        insertInOrder(segment.byUser.computeIfAbsent(record.getUsername(), key -> new ArrayList<>()), record);
+        insertInOrder(segment.byAction.computeIfAbsent(record.getAction(), key -> new ArrayList<>()), record);
+        size++;
+    }
+
+    private long segmentOf(LocalDateTime dateTime) {
+        return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), segmentSeconds);
+    }
+
+    /**
+     * Дописывает запись в конец или, если она запоздала, вставляет после записей с тем же временем.
+     */
+    private static void insertInOrder(List<AuditRecord> records, AuditRecord record) {
+        if (records.isEmpty() || BY_TIME.compare(records.get(records.size() - 1), record) <= 0) {
+            records.add(record);
+            return;
+        }
+        records.add(firstAfter(records, record.getTimestamp()), record);
+    }
+
+    /**
+     * Индекс первой записи со временем строго больше {@code dateTime} (бинарный поиск).
+     */
+    private static int firstAfter(List<AuditRecord> records, LocalDateTime dateTime) {
+        int low = 0;
+        int high = records.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (records.get(mid).getTimestamp().isAfter(dateTime)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Записи одного интервала времени и их индексы.
+     */
+    private static final class Segment {
+        private final List<AuditRecord> records = new ArrayList<>();
+        private final Map<String, List<AuditRecord>> byUser = new HashMap<>();
+        private final Map<Action, List<AuditRecord>> byAction = new EnumMap<>(Action.class);
+    }
+}
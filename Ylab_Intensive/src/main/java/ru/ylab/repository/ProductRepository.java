@@ -1,114 +1,483 @@
 package main.java.ru.ylab.repository;
 
 import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.IntProductMap;
+import main.java.ru.ylab.model.OffHeapProductMap;
 import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.ProductPage;
+import main.java.ru.ylab.model.ProductQuery;
+import main.java.ru.ylab.model.StringDictionary;
 
+import java.time.LocalDateTime;
 import java.util.*;
-
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Хранилище товаров с индексами по категории, бренду, цене и триграммам названия.
+ * <p>
+ * Потокобезопасно: основное хранилище — {@link java.util.concurrent.ConcurrentHashMap} из {@link AppData},
+ * индексы защищены {@link ReadWriteLock}, поэтому чтения выполняются параллельно,
+ * а изменения товара и его индексов — атомарно.
+ * </p>
+ * <p>
+ * Индексы строятся при первом запросе, которому они нужны, а не в конструкторе: запуск приложения
+ * не ждёт обхода всего каталога (особенно важно для отображённого в память снимка).
+ * </p>
+ * <p>
+ * Списки id в индексах отсортированы, поэтому постраничные методы ({@code ...Page}) продолжают обход
+ * с курсора и тратят время и память пропорционально размеру страницы, а не всего результата.
+ * </p>
+ * <p>
+ * Индексы id, категорий, брендов и списки триграмм — сжатые битовые множества {@link RoaringBitmap}:
+ * около 2 байт на id вместо ~50 байт на {@code Integer} в {@code TreeSet} или {@code HashSet},
+ * быстрое пересечение и подсчёт фасетов.
+ * Категории и бренды закодированы словарями {@link StringDictionary} из {@link AppData}: индекс — список
+ * множеств по коду, а товары хранят общие экземпляры строк.
+ * </p>
+ * <p>
+ * Если хранилище — {@link OffHeapProductMap}, индекс цен не строится (дерево с множеством на каждую цену
+ * вернуло бы в кучу объекты на товар): выборки по цене просматривают всю колонку цен вне кучи, O(n). Остальные индексы остаются в куче, но без объектов на товар: на каждый id
+ * приходится около 2 байт в каждом битовом множестве, где он есть (id, категория, бренд и по одному
+ * на каждую уникальную триграмму названия), плюс по строке и множеству на уникальную триграмму.
+ * </p>
+ */
 public class ProductRepository {
+    private static final int TRIGRAM_LENGTH = 3;
+    private static final RoaringBitmap EMPTY_BITMAP = new RoaringBitmap(); // только для чтения
+
     private final Map<Integer, Product> products; // основное хранилище
-    private final Map<String, Set<Integer>> categoryIndex; // индекс по категориям
-    private final Map<String, Set<Integer>> brandIndex; // индекс по брендам
+    private final IntProductMap denseProducts; // то же хранилище с доступом без упаковки id (если поддерживается)
+    private final OffHeapProductMap columnarProducts; // то же хранилище, если оно колоночное вне кучи
+    private final RoaringBitmap idIndex; // все id по возрастанию (для постраничного обхода)
+    private final StringDictionary categories; // коды категорий (общие с AppData)
+    private final StringDictionary brands; // коды брендов (общие с AppData)
+    private final List<RoaringBitmap> categoryIndex; // индекс по категориям: код -> id товаров
+    private final List<RoaringBitmap> brandIndex; // индекс по брендам: код -> id товаров
+    private final NavigableMap<Double, Set<Integer>> priceIndex; // отсортированный индекс по цене (кроме колоночного хранилища)
+    private final Map<String, RoaringBitmap> nameTrigramIndex; // инвертированный индекс триграмм названий
     private final AppData appData;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean indexesBuilt;
 
 
     public ProductRepository(AppData appData) {
         this.appData = appData;
         this.products = appData.getProducts();
-        this.categoryIndex = new  HashMap<>();
-        this.brandIndex = new  HashMap<>();
-
-        rebuildIndexes();
+        this.denseProducts = products instanceof IntProductMap dense ? dense : null;
+        this.columnarProducts = products instanceof OffHeapProductMap columnar ? columnar : null;
+        this.idIndex = new RoaringBitmap();
+        this.categories = appData.getCategories();
+        this.brands = appData.getBrands();
+        this.categoryIndex = new ArrayList<>();
+        this.brandIndex = new ArrayList<>();
+        this.priceIndex = new TreeMap<>();
+        this.nameTrigramIndex = new HashMap<>();
     }
 
     //CREATE
 
     public Product add(Product product) {
-        int productId = appData.getNextProductId();
-        appData.setNextProductId(productId + 1);
+        int productId = appData.allocateProductId();
 
         Product newProduct = new Product(productId,
                 product.getName(),
-                product.getCategory(),
-                product.getBrand(),
+                categories.intern(product.getCategory()),
+                brands.intern(product.getBrand()),
                 product.getPrice(),
                 product.getDescription());
-        products.put(productId, newProduct);
-        addToIndexes(newProduct);
+
+        lock.writeLock().lock();
+        try {
+            products.put(productId, newProduct);
+            if (indexesBuilt) {
+                addToIndexes(newProduct);
+            }
+            appData.fireProductSaved(newProduct);
+        } finally {
+            lock.writeLock().unlock();
+        }
         return newProduct;
     }
 
     // READ
 
     public Optional<Product> findById(int id) {
-        return Optional.ofNullable(products.get(id));
+        return Optional.ofNullable(product(id));
     }
 
     public List<Product> findAll() {
-        return products.values().stream()
-                .toList();
+        lock.readLock().lock();
+        try {
+            return products.values().stream()
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 
     // UPDATE
 
-    public boolean update(int id, Product updatedProduct) {
-        Product oldProduct = products.get(id);
-        if (oldProduct == null) {
-            return false;
+    /**
+     * Заменяет товар новой версией.
+     *
+     * @return предыдущая и сохранённая версии товара или {@link Optional#empty()}, если товар не найден
+     */
+    public Optional<Update> update(int id, Product updatedProduct) {
+        lock.writeLock().lock();
+        try {
+            Product oldProduct = product(id);
+            if (oldProduct == null) {
+                return Optional.empty();
+            }
+
+            Product update = new Product(id,
+                    updatedProduct.getName(),
+                    categories.intern(updatedProduct.getCategory()),
+                    brands.intern(updatedProduct.getBrand()),
+                    updatedProduct.getPrice(),
+                    updatedProduct.getDescription(),
+                    oldProduct.getCreatedDate(),
+                    LocalDateTime.now());
+
+            products.put(id, update);
+            if (indexesBuilt) {
+                removeFromIndexes(id, oldProduct);
+                addToIndexes(update);
+            }
+            appData.fireProductSaved(update);
+            return Optional.of(new Update(oldProduct, update));
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    /**
+     * Результат обновления: прежняя версия и версия, сохранённая в хранилище (с id, датой создания
+     * и общими строками категории и бренда).
+     */
+    public record Update(Product previous, Product current) {
+    }
 
-        removeFromIndexes(id, oldProduct);
+    // DELETE
+
+    /**
+     * Удаляет товар.
+     *
+     * @return удалённый товар или {@link Optional#empty()}, если товар не найден
+     */
+    public Optional<Product> delete(int id) {
+        lock.writeLock().lock();
+        try {
+            Product product = products.remove(id);
+            if (product == null) {
+                return Optional.empty();
+            }
+            if (indexesBuilt) {
+                removeFromIndexes(id, product);
+            }
+            appData.fireProductDeleted(id);
+            return Optional.of(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        Product update = new Product(id,
-                updatedProduct.getName(),
-                updatedProduct.getCategory(),
-                updatedProduct.getBrand(),
-                updatedProduct.getPrice(),
-                updatedProduct.getDescription());
+    // SEARCH && FILTER
 
-        products.put(id, update);
+    public List<Product> findByCategory(String category) {
+        lockIndexesForRead();
+        try {
+            return productsOf(postings(categoryIndex, categories.codeOf(category)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        addToIndexes(update);
+    public List<Product> findByBrand(String brand) {
+        lockIndexesForRead();
+        try {
+            return productsOf(postings(brandIndex, brands.codeOf(brand)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        return true;
+    /**
+     * Поиск подстроки в названии без учёта регистра.
+     * Для ключевых слов от трёх символов кандидаты берутся из пересечения
+     * списков триграмм (начиная с самого короткого), полная проверка выполняется только для них.
+     */
+    public List<Product> searchByName(String keyword) {
+        lockIndexesForRead();
+        try {
+            return searchByNameLocked(keyword.toLowerCase());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    // DELETE
+    private List<Product> searchByNameLocked(String lowerKeyword) {
+        if (lowerKeyword.length() < TRIGRAM_LENGTH) {
+            return products.values().stream()
+                    .filter(product -> product.getName().toLowerCase().contains(lowerKeyword))
+                    .toList();
+        }
 
-    public boolean delete(int id) {
-        Product product = products.remove(id);
-        if (product == null) {
-            return false;
+        List<RoaringBitmap> postings = trigramPostings(lowerKeyword);
+        if (postings.isEmpty()) {
+            return Collections.emptyList();
         }
-        removeFromIndexes(id, product);
 
-        return true;
+        List<RoaringBitmap> others = postings.subList(1, postings.size());
+        List<Product> result = new ArrayList<>();
+        PrimitiveIterator.OfInt smallest = postings.get(0).iteratorAfter(-1);
+        while (smallest.hasNext()) {
+            int id = smallest.nextInt();
+            if (containsInAll(others, id)) {
+                Product product = product(id);
+                if (product.getName().toLowerCase().contains(lowerKeyword)) {
+                    result.add(product);
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
     }
 
-    // SEARCH && FILTER
+    // QUERY
 
-    public List<Product> findByCategory(String category) {
-       Set<Integer> productSet = categoryIndex.getOrDefault(category, Collections.emptySet());
+    /**
+     * Составной запрос по категории, бренду, цене и названию. Результат упорядочен по id.
+     * <p>
+     * План выполнения: битовые множества категории и бренда пересекаются поконтейнерно ({@code AND}),
+     * затем источником кандидатов становится самый короткий из списков — результат пересечения или
+     * список триграммы названия. Кандидаты копируются в отсортированный массив {@code int[]}, который
+     * сужается проверкой принадлежности остальным спискам. Цена и точное совпадение подстроки
+     * проверяются только для оставшихся кандидатов. Диапазон цен используется как источник кандидатов,
+     * только если других индексных условий нет.
+     * </p>
+     */
+    public List<Product> query(ProductQuery query) {
+        if (query.hasPriceRange() && query.lowerPrice() > query.upperPrice()) {
+            return Collections.emptyList();
+        }
+        lockIndexesForRead();
+        try {
+            RoaringBitmap attributes = attributeBitmap(query);
+            List<RoaringBitmap> trigramIds = query.keyword() != null && query.keyword().length() >= TRIGRAM_LENGTH
+                    ? trigramPostings(query.keyword().toLowerCase())
+                    : null;
+            if (attributes != null && attributes.isEmpty() || trigramIds != null && trigramIds.isEmpty()) {
+                return Collections.emptyList();
+            }
 
-        return productSet.stream().map(products::get).toList();
+            int[] candidates;
+            int count;
+            List<IntPredicate> filters = new ArrayList<>();
+            if (trigramIds != null && (attributes == null || trigramIds.get(0).cardinality() < attributes.cardinality())) {
+                candidates = trigramIds.get(0).toArray();
+                for (RoaringBitmap ids : trigramIds.subList(1, trigramIds.size())) {
+                    filters.add(ids::contains);
+                }
+                if (attributes != null) {
+                    filters.add(attributes::contains);
+                }
+            } else if (attributes != null) {
+                candidates = attributes.toArray();
+                if (trigramIds != null) {
+                    for (RoaringBitmap ids : trigramIds) {
+                        filters.add(ids::contains);
+                    }
+                }
+            } else {
+                candidates = query.hasPriceRange() ? priceCandidates(query) : idIndex.toArray();
+            }
+            count = candidates.length;
+            for (int i = 0; i < filters.size() && count > 0; i++) {
+                count = retainAll(candidates, count, filters.get(i));
+            }
+
+            List<Product> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Product product = product(candidates[i]);
+                if (query.matches(product)) {
+                    result.add(product);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public List<Product> findByBrand(String brand) {
-        Set<Integer> productSet = brandIndex.getOrDefault(brand, Collections.emptySet());
-        return productSet.stream().map(products::get).toList();
+    /**
+     * Пересечение битовых множеств категории и бренда запроса.
+     *
+     * @return {@code null}, если ни категория, ни бренд не заданы; пустое множество, если совпадений нет
+     */
+    private RoaringBitmap attributeBitmap(ProductQuery query) {
+        RoaringBitmap result = null;
+        if (query.category() != null) {
+            result = postings(categoryIndex, categories.codeOf(query.category()));
+        }
+        if (query.brand() != null) {
+            RoaringBitmap brandIds = postings(brandIndex, brands.codeOf(query.brand()));
+            result = result == null ? brandIds : result.and(brandIds);
+        }
+        return result;
     }
 
-    public List<Product> searchByName(String keyword) {
-        return products.values().stream()
-                .filter(product -> product.getName().toLowerCase().contains(keyword.toLowerCase()))
-                .toList();
+    private int[] priceCandidates(ProductQuery query) {
+        if (columnarProducts != null) {
+            return columnarProducts.findIdsByPriceRange(query.lowerPrice(), query.upperPrice());
+        }
+        int size = 0;
+        Collection<Set<Integer>> buckets = priceIndex.subMap(query.lowerPrice(), true, query.upperPrice(), true).values();
+        for (Set<Integer> ids : buckets) {
+            size += ids.size();
+        }
+        int[] result = new int[size];
+        int i = 0;
+        for (Set<Integer> ids : buckets) {
+            for (Integer id : ids) {
+                result[i++] = id;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Оставляет в начале массива только id, входящие в {@code ids}, сохраняя порядок.
+     *
+     * @return новое количество элементов
+     */
+    private static int retainAll(int[] candidates, int count, IntPredicate contains) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (contains.test(candidates[i])) {
+                candidates[kept++] = candidates[i];
+            }
+        }
+        return kept;
+    }
+
+    // PAGINATION
+
+    /**
+     * Страница всех товаров по возрастанию id.
+     *
+     * @param cursor id последнего товара предыдущей страницы ({@link ProductPage#FIRST_PAGE} — с начала)
+     * @param limit  максимальный размер страницы
+     */
+    public ProductPage findPage(int cursor, int limit) {
+        lockIndexesForRead();
+        try {
+            return page(idIndex.iteratorAfter(cursor), limit, product -> true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ProductPage findByCategoryPage(String category, int cursor, int limit) {
+        lockIndexesForRead();
+        try {
+            return page(postings(categoryIndex, categories.codeOf(category)).iteratorAfter(cursor), limit,
+                    product -> true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ProductPage findByBrandPage(String brand, int cursor, int limit) {
+        lockIndexesForRead();
+        try {
+            return page(postings(brandIndex, brands.codeOf(brand)).iteratorAfter(cursor), limit,
+                    product -> true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Страница результатов поиска по названию: обходится самый короткий список триграмм
+     * начиная с курсора, пока страница не заполнится.
+     */
+    public ProductPage searchByNamePage(String keyword, int cursor, int limit) {
+        String lowerKeyword = keyword.toLowerCase();
+        Predicate<Product> matches = product -> product.getName().toLowerCase().contains(lowerKeyword);
+        lockIndexesForRead();
+        try {
+            if (lowerKeyword.length() < TRIGRAM_LENGTH) {
+                return page(idIndex.iteratorAfter(cursor), limit, matches);
+            }
+            List<RoaringBitmap> postings = trigramPostings(lowerKeyword);
+            if (postings.isEmpty()) {
+                return ProductPage.EMPTY;
+            }
+            List<RoaringBitmap> others = postings.subList(1, postings.size());
+            return page(postings.get(0).iteratorAfter(cursor), limit,
+                    product -> containsInAll(others, product.getId()) && matches.test(product));
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    /**
+     * Набирает до {@code limit} подходящих товаров из возрастающей последовательности id
+     * и проверяет, есть ли за ними ещё хотя бы один.
+     */
+    private ProductPage page(PrimitiveIterator.OfInt ids, int limit, Predicate<Product> filter) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Размер страницы должен быть положительным");
+        }
+        List<Product> items = new ArrayList<>();
+        while (ids.hasNext()) {
+            Product product = product(ids.nextInt());
+            if (!filter.test(product)) {
+                continue;
+            }
+            if (items.size() == limit) {
+                return new ProductPage(items, true);
+            }
+            items.add(product);
+        }
+        return new ProductPage(items, false);
+    }
+
+    /**
+     * Поиск по диапазону цен (включительно) через отсортированный индекс:
+     * O(log n) на поиск границы + размер результата.
+     * Для {@link OffHeapProductMap} индекса нет — просматривается вся колонка цен, O(n) независимо
+     * от ширины диапазона; порядок результата тот же (по цене).
+     */
     public List<Product> findByPriceRange(double lowerBound, double upperBound) {
-        return products.values().stream()
-                .filter(product ->  product.getPrice() >= lowerBound && product.getPrice() <= upperBound)
-                .toList();
+        if (lowerBound > upperBound) {
+            return Collections.emptyList();
+        }
+        lockIndexesForRead();
+        try {
+            List<Product> result = new ArrayList<>();
+            if (columnarProducts != null) {
+                // индекса цен в этом режиме нет: полный проход по колонке
+                for (int id : columnarProducts.findIdsByPriceRange(lowerBound, upperBound)) {
+                    result.add(columnarProducts.get(id));
+                }
+                result.sort(Comparator.comparingDouble(Product::getPrice));
+                return Collections.unmodifiableList(result);
+            }
+            for (Set<Integer> ids : priceIndex.subMap(lowerBound, true, upperBound, true).values()) {
+                for (Integer id : ids) {
+                    result.add(product(id));
+                }
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 
@@ -118,35 +487,240 @@ public class ProductRepository {
         return products.size();
     }
 
+    /**
+     * Контрольная сумма содержимого каталога: меняется при добавлении, изменении и удалении товара.
+     * Позволяет проверить, что сохранённые на диске производные данные (например, кэш результатов)
+     * относятся к этому каталогу. Не зависит от порядка обхода товаров.
+     */
+    public long fingerprint() {
+        lock.readLock().lock();
+        try {
+            long sum = products.size();
+            for (Product product : products.values()) {
+                LocalDateTime modified = product.getModifiedDate();
+                long h = product.getId() * 0x9E3779B97F4A7C15L;
+                if (modified != null) {
+                    h ^= modified.toLocalDate().toEpochDay() * 0xC2B2AE3D27D4EB4FL + modified.toLocalTime().toNanoOfDay();
+                }
+                // Перемешивание (финализатор MurmurHash3), чтобы сумма не сокращала похожие значения
+                h ^= h >>> 33;
+                h *= 0xFF51AFD7ED558CCDL;
+                h ^= h >>> 33;
+                sum += h;
+            }
+            return sum;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public Set<String> getAllCategories() {
-        return new HashSet<>(categoryIndex.keySet());
+        lockIndexesForRead();
+        try {
+            return new HashSet<>(facetCounts(categoryIndex, categories, null).keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public Set<String> getAllBrands() {
-        return new HashSet<>(brandIndex.keySet());
+        lockIndexesForRead();
+        try {
+            return new HashSet<>(facetCounts(brandIndex, brands, null).keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Количество товаров каждой категории; если задан бренд — только среди товаров этого бренда.
+     * Считается пересечением битовых множеств без построения списков товаров.
+     */
+    public Map<String, Integer> countByCategory(String brand) {
+        lockIndexesForRead();
+        try {
+            return facetCounts(categoryIndex, categories,
+                    brand != null ? postings(brandIndex, brands.codeOf(brand)) : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Количество товаров каждого бренда; если задана категория — только среди товаров этой категории.
+     */
+    public Map<String, Integer> countByBrand(String category) {
+        lockIndexesForRead();
+        try {
+            return facetCounts(brandIndex, brands,
+                    category != null ? postings(categoryIndex, categories.codeOf(category)) : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Map<String, Integer> facetCounts(List<RoaringBitmap> index, StringDictionary dictionary,
+                                                    RoaringBitmap filter) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int code = 0; code < index.size(); code++) {
+            RoaringBitmap ids = index.get(code);
+            if (ids == null) {
+                continue;
+            }
+            int count = filter == null ? ids.cardinality() : ids.andCardinality(filter);
+            if (count > 0) {
+                counts.put(dictionary.decode(code), count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Множество id для кода словаря; пустое, если кода нет или товаров с ним не осталось.
+     */
+    private static RoaringBitmap postings(List<RoaringBitmap> index, int code) {
+        RoaringBitmap ids = code >= 0 && code < index.size() ? index.get(code) : null;
+        return ids != null ? ids : EMPTY_BITMAP;
+    }
+
+    private static void addPosting(List<RoaringBitmap> index, int code, int id) {
+        while (index.size() <= code) {
+            index.add(null);
+        }
+        RoaringBitmap ids = index.get(code);
+        if (ids == null) {
+            ids = new RoaringBitmap();
+            index.set(code, ids);
+        }
+        ids.add(id);
+    }
+
+    private static void removePosting(List<RoaringBitmap> index, int code, int id) {
+        RoaringBitmap ids = code >= 0 && code < index.size() ? index.get(code) : null;
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.set(code, null);
+            }
+        }
     }
 
     private void addToIndexes(Product product) {
-        categoryIndex.computeIfAbsent(product.getCategory(), k -> new HashSet<>()).add(product.getId());
-        brandIndex.computeIfAbsent(product.getBrand(), k -> new HashSet<>()).add(product.getId());
+        idIndex.add(product.getId());
+        if (product.getCategory() != null) {
+            addPosting(categoryIndex, categories.encode(product.getCategory()), product.getId());
+        }
+        if (product.getBrand() != null) {
+            addPosting(brandIndex, brands.encode(product.getBrand()), product.getId());
+        }
+        if (columnarProducts == null) {
+            priceIndex.computeIfAbsent(product.getPrice(), k -> new HashSet<>()).add(product.getId());
+        }
+        for (String trigram : trigrams(product.getName().toLowerCase())) {
+            nameTrigramIndex.computeIfAbsent(trigram, k -> new RoaringBitmap()).add(product.getId());
+        }
     }
 
     private void removeFromIndexes(int id, Product product) {
-        Set<Integer> categoryIds = categoryIndex.get(product.getCategory());
-        if (categoryIds != null) {
-            categoryIds.remove(id);
-            if (categoryIds.isEmpty()) {
-                categoryIndex.remove(product.getCategory());
+        idIndex.remove(id);
+
+        removePosting(categoryIndex, categories.codeOf(product.getCategory()), id);
+        removePosting(brandIndex, brands.codeOf(product.getBrand()), id);
+
+        Set<Integer> priceIds = columnarProducts == null ? priceIndex.get(product.getPrice()) : null;
+        if (priceIds != null) {
+            priceIds.remove(id);
+            if (priceIds.isEmpty()) {
+                priceIndex.remove(product.getPrice());
+            }
+        }
+
+        for (String trigram : trigrams(product.getName().toLowerCase())) {
+            RoaringBitmap trigramIds = nameTrigramIndex.get(trigram);
+            if (trigramIds != null) {
+                trigramIds.remove(id);
+                if (trigramIds.isEmpty()) {
+                    nameTrigramIndex.remove(trigram);
+                }
             }
         }
+    }
 
-        Set<Integer> brandIds = brandIndex.get(product.getBrand());
-        if (brandIds != null) {
-            brandIds.remove(id);
-            if (brandIds.isEmpty()) {
-                brandIndex.remove(product.getBrand());
+    /**
+     * Разбивает строку на уникальные триграммы (подстроки длины 3).
+     */
+    private static Set<String> trigrams(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + TRIGRAM_LENGTH <= text.length(); i++) {
+            result.add(text.substring(i, i + TRIGRAM_LENGTH));
+        }
+        return result;
+    }
+
+    /**
+     * Товар по id без упаковки ключа, если хранилище — {@link IntProductMap} или {@link OffHeapProductMap}.
+     */
+    private Product product(int id) {
+        if (denseProducts != null) {
+            return denseProducts.get(id);
+        }
+        return columnarProducts != null ? columnarProducts.get(id) : products.get(id);
+    }
+
+    private List<Product> productsOf(RoaringBitmap ids) {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<Product> result = new ArrayList<>(ids.cardinality());
+        PrimitiveIterator.OfInt it = ids.iteratorAfter(-1);
+        while (it.hasNext()) {
+            result.add(product(it.nextInt()));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Списки id для всех триграмм ключевого слова, от самого короткого к самому длинному.
+     * Пустой результат — хотя бы одной триграммы нет ни в одном названии.
+     */
+    private List<RoaringBitmap> trigramPostings(String lowerKeyword) {
+        List<RoaringBitmap> postings = new ArrayList<>();
+        for (String trigram : trigrams(lowerKeyword)) {
+            RoaringBitmap ids = nameTrigramIndex.get(trigram);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            postings.add(ids);
+        }
+        postings.sort(Comparator.comparingInt(RoaringBitmap::cardinality));
+        return postings;
+    }
+
+    private static boolean containsInAll(List<RoaringBitmap> postings, int id) {
+        for (RoaringBitmap ids : postings) {
+            if (!ids.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Захватывает блокировку чтения, предварительно построив индексы, если это первый запрос к ним.
+     */
+    private void lockIndexesForRead() {
+        if (!indexesBuilt) {
+            lock.writeLock().lock();
+            try {
+                if (!indexesBuilt) {
+                    rebuildIndexes();
+                    indexesBuilt = true;
+                }
+            } finally {
+                lock.writeLock().unlock();
             }
         }
+        lock.readLock().lock();
     }
 
     /**
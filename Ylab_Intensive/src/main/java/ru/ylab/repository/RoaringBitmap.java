@@ -0,0 +1,456 @@
+package main.java.ru.ylab.repository;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Сжатое множество неотрицательных {@code int} (id товаров) по схеме Roaring.
+ * <p>
+ * Число делится на старшие и младшие 16 бит. Для каждого старшего значения хранится контейнер
+ * младших: отсортированный {@code char[]}, пока в нём не больше {@value #ARRAY_MAX} значений
+ * (2 байта на элемент), иначе битовая карта на 65536 бит (8 КБ). Обратно в массив карта превращается,
+ * когда в ней остаётся вдвое меньше значений.
+ * Пересечение выполняется поконтейнерно: массив с массивом — слиянием, битовые карты — побитовым AND,
+ * смешанный случай — проверкой элементов массива в карте.
+ * </p>
+ * <p>
+ * Не потокобезопасно: {@code ProductRepository} обращается к индексам под своей блокировкой.
+ * </p>
+ */
+final class RoaringBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10; // 65536 бит
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size; // количество контейнеров
+
+    // ==================== ИЗМЕНЕНИЕ ====================
+
+    boolean add(int value) {
+        char key = high(value);
+        int i = indexOfKey(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key, new ArrayContainer());
+        }
+        Container container = containers[i];
+        boolean added = container.add(low(value));
+        if (added && container instanceof ArrayContainer array && array.cardinality > ARRAY_MAX) {
+            containers[i] = array.toBitmap();
+        }
+        return added;
+    }
+
+    boolean remove(int value) {
+        int i = indexOfKey(high(value));
+        if (i < 0) {
+            return false;
+        }
+        Container container = containers[i];
+        boolean removed = container.remove(low(value));
+        if (!removed) {
+            return false;
+        }
+        if (container.cardinality() == 0) {
+            removeContainer(i);
+        } else if (container instanceof BitmapContainer bitmap && bitmap.cardinality <= ARRAY_MAX / 2) {
+            // запас до обратного перехода, чтобы add/remove на границе не перестраивали контейнер
+            containers[i] = bitmap.toArray();
+        }
+        return true;
+    }
+
+    // ==================== ЧТЕНИЕ ====================
+
+    boolean contains(int value) {
+        int i = indexOfKey(high(value));
+        return i >= 0 && containers[i].contains(low(value));
+    }
+
+    int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Пересечение двух множеств (новый объект, исходные не меняются).
+     */
+    RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.insertContainer(result.size, keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Размер пересечения без построения результата (для подсчёта фасетов).
+     */
+    int andCardinality(RoaringBitmap other) {
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    int[] toArray() {
+        int[] result = new int[cardinality()];
+        int n = 0;
+        PrimitiveIterator.OfInt it = iteratorAfter(-1);
+        while (it.hasNext()) {
+            result[n++] = it.nextInt();
+        }
+        return result;
+    }
+
+    /**
+     * Обход значений строго больше {@code after} по возрастанию.
+     */
+    PrimitiveIterator.OfInt iteratorAfter(int after) {
+        return new PrimitiveIterator.OfInt() {
+            private int containerIndex = after < 0 ? 0 : firstContainerFrom(high(after));
+            private int lowCursor = after >= 0 && containerIndex < size && keys[containerIndex] == high(after)
+                    ? low(after) : -1;
+            private int next = advance();
+
+            private int advance() {
+                while (containerIndex < size) {
+                    int found = containers[containerIndex].nextAfter(lowCursor);
+                    if (found >= 0) {
+                        lowCursor = found;
+                        return (keys[containerIndex] << 16) | found;
+                    }
+                    containerIndex++;
+                    lowCursor = -1;
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                int result = next;
+                next = advance();
+                return result;
+            }
+        };
+    }
+
+    // ==================== КОНТЕЙНЕРЫ ====================
+
+    private static char high(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char low(int value) {
+        return (char) value;
+    }
+
+    private int indexOfKey(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private int firstContainerFrom(char key) {
+        int i = indexOfKey(key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        containers[--size] = null;
+    }
+
+    private interface Container {
+        boolean add(char value);
+
+        boolean remove(char value);
+
+        boolean contains(char value);
+
+        int cardinality();
+
+        /**
+         * Наименьшее значение строго больше {@code after} или {@code -1}.
+         */
+        int nextAfter(int after);
+
+        Container and(Container other);
+
+        int andCardinality(Container other);
+    }
+
+    /**
+     * Отсортированный массив младших 16 бит — для разреженных блоков.
+     */
+    private static final class ArrayContainer implements Container {
+        private char[] values = new char[4];
+        private int cardinality;
+
+        @Override
+        public boolean add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return false;
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX + 1));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        public boolean remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int nextAfter(int after) {
+            if (after >= Character.MAX_VALUE) {
+                return -1;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) (after + 1));
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < cardinality ? values[i] : -1;
+        }
+
+        @Override
+        public Container and(Container other) {
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, Math.min(cardinality, other.cardinality()))];
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result.values[result.cardinality++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result.values[result.cardinality++] = values[i];
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            // Тот же проход, что в and(), но без массива результата
+            int count = 0;
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        count++;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Битовая карта на 65536 значений — для плотных блоков.
+     */
+    private static final class BitmapContainer implements Container {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int cardinality;
+
+        @Override
+        public boolean add(char value) {
+            long mask = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & mask) != 0) {
+                return false;
+            }
+            words[word] |= mask;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        public boolean remove(char value) {
+            long mask = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & mask) == 0) {
+                return false;
+            }
+            words[word] &= ~mask;
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int nextAfter(int after) {
+            int from = after + 1;
+            if (from > Character.MAX_VALUE) {
+                return -1;
+            }
+            int word = from >>> 6;
+            long bits = words[word] & (-1L << from);
+            while (true) {
+                if (bits != 0) {
+                    return (word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+                if (++word == BITMAP_WORDS) {
+                    return -1;
+                }
+                bits = words[word];
+            }
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result.words[i] = words[i] & bitmap.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result.cardinality <= ARRAY_MAX ? result.toArray() : result;
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            int total = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                total += Long.bitCount(words[i] & bitmap.words[i]);
+            }
+            return total;
+        }
+
+        private ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[Math.max(1, cardinality)];
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long bits = words[i];
+                while (bits != 0) {
+                    array.values[array.cardinality++] = (char) ((i << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return array;
+        }
+    }
+}
@@ -22,6 +22,12 @@ import java.util.List;
  * </ul>
  * </p>
  * <p>
+ * Записи хранятся в {@link main.java.ru.ylab.repository.AuditLogRepository} сегментами по времени
+ * с индексами по пользователю и действию, поэтому выборки не просматривают всю историю.
+ * Все возвращаемые списки упорядочены по времени. При заданной политике хранения
+ * в памяти остаётся только «горячее» окно записей, остальные уходят в сжатый архив.
+ * </p>
+ * <p>
  * Пример использования:
  * <pre>{@code
  * AuditService auditService = new AuditServiceImpl(appData);
@@ -95,6 +101,7 @@ public interface AuditService {
      * Возвращает записи, создённые после указанного времени.
      * <p>
      * Используется для получения недавних действий, например операций за последний час.
+     * В отличие от остальных выборок, учитывает и записи, перенесённые политикой хранения в архив на диске.
      * </p>
      *
      * @param dateTime точка времени, после которой нужно получить записи (не может быть {@code null})
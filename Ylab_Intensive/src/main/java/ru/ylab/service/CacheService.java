@@ -1,8 +1,10 @@
 package main.java.ru.ylab.service;
 
+import main.java.ru.ylab.model.CacheDependency;
 import main.java.ru.ylab.model.Product;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Сервис кэширования для ускорения повторных запросов.
@@ -14,15 +16,18 @@ import java.util.List;
  * <p>
  * <strong>Ключевые особенности:</strong>
  * <ul>
- *   <li>Ограниченный размер кэша (максимум записей)</li>
+ *   <li>Ограниченный размер кэша (максимум записей и бюджет памяти по оценке веса записей)</li>
  *   <li>Автоматическое удаление устаревших записей (TTL)</li>
+ *   <li>Фоновая перезагрузка записей до и сразу после окончания TTL (refresh-ahead, stale-while-revalidate)</li>
  *   <li>LRU вытеснение — при переполнении удаляются давно не используемые записи</li>
  *   <li>Метрики попаданий/промахов для анализа эффективности</li>
- *   <li>Защитное копирование данных (defensive copy)</li>
+ *   <li>Данные хранятся неизменяемыми списками и отдаются без копирования</li>
  * </ul>
  * </p>
  * <p>
- * <strong>Потокобезопасность:</strong> сервис НЕ является потокобезопасным.
+ * <strong>Потокобезопасность:</strong> реализации должны допускать обращения из нескольких потоков
+ * ({@code CacheServiceImpl} синхронизирует все операции, кроме вызова загрузчика
+ * в {@link #get(String, CacheDependency, Supplier)}).
  * </p>
  * <p>
  * Пример использования:
@@ -33,7 +38,10 @@ import java.util.List;
  * cache.put("all_products", products);  // Сохраняем в кэш
  *
  * // Позже
- * List<Product> cached = cache.get("all_products");  // Получаем копию из кэша
+ * List<Product> cached = cache.get("all_products");  // Получаем неизменяемый список из кэша
+ *
+ * // Или загружаем при промахе: одновременные промахи выполнят findAll() один раз
+ * List<Product> all = cache.get("all_products", repository::findAll);
  *
  * // Анализируем эффективность
  * System.out.println("Hit ratio: " + cache.getHitRatio() * 100 + "%");
@@ -48,6 +56,11 @@ import java.util.List;
  */
 public interface CacheService {
 
+    /**
+     * Бюджет памяти кэша без ограничения: размер кэша ограничен только количеством записей.
+     */
+    long UNLIMITED_WEIGHT = Long.MAX_VALUE;
+
     /**
      * Возвращает максимальный размер кэша (максимальное количество записей).
      *
@@ -55,6 +68,19 @@ public interface CacheService {
      */
     int getMaxSize();
 
+    /**
+     * Возвращает бюджет памяти кэша в байтах.
+     * <p>
+     * Вес записи — оценка памяти, занимаемой списком результатов ({@code CacheEntry#weight()}).
+     * Пока суммарный вес превышает бюджет, вытесняются давно не используемые записи;
+     * запись тяжелее всего бюджета не сохраняется.
+     * </p>
+     *
+     * @return бюджет в байтах ({@code > 0}, {@link #UNLIMITED_WEIGHT} — без ограничения)
+     * @see #getWeightBytes()
+     */
+    long getMaxWeightBytes();
+
     /**
      * Возвращает время жизни записей в кэше в миллисекундах.
      * <p>
@@ -70,8 +96,9 @@ public interface CacheService {
      * <p>
      * <strong>Поведение:</strong>
      * <ul>
-     *   <li>Если ключ найден и запись не устарела — возвращает защитную копию списка</li>
-     *   <li>Если запись устарела — удаляет её и возвращает {@code null}</li>
+     *   <li>Если ключ найден и запись не устарела — возвращает сохранённый неизменяемый список</li>
+     *   <li>Если запись устарела — возвращает {@code null}; сама запись удаляется,
+     *       когда истекло и окно stale-while-revalidate</li>
      *   <li>Если ключа нет — возвращает {@code null}</li>
      *   <li>Увеличивает счётчик попаданий (hits) при успехе, промахов (misses) при неудаче</li>
      *   <li>Обновляет время последнего обращения для LRU</li>
@@ -79,30 +106,105 @@ public interface CacheService {
      * </p>
      *
      * @param key ключ для поиска (не может быть {@code null})
-     * @return защитная копия списка товаров, если найдена и не устарела; {@code null} иначе
+     * @return неизменяемый список товаров, если найден и не устарел; {@code null} иначе
      * @throws NullPointerException если key равен {@code null}
      * @see #put(String, List)
      */
     List<Product> get(String key);
 
+    /**
+     * Получает значение из кэша, а при промахе загружает и сохраняет его.
+     * <p>
+     * <strong>Поведение:</strong>
+     * <ul>
+     *   <li>Попадание — как у {@link #get(String)}, загрузчик не вызывается</li>
+     *   <li>При промахе загрузчик выполняется один раз на ключ: потоки, промахнувшиеся
+     *       одновременно, ждут его результата вместо повторного вычисления (single-flight)</li>
+     *   <li>Если запись инвалидирована во время загрузки, результат возвращается вызывающим,
+     *       но не сохраняется в кэш</li>
+     *   <li>Исключение загрузчика получают все ожидающие потоки, в кэш ничего не сохраняется</li>
+     *   <li>Реализации с политикой обновления отдают запись, близкую к концу TTL или недавно устаревшую,
+     *       сразу и перезагружают её в фоне ({@code CacheRefreshPolicy})</li>
+     * </ul>
+     * </p>
+     * <p>
+     * Реализация по умолчанию не объединяет загрузки; {@code CacheServiceImpl}
+     * и {@code ShardedCacheServiceImpl} её переопределяют.
+     * </p>
+     *
+     * @param key ключ для поиска (не может быть {@code null})
+     * @param dependency от каких товаров зависит результат (не может быть {@code null})
+     * @param loader вычисляет значение при промахе (не может быть {@code null} и возвращать {@code null})
+     * @return неизменяемый список товаров из кэша или загруженный
+     * @throws NullPointerException если key, dependency или loader равны {@code null}
+     * @see #get(String)
+     */
+    default List<Product> get(String key, CacheDependency dependency, Supplier<List<Product>> loader) {
+        List<Product> cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        List<Product> loaded = List.copyOf(loader.get());
+        put(key, loaded, dependency);
+        return loaded;
+    }
+
+    /**
+     * Получает значение, которое зависит от любого изменения каталога, загружая его при промахе.
+     *
+     * @param key ключ для поиска (не может быть {@code null})
+     * @param loader вычисляет значение при промахе (не может быть {@code null})
+     * @return неизменяемый список товаров из кэша или загруженный
+     * @see #get(String, CacheDependency, Supplier)
+     */
+    default List<Product> get(String key, Supplier<List<Product>> loader) {
+        return get(key, CacheDependency.any(), loader);
+    }
+
     /**
      * Сохраняет значение в кэш.
      * <p>
      * <strong>Поведение:</strong>
      * <ul>
-     *   <li>Создаёт защитную копию списка перед сохранением</li>
-     *   <li>Если кэш переполнен — удаляет LRU запись и добавляет новую</li>
+     *   <li>Сохраняет неизменяемый снимок списка (товары не копируются)</li>
+     *   <li>Если кэш переполнен или превышен бюджет памяти — удаляет LRU записи</li>
+     *   <li>Запись тяжелее всего бюджета памяти не сохраняется</li>
      *   <li>Устанавливает текущее время как время добавления записи</li>
      * </ul>
      * </p>
      *
      * @param key ключ для сохранения (не может быть {@code null})
      * @param data список товаров для кэширования (не может быть {@code null})
-     * @throws NullPointerException если key или data равны {@code null}
+     * @param dependency от каких товаров зависит результат (не может быть {@code null})
+     * @throws NullPointerException если key, data или dependency равны {@code null}
      * @see #get(String)
+     * @see #invalidateAffected(Product)
+     */
+    void put(String key, List<Product> data, CacheDependency dependency);
+
+    /**
+     * Сохраняет значение, которое зависит от любого изменения каталога.
+     *
+     * @param key ключ для сохранения (не может быть {@code null})
+     * @param data список товаров для кэширования (не может быть {@code null})
+     * @see #put(String, List, CacheDependency)
+     */
+    default void put(String key, List<Product> data) {
+        put(key, data, CacheDependency.any());
+    }
+
+    /**
+     * Удаляет записи, на которые влияет изменение товара.
+     * <p>
+     * Вызывается для каждой версии изменённого товара (новой, старой или удалённой):
+     * удаляются только записи, чья {@link CacheDependency} зависит от этого товара,
+     * остальные продолжают обслуживать запросы.
+     * </p>
+     *
+     * @param product изменённый товар (не может быть {@code null})
      * @see #invalidate(String)
      */
-    void put(String key, List<Product> data);
+    void invalidateAffected(Product product);
 
     /**
      * Удаляет конкретную запись из кэша по ключу.
@@ -119,8 +221,8 @@ public interface CacheService {
     /**
      * Очищает весь кэш.
      * <p>
-     * Используется при значительных изменениях в репозитории (добавление, удаление, обновление товаров).
-     * Сбрасывает счётчики метрик.
+     * Используется, когда затронутые записи невозможно определить.
+     * Для изменений отдельных товаров используйте {@link #invalidateAffected(Product)}.
      * </p>
      *
      * @see #invalidate(String)
@@ -134,6 +236,14 @@ public interface CacheService {
      */
     int size();
 
+    /**
+     * Возвращает текущий суммарный вес записей кэша в байтах.
+     *
+     * @return вес записей ({@code >= 0} и {@code <= getMaxWeightBytes()})
+     * @see #getMaxWeightBytes()
+     */
+    long getWeightBytes();
+
     /**
      * Возвращает количество попаданий в кэш (cache hits).
      * <p>
@@ -158,6 +268,24 @@ public interface CacheService {
      */
     int getMisses();
 
+    /**
+     * Возвращает количество попаданий в устаревшие записи.
+     * <p>
+     * Такая запись отдаётся загрузочным {@link #get(String, CacheDependency, Supplier)} в пределах
+     * окна stale-while-revalidate, а перезагружается в фоне. Входит в {@link #getHits()}.
+     * </p>
+     *
+     * @return количество попаданий в устаревшие записи ({@code >= 0})
+     */
+    int getStaleHits();
+
+    /**
+     * Возвращает количество запущенных фоновых перезагрузок (refresh-ahead и stale-while-revalidate).
+     *
+     * @return количество фоновых перезагрузок ({@code >= 0})
+     */
+    int getRefreshes();
+
     /**
      * Возвращает коэффициент попаданий (hit ratio).
      * <p>
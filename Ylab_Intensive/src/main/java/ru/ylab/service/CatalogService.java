@@ -1,9 +1,13 @@
 package main.java.ru.ylab.service;
 
 import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.ProductPage;
+import main.java.ru.ylab.model.ProductQuery;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Сервис для управления каталогом товаров маркетплейса.
@@ -14,18 +18,19 @@ import java.util.Optional;
  * </p>
  * <p>
  * Сервис использует кэширование для ускорения повторных запросов.
- * При изменении данных кэш автоматически инвалидируется.
+ * При изменении товара инвалидируются только зависящие от него записи кэша.
  * </p>
  * <p>
- * <strong>Потокобезопасность:</strong> сервис НЕ является потокобезопасным.
+ * <strong>Потокобезопасность:</strong> сервис потокобезопасен и не хранит состояние сессии —
+ * имя пользователя для аудита передаётся в каждую операцию, поэтому один экземпляр
+ * обслуживает любое количество параллельных сессий.
  * </p>
  * <p>
  * Пример использования:
  * <pre>{@code
  * CatalogService service = new CatalogServiceImpl(repository, auditService, cacheService);
- * service.setCurrentUser("admin");
- *
  * Product product = service.addProduct(
+ *     "admin",
  *     "MacBook Pro",
  *     "Electronics",
  *     "Apple",
@@ -47,17 +52,6 @@ import java.util.Optional;
  */
 public interface CatalogService {
 
-    /**
-     * Устанавливает текущего пользователя для аудита операций.
-     * <p>
-     * Это имя будет использоваться во всех записях аудита для отслеживания,
-     * кто выполнил каждое действие.
-     * </p>
-     *
-     * @param currentUser имя пользователя (может быть {@code null} для системных операций)
-     */
-    void setCurrentUser(String currentUser);
-
     /**
      * Добавляет новый товар в каталог.
      * <p>
@@ -65,11 +59,12 @@ public interface CatalogService {
      * При успешном добавлении:
      * <ul>
      *   <li>Генерируется уникальный ID</li>
-     *   <li>Очищается весь кэш</li>
+     *   <li>Инвалидируются только записи кэша, зависящие от товара</li>
      *   <li>Записывается событие ADD в аудит-лог</li>
      * </ul>
      * </p>
      *
+     * @param username имя пользователя для аудита (может быть {@code null} для системных операций)
      * @param name название товара (не может быть {@code null} или пустым)
      * @param category категория товара (не может быть {@code null} или пустой)
      * @param brand бренд товара (не может быть {@code null} или пустым)
@@ -78,18 +73,18 @@ public interface CatalogService {
      * @return добавленный товар с присвоенным ID (никогда не {@code null})
      * @throws IllegalArgumentException если название, категория или бренд пусты
      * @throws IllegalArgumentException если цена отрицательная
-     * @see #updateProduct(int, String, String, String, double, String)
-     * @see #deleteProduct(int)
+     * @see #updateProduct(String, int, String, String, String, double, String)
+     * @see #deleteProduct(String, int)
      */
-    Product addProduct(String name, String category, String brand,
+    Product addProduct(String username, String name, String category, String brand,
                        double price, String description);
 
     /**
      * Возвращает все товары из каталога.
      * <p>
      * Результаты кэшируются для повышения производительности.
-     * Каждый товар в списке является защитной копией (defensive copy),
-     * поэтому изменения объектов не влияют на состояние каталога.
+     * Список и товары неизменяемы ({@link Product} не имеет сеттеров),
+     * поэтому один и тот же результат разделяется между вызовами без копирования.
      * </p>
      *
      * @return список всех товаров (может быть пустым, но никогда {@code null})
@@ -101,8 +96,7 @@ public interface CatalogService {
     /**
      * Получает товар по его уникальному идентификатору.
      * <p>
-     * <strong>Важно:</strong> возвращается защитная копия товара,
-     * изменения которой не влияют на оригинал в репозитории.
+     * Товар неизменяем, поэтому возвращается экземпляр из репозитория без копирования.
      * </p>
      *
      * @param id уникальный идентификатор товара (должен быть положительным)
@@ -117,12 +111,13 @@ public interface CatalogService {
      * Выполняет валидацию всех полей перед обновлением.
      * При успешном обновлении:
      * <ul>
-     *   <li>Кэш инвалидируется</li>
+     *   <li>Инвалидируются записи кэша, зависящие от старой или новой версии товара</li>
      *   <li>Записывается событие UPDATE в аудит-лог</li>
      *   <li>Обновляется поле modifiedDate товара</li>
      * </ul>
      * </p>
      *
+     * @param username имя пользователя для аудита (может быть {@code null} для системных операций)
      * @param id идентификатор товара для обновления
      * @param name новое название (не может быть {@code null} или пустым)
      * @param category новая категория (не может быть {@code null} или пустой)
@@ -131,9 +126,9 @@ public interface CatalogService {
      * @param description новое описание (может быть {@code null})
      * @return {@code true} если товар успешно обновлён, {@code false} если товар не найден
      * @throws IllegalArgumentException если какое-либо поле невалидно
-     * @see #addProduct(String, String, String, double, String)
+     * @see #addProduct(String, String, String, String, double, String)
      */
-    boolean updateProduct(int id, String name, String category, String brand,
+    boolean updateProduct(String username, int id, String name, String category, String brand,
                           double price, String description);
 
     /**
@@ -141,16 +136,17 @@ public interface CatalogService {
      * <p>
      * При успешном удалении:
      * <ul>
-     *   <li>Кэш инвалидируется</li>
+     *   <li>Инвалидируются записи кэша, зависящие от товара</li>
      *   <li>Записывается событие DELETE в аудит-лог</li>
      * </ul>
      * </p>
      *
+     * @param username имя пользователя для аудита (может быть {@code null} для системных операций)
      * @param id идентификатор товара для удаления
      * @return {@code true} если товар успешно удалён, {@code false} если товар не найден
-     * @see #addProduct(String, String, String, double, String)
+     * @see #addProduct(String, String, String, String, double, String)
      */
-    boolean deleteProduct(int id);
+    boolean deleteProduct(String username, int id);
 
     /**
      * Ищет товары по ключевому слову в названии.
@@ -166,12 +162,13 @@ public interface CatalogService {
      * </pre>
      * </p>
      *
+     * @param username имя пользователя для аудита (может быть {@code null} для системных операций)
      * @param keyword ключевое слово для поиска (не может быть {@code null} или пустым)
      * @return список найденных товаров (может быть пустым, но никогда {@code null})
      * @throws IllegalArgumentException если keyword {@code null} или пустой
      * @see #filterByCategory(String)
      */
-    List<Product> searchByName(String keyword);
+    List<Product> searchByName(String username, String keyword);
 
     /**
      * Фильтрует товары по категории.
@@ -205,6 +202,10 @@ public interface CatalogService {
      * Фильтрует товары по диапазону цен.
      * <p>
      * Возвращает товары, цена которых находится в указанном диапазоне (включительно).
+     * В куче используется отсортированный индекс цен: O(log n) на поиск границы плюс размер результата;
+     * при хранении товаров вне кучи ({@code -Dproduct.storage=offheap}) индекса нет и просматриваются
+     * цены всех товаров, O(n).
+     * Результаты кэшируются для повторных запросов.
      * </p>
      *
      * @param minPrice минимальная цена (должна быть {@code >= 0})
@@ -214,6 +215,86 @@ public interface CatalogService {
      */
     List<Product> filterByPriceRange(double minPrice, double maxPrice);
 
+    /**
+     * Выполняет составной запрос: категория, бренд, диапазон цен и ключевое слово одновременно.
+     * <p>
+     * Репозиторий начинает с самого короткого индексного списка и сужает его остальными,
+     * поэтому клиенту не нужно получать и пересекать полные списки отдельных фильтров.
+     * Результат упорядочен по id и кэшируется; запись кэша зависит только от товаров,
+     * удовлетворяющих всем условиям запроса.
+     * </p>
+     *
+     * @param query условия запроса (не может быть {@code null}; незаданные условия игнорируются)
+     * @return список подходящих товаров (может быть пустым, но никогда {@code null})
+     * @see ProductQuery
+     */
+    List<Product> query(ProductQuery query);
+
+    /**
+     * Возвращает страницу всех товаров по возрастанию id.
+     * <p>
+     * Работа и память пропорциональны размеру страницы, а не каталога; страницы не кэшируются.
+     * Следующая страница, если {@link ProductPage#hasNext()}, запрашивается с курсором {@link ProductPage#nextCursor()}.
+     * </p>
+     *
+     * @param cursor id последнего товара предыдущей страницы ({@link ProductPage#FIRST_PAGE} — с начала)
+     * @param limit максимальный размер страницы (должен быть положительным)
+     * @return страница товаров (никогда не {@code null})
+     * @throws IllegalArgumentException если limit не положительный
+     * @see #streamProducts()
+     */
+    ProductPage getProductsPage(int cursor, int limit);
+
+    /**
+     * Возвращает страницу результатов поиска по названию.
+     * <p>
+     * Аудит записывается только для первой страницы ({@code cursor == FIRST_PAGE}).
+     * </p>
+     *
+     * @param username имя пользователя для аудита (может быть {@code null} для системных операций)
+     * @param keyword ключевое слово для поиска (не может быть {@code null})
+     * @param cursor id последнего товара предыдущей страницы ({@link ProductPage#FIRST_PAGE} — с начала)
+     * @param limit максимальный размер страницы (должен быть положительным)
+     * @return страница найденных товаров (никогда не {@code null})
+     * @see #searchByName(String, String)
+     */
+    ProductPage searchByNamePage(String username, String keyword, int cursor, int limit);
+
+    /**
+     * Возвращает страницу товаров указанной категории.
+     *
+     * @param category название категории (не может быть {@code null})
+     * @param cursor id последнего товара предыдущей страницы ({@link ProductPage#FIRST_PAGE} — с начала)
+     * @param limit максимальный размер страницы (должен быть положительным)
+     * @return страница товаров (никогда не {@code null})
+     * @see #filterByCategory(String)
+     */
+    ProductPage filterByCategoryPage(String category, int cursor, int limit);
+
+    /**
+     * Возвращает страницу товаров указанного бренда.
+     *
+     * @param brand название бренда (не может быть {@code null})
+     * @param cursor id последнего товара предыдущей страницы ({@link ProductPage#FIRST_PAGE} — с начала)
+     * @param limit максимальный размер страницы (должен быть положительным)
+     * @return страница товаров (никогда не {@code null})
+     * @see #filterByBrand(String)
+     */
+    ProductPage filterByBrandPage(String brand, int cursor, int limit);
+
+    /**
+     * Возвращает ленивый поток всех товаров по возрастанию id.
+     * <p>
+     * Товары подгружаются страницами по мере чтения, поэтому, например,
+     * {@code streamProducts().skip(40).limit(20)} не материализует весь каталог.
+     * Поток слабо согласован: изменения, сделанные во время обхода, могут быть видны или нет.
+     * </p>
+     *
+     * @return поток товаров (никогда не {@code null})
+     * @see #getProductsPage(int, int)
+     */
+    Stream<Product> streamProducts();
+
     /**
      * Возвращает общее количество товаров в каталоге.
      *
@@ -243,4 +324,25 @@ public interface CatalogService {
      * @see #filterByBrand(String)
      */
     List<String> getAllBrands();
-}
\ No newline at end of file
+
+    /**
+     * Возвращает количество товаров по категориям (фасеты).
+     * <p>
+     * Считается пересечением сжатых битовых индексов без построения списков товаров.
+     * </p>
+     *
+     * @param brand если задан — считаются только товары этого бренда; {@code null} — все товары
+     * @return категория → количество товаров, по алфавиту, без нулевых значений
+     * @see #filterByCategory(String)
+     */
+    Map<String, Integer> getCategoryCounts(String brand);
+
+    /**
+     * Возвращает количество товаров по брендам (фасеты).
+     *
+     * @param category если задана — считаются только товары этой категории; {@code null} — все товары
+     * @return бренд → количество товаров, по алфавиту, без нулевых значений
+     * @see #filterByBrand(String)
+     */
+    Map<String, Integer> getBrandCounts(String category);
+}
@@ -0,0 +1,193 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.enums.Action;
+import main.java.ru.ylab.repository.AuditLogRepository;
+import main.java.ru.ylab.service.AuditService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный аудит: {@link #log(String, Action, String)} только кладёт запись в кольцевой буфер,
+ * а один фоновый поток забирает записи пачками и сохраняет их в {@link AuditLogRepository}
+ * (и через подписчиков {@code AppData} — на диск) одной блокировкой на пачку.
+ * <p>
+ * Если буфер заполнен, поведение задаёт {@link Backpressure}:
+ * <ul>
+ *   <li>{@code BLOCK} — вызывающий поток ждёт освобождения места, засыпая на растущие интервалы</li>
+ *   <li>{@code DROP} — запись отбрасывается, счётчик {@link #getDroppedCount()} растёт</li>
+ *   <li>{@code CALLER_RUNS} — вызывающий поток сам сохраняет запись</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Запросы сначала дожидаются, пока потребитель обработает всё, что было записано до них,
+ * поэтому поток видит свои собственные записи.
+ * </p>
+ * <p>
+ * Пачка, которую репозиторий не смог сохранить, не повторяется: часть её могла уже попасть в репозиторий,
+ * и повтор создал бы дубликаты. Такие записи учитываются в {@link #getDroppedCount()}, а ошибка логируется.
+ * </p>
+ */
+public class AsyncAuditServiceImpl implements AuditService, AutoCloseable {
+
+    /**
+     * Поведение при заполненном буфере.
+     */
+    public enum Backpressure {
+        BLOCK,
+        DROP,
+        CALLER_RUNS
+    }
+
+    private static final int DEFAULT_CAPACITY = 65_536;
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MIN_BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final AuditLogRepository repository;
+    private final MpscRingBuffer<AuditRecord> buffer;
+    private final Backpressure backpressure;
+    private final Thread consumer;
+
+    private final AtomicLong processed = new AtomicLong(); // сколько записей из буфера сохранено или отброшено
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    public AsyncAuditServiceImpl(AuditLogRepository repository, int capacity, Backpressure backpressure) {
+        this.repository = repository;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.backpressure = backpressure;
+        this.consumer = new Thread(this::consumeLoop, "audit-writer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public AsyncAuditServiceImpl(AuditLogRepository repository) {
+        this(repository, DEFAULT_CAPACITY, Backpressure.BLOCK);
+    }
+
+    @Override
+    public void log(String username, Action action, String details) {
+        AuditRecord record = new AuditRecord(username, action, details);
+        if (!buffer.offer(record)) {
+            switch (backpressure) {
+                case BLOCK -> {
+                    // Потребитель освобождает место пачками, поэтому ждём с удвоением паузы, а не крутимся
+                    long parkNanos = MIN_BLOCK_PARK_NANOS;
+                    while (!buffer.offer(record)) {
+                        LockSupport.unpark(consumer);
+                        LockSupport.parkNanos(this, parkNanos);
+                        parkNanos = Math.min(parkNanos * 2, IDLE_PARK_NANOS);
+                    }
+                }
+                case DROP -> {
+                    dropped.increment();
+                    return;
+                }
+                case CALLER_RUNS -> {
+                    repository.add(record);
+                    return;
+                }
+            }
+        }
+        if (idle) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    @Override
+    public List<AuditRecord> getAllRecords() {
+        awaitStored();
+        return repository.findAll();
+    }
+
+    @Override
+    public List<AuditRecord> getRecordsByUser(String username) {
+        awaitStored();
+        return repository.findByUser(username);
+    }
+
+    @Override
+    public List<AuditRecord> getRecordsByAction(String action) {
+        Action parsed = Action.valueOf(action);
+        awaitStored();
+        return repository.findByAction(parsed);
+    }
+
+    @Override
+    public List<AuditRecord> getRecordsAfter(LocalDateTime dateTime) {
+        awaitStored();
+        return repository.findAfter(dateTime);
+    }
+
+    @Override
+    public int getRecordCount() {
+        awaitStored();
+        return repository.count();
+    }
+
+    /**
+     * Количество потерянных записей: отброшенных при переполнении буфера (политика {@code DROP})
+     * и из пачек, которые не удалось сохранить в репозиторий.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Сохраняет оставшиеся записи и останавливает фоновый поток.
+     */
+    @Override
+    public void close() {
+        awaitStored();
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== ПОТРЕБИТЕЛЬ ====================
+
+    private void consumeLoop() {
+        List<AuditRecord> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !buffer.isEmpty()) {
+            if (buffer.drainTo(batch, MAX_BATCH) == 0) {
+                idle = true;
+                if (buffer.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            try {
+                repository.addAll(batch);
+            } catch (RuntimeException e) {
+                dropped.add(batch.size());
+                System.err.println("Ошибка записи аудита, потеряно записей: " + batch.size() + ": " + e.getMessage());
+            }
+            processed.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Ждёт, пока потребитель обработает все записи, занявшие место в буфере до этого вызова.
+     */
+    private void awaitStored() {
+        long target = buffer.claimed();
+        while (processed.get() < target && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
@@ -3,19 +3,22 @@ package main.java.ru.ylab.service.impl;
 import main.java.ru.ylab.model.AppData;
 import main.java.ru.ylab.model.AuditRecord;
 import main.java.ru.ylab.model.enums.Action;
+import main.java.ru.ylab.repository.AuditLogRepository;
 import main.java.ru.ylab.service.AuditService;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class AuditServiceImpl implements AuditService {
 
-    private final List<AuditRecord> records;
+    private final AuditLogRepository repository;
+
+    public AuditServiceImpl(AuditLogRepository repository) {
+        this.repository = repository;
+    }
 
     public AuditServiceImpl(AppData appData) {
-        this.records = appData.getAuditRecords();
+        this(new AuditLogRepository(appData));
     }
 
     @Override
@@ -25,37 +28,31 @@ public class AuditServiceImpl implements AuditService {
                 action,
                 details
         );
-        records.add(record);
+        repository.add(record);
     }
 
     @Override
     public List<AuditRecord> getAllRecords() {
-        return new ArrayList<>(records);
+        return repository.findAll();
     }
 
     @Override
     public List<AuditRecord> getRecordsByUser(String username) {
-        return records.stream()
-                .filter(r -> r.getUsername().equals(username))
-                .collect(Collectors.toList());
+        return repository.findByUser(username);
     }
 
     @Override
     public List<AuditRecord> getRecordsByAction(String action) {
-        return records.stream()
-                .filter(r -> r.getAction().equals(Action.valueOf(action)))
-                .collect(Collectors.toList());
+        return repository.findByAction(Action.valueOf(action));
     }
 
     @Override
     public List<AuditRecord> getRecordsAfter(LocalDateTime dateTime) {
-        return records.stream()
-                .filter(r -> r.getTimestamp().isAfter(dateTime))
-                .collect(Collectors.toList());
+        return repository.findAfter(dateTime);
     }
 
     @Override
     public int getRecordCount() {
-        return records.size();
+        return repository.count();
     }
 }
@@ -0,0 +1,120 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.service.DataStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Хранилище в компактном колоночном бинарном формате ({@link BinarySnapshotCodec}).
+ * <p>
+ * В отличие от {@link DataStorageImpl} не использует Java-сериализацию: нет описателей классов
+ * и объектов {@code LocalDateTime} на каждую запись, данные пишутся и читаются блоками через NIO.
+ * Снимок пишется во временный файл, предыдущая версия копируется в резервную копию
+ * (тоже через временный файл), после чего новая атомарно занимает её место — основной файл
+ * не пропадает ни на одном шаге. Если основного файла нет, загружается резервная копия.
+ * </p>
+ */
+public class BinaryDataStorageImpl implements DataStorage {
+    private static final String DATA_FILE = "marketplace_data.bin";
+    private static final String BACKUP_FILE = "marketplace_data_backup.bin";
+
+    private final Path dataPath;
+    private final Path backupPath;
+
+    public BinaryDataStorageImpl(String dataFile, String backupFile) {
+        this.dataPath = Path.of(dataFile);
+        this.backupPath = Path.of(backupFile);
+    }
+
+    public BinaryDataStorageImpl() {
+        this(DATA_FILE, BACKUP_FILE);
+    }
+
+    @Override
+    public void save(AppData data) {
+        Path tmp = dataPath.resolveSibling(dataPath.getFileName() + ".tmp");
+        try {
+            BinarySnapshotCodec.write(data, tmp);
+            createBackup();
+            Files.move(tmp, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Данные сохранены: " + data);
+        } catch (IOException e) {
+            System.err.println("Ошибка сохранения: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public AppData load() {
+        if (!Files.exists(dataPath)) {
+            if (Files.exists(backupPath)) {
+                System.err.println("Файл данных не найден, пробуем резервную копию.");
+                return loadBackup();
+            }
+            System.out.println("Файл данных не найден. Создаём новую базу данных.");
+            return new AppData();
+        }
+
+        try {
+            AppData data = readSnapshot(dataPath);
+            System.out.println("Данные загружены: " + data);
+            return data;
+        } catch (IOException e) {
+            System.err.println("Ошибка загрузки: " + e.getMessage());
+            return loadBackup();
+        }
+    }
+
+    /**
+     * Копирует текущий снимок в резервную копию. Копия сначала пишется во временный файл,
+     * поэтому прежняя резервная копия заменяется только целиком.
+     */
+    private void createBackup() throws IOException {
+        if (!Files.exists(dataPath)) {
+            return;
+        }
+        Path tmp = backupPath.resolveSibling(backupPath.getFileName() + ".tmp");
+        Files.copy(dataPath, tmp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp, backupPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private AppData loadBackup() {
+        if (!Files.exists(backupPath)) {
+            System.err.println("Резервная копия не найдена. Создаём новую базу.");
+            return new AppData();
+        }
+
+        try {
+            AppData data = readSnapshot(backupPath);
+            System.out.println("Данные восстановлены из резервной копии: " + data);
+            return data;
+        } catch (IOException e) {
+            System.err.println("Не удалось загрузить бэкап. Создаём новую базу.");
+            return new AppData();
+        }
+    }
+
+    protected AppData readSnapshot(Path file) throws IOException {
+        return BinarySnapshotCodec.read(file);
+    }
+
+    @Override
+    public boolean dataExists() {
+        return Files.exists(dataPath);
+    }
+
+    @Override
+    public void deleteAll() {
+        try {
+            Files.deleteIfExists(dataPath);
+            Files.deleteIfExists(backupPath);
+        } catch (IOException e) {
+            System.err.println("Ошибка удаления файлов: " + e.getMessage());
+        }
+        System.out.println("Все файлы данных удалены");
+    }
+}
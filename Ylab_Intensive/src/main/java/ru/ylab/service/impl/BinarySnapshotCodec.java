@@ -0,0 +1,540 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.StringDictionary;
+import main.java.ru.ylab.model.User;
+import main.java.ru.ylab.model.enums.Action;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Версионированный колоночный бинарный формат снимка {@link AppData}.
+ * <p>
+ * Структура файла:
+ * <pre>
+ * int MAGIC, int VERSION, int nextProductId
+ * товары:      int n, int[n] id (по возрастанию), double[n] price, long[n]+int[n] created, long[n]+int[n] modified,
+ *              строки name, словарь category, словарь brand, строки description
+ * пользователи: int n, строки username, passwordHash
+ * аудит:       int n, long[n]+int[n] timestamp, byte[n] action, строки username, details
+ * int CRC32 всех предыдущих байт файла, int END_MAGIC
+ * </pre>
+ * Строковая колонка: {@code int[n+1]} смещений, {@code byte[n]} признак null, UTF-8 байты подряд.
+ * Словарная колонка (категории и бренды): {@code int d}, строковая колонка из {@code d} различных значений,
+ * {@code int[n]} кодов ({@code -1} — null). Версия 1 хранила категории и бренды обычными строковыми
+ * колонками, версии 1 и 2 не содержали контрольной суммы; такие снимки по-прежнему читаются.
+ * Даты хранятся как секунды и наносекунды UTC без объектов-описателей классов.
+ * Все колонки фиксированной ширины, поэтому снимок читается и пишется большими блоками через NIO-каналы.
+ * </p>
+ * <p>
+ * Повреждённый или обрезанный снимок всегда даёт {@link IOException}: контрольная сумма не совпадает,
+ * либо длина, смещение, код словаря или действие аудита выходят за допустимые границы.
+ * Хранилища при такой ошибке переходят к резервной копии или останавливают запуск.
+ * </p>
+ */
+final class BinarySnapshotCodec {
+
+    static final int MAGIC = 0x594C4142; // "YLAB"
+    static final int END_MAGIC = 0x454E4421; // "END!"
+    static final int VERSION = 3;
+    static final int VERSION_DICTIONARY = 2; // словарь категорий и брендов, без контрольной суммы
+    static final int VERSION_PLAIN_STRINGS = 1; // категории и бренды без словаря
+    static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long NULL_SECONDS = Long.MIN_VALUE;
+    private static final int MAX_NANOS = 999_999_999;
+
+    // Наименьший размер элемента в файле — для проверки количеств перед созданием массивов
+    private static final int STRING_MIN_BYTES = Integer.BYTES + Byte.BYTES; // смещение и признак null
+    private static final int DATE_TIME_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int PRODUCT_MIN_BYTES = Integer.BYTES + Double.BYTES + 2 * DATE_TIME_BYTES
+            + 2 * STRING_MIN_BYTES + 2 * Integer.BYTES; // id, цена, даты, название и описание, коды словарей
+    private static final int AUDIT_MIN_BYTES = DATE_TIME_BYTES + Byte.BYTES + 2 * STRING_MIN_BYTES;
+
+    private BinarySnapshotCodec() {
+    }
+
+    // ==================== ЗАПИСЬ ====================
+
+    static void write(AppData data, Path file) throws IOException {
+        List<AuditRecord> audit;
+        synchronized (data.getAuditRecords()) {
+            audit = new ArrayList<>(data.getAuditRecords());
+        }
+        write(data, audit, file);
+    }
+
+    /**
+     * Записывает снимок с записями аудита, которые вызывающий скопировал сам
+     * (хранилища копируют их в момент среза, см. {@link AppData#addAuditRecords(List)}).
+     */
+    static void write(AppData data, List<AuditRecord> audit, Path file) throws IOException {
+        List<Product> products = new ArrayList<>(data.getProducts().values());
+        products.sort(Comparator.comparingInt(Product::getId)); // колонка id отсортирована для бинарного поиска
+        List<User> users = new ArrayList<>(data.getUsers().values());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(data.getNextProductId());
+
+            int n = products.size();
+            out.putInt(n);
+            for (Product p : products) {
+                out.putInt(p.getId());
+            }
+            for (Product p : products) {
+                out.putDouble(p.getPrice());
+            }
+            writeDateTimes(out, products.stream().map(Product::getCreatedDate).toList());
+            writeDateTimes(out, products.stream().map(Product::getModifiedDate).toList());
+            writeStrings(out, products.stream().map(Product::getName).toList());
+            writeDictionary(out, products.stream().map(Product::getCategory).toList());
+            writeDictionary(out, products.stream().map(Product::getBrand).toList());
+            writeStrings(out, products.stream().map(Product::getDescription).toList());
+
+            out.putInt(users.size());
+            writeStrings(out, users.stream().map(User::getUsername).toList());
+            writeStrings(out, users.stream().map(User::getPasswordHash).toList());
+
+            out.putInt(audit.size());
+            writeDateTimes(out, audit.stream().map(AuditRecord::getTimestamp).toList());
+            for (AuditRecord record : audit) {
+                out.putByte((byte) record.getAction().ordinal());
+            }
+            writeStrings(out, audit.stream().map(AuditRecord::getUsername).toList());
+            writeStrings(out, audit.stream().map(AuditRecord::getDetails).toList());
+
+            out.putInt(out.checksum());
+            out.putInt(END_MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    private static void writeDateTimes(ChannelWriter out, List<LocalDateTime> values) throws IOException {
+        for (LocalDateTime value : values) {
+            out.putLong(value == null ? NULL_SECONDS : value.toEpochSecond(ZoneOffset.UTC));
+        }
+        for (LocalDateTime value : values) {
+            out.putInt(value == null ? 0 : value.getNano());
+        }
+    }
+
+    private static void writeStrings(ChannelWriter out, List<String> values) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        int offset = 0;
+        out.putInt(offset);
+        for (String value : values) {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            if (bytes.length > Integer.MAX_VALUE - offset) {
+                // смещения в колонке — int; снимок с переполненными смещениями нельзя было бы прочитать
+                throw new IOException("Строковая колонка снимка превышает 2 ГБ");
+            }
+            offset += bytes.length;
+            out.putInt(offset);
+        }
+        for (String value : values) {
+            out.putByte((byte) (value == null ? 1 : 0));
+        }
+        for (byte[] bytes : encoded) {
+            out.putBytes(bytes);
+        }
+    }
+
+    private static void writeDictionary(ChannelWriter out, List<String> values) throws IOException {
+        StringDictionary dictionary = new StringDictionary();
+        int[] codes = new int[values.size()];
+        for (int i = 0; i < codes.length; i++) {
+            String value = values.get(i);
+            codes[i] = value == null ? StringDictionary.NO_CODE : dictionary.encode(value);
+        }
+        List<String> distinct = new ArrayList<>(dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            distinct.add(dictionary.decode(code));
+        }
+        out.putInt(distinct.size());
+        writeStrings(out, distinct);
+        for (int code : codes) {
+            out.putInt(code);
+        }
+    }
+
+    // ==================== ЧТЕНИЕ ====================
+
+    static AppData read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChannelReader in = new ChannelReader(channel);
+            int version = checkHeader(in.getInt(), in.getInt());
+
+            AppData data = new AppData();
+            data.setNextProductId(in.getInt());
+            readProducts(in, data, version);
+            readUsersAndAudit(in, data);
+            readTrailer(in, version, true);
+            return data;
+        } catch (DateTimeException | IllegalArgumentException e) {
+            throw new IOException("Снимок повреждён: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Загружает снимок, отображая раздел товаров в память ({@link MappedProductMap}):
+     * товары создаются при первом обращении, поэтому время загрузки не зависит от размера каталога.
+     * Файл отображается частями ({@link MappedFile}), поэтому его размер не ограничен 2 ГБ.
+     * Контрольная сумма проверяется одним последовательным проходом по отображению, без создания объектов.
+     * Пользователи и аудит читаются как обычно.
+     */
+    static AppData map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedFile buffer = new MappedFile(channel);
+            if (buffer.size() < HEADER_SIZE) {
+                throw new EOFException("Неожиданный конец снимка");
+            }
+            int version = checkHeader(buffer.getInt(0), buffer.getInt(Integer.BYTES));
+            if (version >= VERSION) {
+                long checksumPos = buffer.size() - 2L * Integer.BYTES;
+                if (checksumPos < HEADER_SIZE || buffer.checksum(checksumPos) != buffer.getInt(checksumPos)) {
+                    throw new IOException("Снимок повреждён: контрольная сумма не совпадает");
+                }
+            }
+
+            MappedProductMap products = new MappedProductMap(buffer, HEADER_SIZE, version >= VERSION_DICTIONARY);
+            AppData data = new AppData(products);
+            data.setNextProductId(buffer.getInt(2 * Integer.BYTES));
+
+            channel.position(products.sectionEnd());
+            ChannelReader in = new ChannelReader(channel);
+            readUsersAndAudit(in, data);
+            readTrailer(in, version, false); // сумма уже проверена по всему файлу
+            return data;
+        } catch (DateTimeException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Снимок повреждён: " + e.getMessage(), e);
+        }
+    }
+
+    private static int checkHeader(int magic, int version) throws IOException {
+        if (magic != MAGIC) {
+            throw new IOException("Файл не является бинарным снимком");
+        }
+        if (version < VERSION_PLAIN_STRINGS || version > VERSION) {
+            throw new IOException("Неподдерживаемая версия снимка: " + version);
+        }
+        return version;
+    }
+
+    private static void readProducts(ChannelReader in, AppData data, int version) throws IOException {
+        int n = readCount(in, PRODUCT_MIN_BYTES);
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = in.getInt();
+            if (ids[i] < 0 || (i > 0 && ids[i] <= ids[i - 1])) {
+                throw new IOException("Снимок повреждён: колонка id не отсортирована");
+            }
+        }
+        double[] prices = new double[n];
+        for (int i = 0; i < n; i++) {
+            prices[i] = in.getDouble();
+        }
+        LocalDateTime[] created = readDateTimes(in, n);
+        LocalDateTime[] modified = readDateTimes(in, n);
+        String[] names = readStrings(in, n);
+        boolean dictionary = version >= VERSION_DICTIONARY;
+        String[] categories = dictionary ? readDictionary(in, n, data.getCategories()) : readStrings(in, n);
+        String[] brands = dictionary ? readDictionary(in, n, data.getBrands()) : readStrings(in, n);
+        String[] descriptions = readStrings(in, n);
+
+        Map<Integer, Product> products = data.getProducts();
+        for (int i = 0; i < n; i++) {
+            Product product = new Product(ids[i], names[i], categories[i], brands[i], prices[i],
+                    descriptions[i], created[i], modified[i]);
+            products.put(ids[i], dictionary ? product : data.internAttributes(product));
+        }
+    }
+
+    /**
+     * Словарная колонка: значения словаря заменяются общими строками {@code target},
+     * поэтому все товары одной категории ссылаются на один экземпляр.
+     */
+    private static String[] readDictionary(ChannelReader in, int n, StringDictionary target) throws IOException {
+        int size = readCount(in, STRING_MIN_BYTES);
+        String[] values = readStrings(in, size);
+        for (int code = 0; code < size; code++) {
+            values[code] = target.intern(values[code]);
+        }
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++) {
+            int code = in.getInt();
+            if (code < StringDictionary.NO_CODE || code >= size) {
+                throw new IOException("Снимок повреждён: код словаря " + code + " вне словаря из " + size);
+            }
+            if (code != StringDictionary.NO_CODE) {
+                result[i] = values[code];
+            }
+        }
+        return result;
+    }
+
+    private static void readUsersAndAudit(ChannelReader in, AppData data) throws IOException {
+        int userCount = readCount(in, 2 * STRING_MIN_BYTES);
+        String[] usernames = readStrings(in, userCount);
+        String[] hashes = readStrings(in, userCount);
+        for (int i = 0; i < userCount; i++) {
+            data.getUsers().put(usernames[i], new User(usernames[i], hashes[i]));
+        }
+
+        int auditCount = readCount(in, AUDIT_MIN_BYTES);
+        LocalDateTime[] timestamps = readDateTimes(in, auditCount);
+        Action[] actionValues = Action.values();
+        Action[] actions = new Action[auditCount];
+        for (int i = 0; i < auditCount; i++) {
+            byte ordinal = in.getByte();
+            if (ordinal < 0 || ordinal >= actionValues.length) {
+                throw new IOException("Снимок повреждён: неизвестное действие аудита " + ordinal);
+            }
+            actions[i] = actionValues[ordinal];
+        }
+        String[] auditUsers = readStrings(in, auditCount);
+        String[] details = readStrings(in, auditCount);
+        List<AuditRecord> audit = new ArrayList<>(auditCount);
+        for (int i = 0; i < auditCount; i++) {
+            audit.add(new AuditRecord(timestamps[i], auditUsers[i], actions[i], details[i]));
+        }
+        data.getAuditRecords().addAll(audit);
+    }
+
+    /**
+     * Контрольная сумма (с версии 3) и маркер конца.
+     *
+     * @param verify сверять ли сумму с прочитанными {@code in} байтами (читатель должен начинать с начала файла)
+     */
+    private static void readTrailer(ChannelReader in, int version, boolean verify) throws IOException {
+        if (version >= VERSION) {
+            int actual = in.checksum();
+            if (in.getInt() != actual && verify) {
+                throw new IOException("Снимок повреждён: контрольная сумма не совпадает");
+            }
+        }
+        if (in.getInt() != END_MAGIC) {
+            throw new IOException("Снимок повреждён: нет маркера конца");
+        }
+    }
+
+    /**
+     * Количество элементов раздела или колонки. Каждый элемент занимает в файле не меньше {@code minBytes},
+     * поэтому число больше оставшейся части файла означает повреждение — массивы под него не создаются.
+     */
+    private static int readCount(ChannelReader in, int minBytes) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || (long) count * minBytes > in.remaining()) {
+            throw new IOException("Снимок повреждён: недопустимое количество элементов " + count);
+        }
+        return count;
+    }
+
+    private static LocalDateTime[] readDateTimes(ChannelReader in, int n) throws IOException {
+        long[] seconds = new long[n];
+        for (int i = 0; i < n; i++) {
+            seconds[i] = in.getLong();
+        }
+        LocalDateTime[] result = new LocalDateTime[n];
+        for (int i = 0; i < n; i++) {
+            int nanos = in.getInt();
+            if (nanos < 0 || nanos > MAX_NANOS) {
+                throw new IOException("Снимок повреждён: недопустимые наносекунды " + nanos);
+            }
+            if (seconds[i] != NULL_SECONDS) {
+                result[i] = LocalDateTime.ofEpochSecond(seconds[i], nanos, ZoneOffset.UTC);
+            }
+        }
+        return result;
+    }
+
+    private static String[] readStrings(ChannelReader in, int n) throws IOException {
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            offsets[i] = in.getInt();
+            if (i == 0 ? offsets[0] != 0 : offsets[i] < offsets[i - 1]) {
+                throw new IOException("Снимок повреждён: смещения строковой колонки не возрастают");
+            }
+        }
+        byte[] nulls = in.getBytes(n);
+        if (offsets[n] > in.remaining()) {
+            throw new EOFException("Неожиданный конец снимка");
+        }
+        byte[] blob = in.getBytes(offsets[n]);
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++) {
+            if (nulls[i] == 0) {
+                result[i] = new String(blob, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            }
+        }
+        return result;
+    }
+
+    // ==================== БУФЕРИЗОВАННЫЙ ВВОД-ВЫВОД ====================
+
+    private static final class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32(); // все записанные байты
+
+        private ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        /**
+         * CRC32 всех байт, записанных до этого вызова.
+         */
+        int checksum() throws IOException {
+            flush();
+            return (int) crc.getValue();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    private static final class ChannelReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32(); // все прочитанные байты
+        private int checked; // позиция буфера, до которой прочитанные байты учтены в crc
+
+        private ChannelReader(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip(); // пустой буфер в режиме чтения
+        }
+
+        byte getByte() throws IOException {
+            ensure(Byte.BYTES);
+            return buffer.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        double getDouble() throws IOException {
+            ensure(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        /**
+         * CRC32 всех байт, прочитанных до этого вызова.
+         */
+        int checksum() {
+            updateChecksum();
+            return (int) crc.getValue();
+        }
+
+        /**
+         * Сколько байт осталось до конца файла.
+         */
+        long remaining() throws IOException {
+            return channel.size() - channel.position() + buffer.remaining();
+        }
+
+        byte[] getBytes(int length) throws IOException {
+            byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), length - offset);
+                buffer.get(result, offset, chunk);
+                offset += chunk;
+            }
+            return result;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            updateChecksum();
+            buffer.compact();
+            checked = 0;
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Неожиданный конец снимка");
+                }
+            }
+            buffer.flip();
+        }
+
+        private void updateChecksum() {
+            if (buffer.position() > checked) {
+                crc.update(buffer.duplicate().position(checked).limit(buffer.position()));
+                checked = buffer.position();
+            }
+        }
+    }
+}
@@ -1,32 +1,59 @@
 package main.java.ru.ylab.service.impl;
 
+import main.java.ru.ylab.model.CacheDependency;
 import main.java.ru.ylab.model.CacheEntry;
+import main.java.ru.ylab.model.CacheRefreshPolicy;
 import main.java.ru.ylab.model.Product;
 import main.java.ru.ylab.service.CacheService;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 public class CacheServiceImpl implements CacheService {
 
     private final Map<String, CacheEntry> cache;
     private final long ttlMillis; // время жизни кэша
     private final int maxSize; // максимальный размер кэша
+    private final long maxWeightBytes; // бюджет памяти кэша
+    private final CacheRefreshPolicy refreshPolicy; // фоновая перезагрузка записей с загрузчиком
+    private final Executor refreshExecutor;
+    private final SingleFlight loads = new SingleFlight(); // загрузки, выполняемые сейчас
 
     private int hits = 0;
     private int misses = 0;
+    private int staleHits = 0;
+    private int refreshes = 0;
     private long totalQueryTimeNs = 0;
+    private long weightBytes = 0; // суммарный вес записей
 
-    public CacheServiceImpl(long ttlMillis, int maxSize) {
-        this.cache = new LinkedHashMap<>(maxSize, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry eldest) {
-                return size() > maxSize;
-            }
-        };
+    public CacheServiceImpl(long ttlMillis, int maxSize, long maxWeightBytes,
+                            CacheRefreshPolicy refreshPolicy, Executor refreshExecutor) {
+        if (maxWeightBytes <= 0) {
+            throw new IllegalArgumentException("Бюджет памяти кэша должен быть положительным");
+        }
+        if (refreshPolicy.refreshAheadMillis() >= ttlMillis) {
+            throw new IllegalArgumentException("Упреждающее обновление должно начинаться раньше окончания TTL");
+        }
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
         this.ttlMillis = ttlMillis;
         this.maxSize = maxSize;
+        this.maxWeightBytes = maxWeightBytes;
+        this.refreshPolicy = refreshPolicy;
+        this.refreshExecutor = Objects.requireNonNull(refreshExecutor);
+    }
+
+    public CacheServiceImpl(long ttlMillis, int maxSize, long maxWeightBytes, CacheRefreshPolicy refreshPolicy) {
+        this(ttlMillis, maxSize, maxWeightBytes, refreshPolicy, ForkJoinPool.commonPool());
+    }
+
+    public CacheServiceImpl(long ttlMillis, int maxSize) {
+        this(ttlMillis, maxSize, UNLIMITED_WEIGHT, CacheRefreshPolicy.DISABLED);
     }
 
     public CacheServiceImpl() {
@@ -43,71 +70,177 @@ public class CacheServiceImpl implements CacheService {
         return ttlMillis;
     }
 
+    @Override
+    public long getMaxWeightBytes() {
+        return maxWeightBytes;
+    }
+
     @Override
     public List<Product> get(String key) {
+        CacheEntry entry = lookup(key, false);
+        return entry != null ? entry.data() : null;
+    }
+
+    /**
+     * Загрузчик выполняется вне монитора кэша, чтобы не блокировать обращения к другим ключам.
+     * Записи, близкие к концу TTL или устаревшие в пределах окна {@link CacheRefreshPolicy},
+     * отдаются сразу, а перезагружаются в фоне.
+     */
+    @Override
+    public List<Product> get(String key, CacheDependency dependency, Supplier<List<Product>> loader) {
+        Objects.requireNonNull(dependency);
+        Objects.requireNonNull(loader);
+        CacheEntry entry = lookup(key, true);
+        if (entry == null) {
+            return loads.load(key, dependency, loader, data -> put(key, data, dependency));
+        }
+        if (refreshPolicy.needsRefresh(System.currentTimeMillis() - entry.timestamp(), ttlMillis)
+                && loads.refresh(key, dependency, loader, data -> put(key, data, dependency), refreshExecutor)) {
+            synchronized (this) {
+                refreshes++;
+            }
+        }
+        return entry.data();
+    }
+
+    /**
+     * Ищет запись и учитывает обращение в метриках.
+     * Устаревшая запись удаляется, только когда истекло и окно stale-while-revalidate.
+     *
+     * @param allowStale можно ли отдать устаревшую запись (есть загрузчик для её перезагрузки)
+     */
+    private synchronized CacheEntry lookup(String key, boolean allowStale) {
         long start = System.nanoTime();
 
         CacheEntry entry = cache.get(key);
 
+        // Проверка срока действия
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.timestamp();
+            if (refreshPolicy.isExpired(age, ttlMillis)) {
+                if (!refreshPolicy.isServable(age, ttlMillis)) {
+                    remove(key);
+                    entry = null;
+                } else if (!allowStale) {
+                    entry = null;
+                } else {
+                    staleHits++;
+                }
+            }
+        }
+
         if (entry == null) {
             misses++;
-            totalQueryTimeNs += (System.nanoTime() - start);
-            return null;
+        } else {
+            hits++;
         }
+        totalQueryTimeNs += (System.nanoTime() - start);
+        return entry;
+    }
 
-        // Проверка срока действия
-        if (System.currentTimeMillis() - entry.timestamp() > ttlMillis) {
-            cache.remove(key);
-            misses++;
-            totalQueryTimeNs += (System.nanoTime() - start);
-            return null;
+    @Override
+    public synchronized void put(String key, List<Product> data, CacheDependency dependency) {
+        CacheEntry entry = new CacheEntry(data, System.currentTimeMillis(), dependency);
+        remove(key);
+        if (entry.weight() > maxWeightBytes) {
+            return; // запись больше всего бюджета: не вытесняем ради неё весь кэш
         }
+        cache.put(key, entry);
+        weightBytes += entry.weight();
+        evictIfNeeded();
+    }
 
-        hits++;
-        totalQueryTimeNs += (System.nanoTime() - start);
-        return entry.data().stream().map(Product::copy).toList();
+    /**
+     * Удаляет давно не использованные записи (начало {@link LinkedHashMap} в порядке доступа),
+     * пока превышен лимит записей или бюджет памяти.
+     */
+    private void evictIfNeeded() {
+        Iterator<CacheEntry> eldest = cache.values().iterator();
+        while ((cache.size() > maxSize || weightBytes > maxWeightBytes) && eldest.hasNext()) {
+            weightBytes -= eldest.next().weight();
+            eldest.remove();
+        }
+    }
+
+    private void remove(String key) {
+        CacheEntry removed = cache.remove(key);
+        if (removed != null) {
+            weightBytes -= removed.weight();
+        }
     }
 
+    // Загрузки помечаются устаревшими до удаления записей и вне монитора кэша:
+    // загрузка сохраняет результат, удерживая свою блокировку, а затем монитор кэша
+
     @Override
-    public void put(String key, List<Product> data) {
-        List<Product> copiedData = data.stream()
-                .map(Product::copy)
-                .toList();
-        cache.put(key, new CacheEntry(copiedData, System.currentTimeMillis()));
+    public void invalidateAffected(Product product) {
+        loads.invalidateAffected(product);
+        synchronized (this) {
+            Iterator<CacheEntry> entries = cache.values().iterator();
+            while (entries.hasNext()) {
+                CacheEntry entry = entries.next();
+                if (entry.dependency().dependsOn(product)) {
+                    weightBytes -= entry.weight();
+                    entries.remove();
+                }
+            }
+        }
     }
 
     @Override
     public void invalidate(String key) {
-        cache.remove(key);
+        loads.invalidate(key);
+        synchronized (this) {
+            remove(key);
+        }
     }
 
     @Override
     public void invalidateAll() {
-        cache.clear();
+        loads.invalidateAll();
+        synchronized (this) {
+            cache.clear();
+            weightBytes = 0;
+        }
     }
 
     @Override
-    public int size() {
+    public synchronized int size() {
         return cache.size();
     }
 
     @Override
-    public int getHits() {
+    public synchronized long getWeightBytes() {
+        return weightBytes;
+    }
+
+    @Override
+    public synchronized int getHits() {
         return hits;
     }
 
     @Override
-    public int getMisses() {
+    public synchronized int getMisses() {
         return misses;
     }
 
     @Override
-    public double getHitRatio() {
+    public synchronized int getStaleHits() {
+        return staleHits;
+    }
+
+    @Override
+    public synchronized int getRefreshes() {
+        return refreshes;
+    }
+
+    @Override
+    public synchronized double getHitRatio() {
         return (hits + misses) == 0 ? 0 : (double) hits / (hits + misses);
     }
 
     @Override
-    public double getAverageQueryTimeMs() {
+    public synchronized double getAverageQueryTimeMs() {
         return (hits + misses) == 0 ? 0 : totalQueryTimeNs / 1_000_000.0 / (hits + misses);
     }
 
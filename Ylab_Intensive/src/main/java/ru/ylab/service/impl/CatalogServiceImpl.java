@@ -1,6 +1,9 @@
 package main.java.ru.ylab.service.impl;
 
+import main.java.ru.ylab.model.CacheDependency;
 import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.ProductPage;
+import main.java.ru.ylab.model.ProductQuery;
 import main.java.ru.ylab.model.enums.Action;
 import main.java.ru.ylab.repository.ProductRepository;
 import main.java.ru.ylab.service.AuditService;
@@ -8,13 +11,18 @@ import main.java.ru.ylab.service.CacheService;
 import main.java.ru.ylab.service.CatalogService;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 public class CatalogServiceImpl implements CatalogService {
+    private static final int STREAM_PAGE_SIZE = 256;
+
     private final ProductRepository repository;
     private final AuditService auditService;
     private final CacheService cacheService;
-    private String currentUser;
 
 
     public CatalogServiceImpl(ProductRepository repository, AuditService auditService, CacheService cacheService) {
@@ -23,15 +31,10 @@ public class CatalogServiceImpl implements CatalogService {
         this.cacheService = cacheService;
     }
 
-    public void setCurrentUser(String currentUser) {
-        this.currentUser = currentUser;
-    }
-
-
     // CREATE
 
     @Override
-    public Product addProduct(String name, String category, String brand,
+    public Product addProduct(String username, String name, String category, String brand,
                               double price, String description) {
 
         validateProductData(name, category, brand, price);
@@ -39,136 +42,140 @@ public class CatalogServiceImpl implements CatalogService {
         Product product = new Product(name, category, brand, price, description);
         Product added = repository.add(product);
 
-        // Очистка кэша после изменений
-        cacheService.invalidateAll();
+        // Инвалидация только зависящих от товара записей кэша
+        cacheService.invalidateAffected(added);
 
         // Аудит
-        auditService.log(currentUser, Action.ADD,
+        auditService.log(username, Action.ADD,
                 "Added product: " + added.getName() + " (ID: " + added.getId() + ")");
 
-        return added.copy();
+        return added;
     }
 
     // READ
 
     @Override
     public List<Product> getAllProducts() {
-        String cacheKey = "all_products";
-
-        // Проверяем кэш
-        List<Product> cached = cacheService.get(cacheKey);
-        if (cached != null) {
-            return cached;
-        }
-
-        // Загружаем из репозитория
-        List<Product> products = repository.findAll();
-        cacheService.put(cacheKey, products);
-
-        return products; // Возвращаем копии
+        // При промахе загружаем из репозитория; одновременные промахи ждут одной загрузки
+        return cacheService.get("all_products", CacheDependency.any(), repository::findAll);
     }
 
     public Optional<Product> getProductById(int id) {
-        return repository.findById(id).map(Product::copy);
+        return repository.findById(id);
     }
 
     // UPDATE
     @Override
-    public boolean updateProduct(int id, String name, String category,
+    public boolean updateProduct(String username, int id, String name, String category,
                                  String brand, double price, String description) {
         validateProductData(name, category, brand, price);
 
         Product updated = new Product(name, category, brand, price, description);
-        boolean success = repository.update(id, updated);
-
-        if (success) {
-            cacheService.invalidateAll();
-            auditService.log(currentUser, Action.UPDATE,
+        Optional<ProductRepository.Update> update = repository.update(id, updated);
+
+        if (update.isPresent()) {
+            // Запись зависит от товара, если ей соответствовала старая или новая версия;
+            // новая — та, что сохранил репозиторий (у переданной ещё нет id)
+            cacheService.invalidateAffected(update.get().previous());
+            cacheService.invalidateAffected(update.get().current());
+            auditService.log(username, Action.UPDATE,
                     "Updated product ID: " + id);
         }
 
-        return success;
+        return update.isPresent();
     }
 
     // DELETE
     @Override
-    public boolean deleteProduct(int id) {
-        Optional<Product> product = repository.findById(id);
-        if (product.isEmpty()) {
-            return false;
-        }
-
-        boolean success = repository.delete(id);
+    public boolean deleteProduct(String username, int id) {
+        Optional<Product> removed = repository.delete(id);
 
-        if (success) {
-            cacheService.invalidateAll();
-            auditService.log(currentUser, Action.DELETE,
-                    "Deleted product: " + product.get().getName() + " (ID: " + id + ")");
+        if (removed.isPresent()) {
+            cacheService.invalidateAffected(removed.get());
+            auditService.log(username, Action.DELETE,
+                    "Deleted product: " + removed.get().getName() + " (ID: " + id + ")");
         }
 
-        return success;
+        return removed.isPresent();
     }
 
     // SEARCH & FILTER
     @Override
-    public List<Product> searchByName(String keyword) {
+    public List<Product> searchByName(String username, String keyword) {
         String cacheKey = "search_name_" + keyword;
-
-        List<Product> cached = cacheService.get(cacheKey);
-        if (cached != null) {
-            return cached;
+        // Аудит пишется только при промахе кэша, загрузку которого выполнил этот вызов.
+        // Сам загрузчик без побочных эффектов: кэш повторяет его в фоне при перезагрузке записи
+        Thread caller = Thread.currentThread();
+        AtomicBoolean missed = new AtomicBoolean();
+        List<Product> results = cacheService.get(cacheKey, CacheDependency.nameContains(keyword), () -> {
+            if (Thread.currentThread() == caller) {
+                missed.set(true);
+            }
+            return repository.searchByName(keyword);
+        });
+        if (missed.get()) {
+            auditService.log(username, Action.SEARCH, "Searched by name: " + keyword);
         }
-
-        List<Product> results = repository.searchByName(keyword);
-        cacheService.put(cacheKey, results);
-
-        auditService.log(currentUser, Action.SEARCH, "Searched by name: " + keyword);
-        return results.stream().map(Product::copy).toList();
+        return results;
     }
 
     @Override
     public List<Product> filterByCategory(String category) {
         String cacheKey = "filter_category_" + category;
-
-        List<Product> cached = cacheService.get(cacheKey);
-        if (cached != null) {
-            return cached;
-        }
-
-        List<Product> results = repository.findByCategory(category);
-        cacheService.put(cacheKey, results);
-
-        return results.stream().map(Product::copy).toList();
+        return cacheService.get(cacheKey, CacheDependency.category(category),
+                () -> repository.findByCategory(category));
     }
 
     @Override
     public List<Product> filterByBrand(String brand) {
         String cacheKey = "filter_brand_" + brand;
-
-        List<Product> cached = cacheService.get(cacheKey);
-        if (cached != null) {
-            return cached;
-        }
-
-        List<Product> results = repository.findByBrand(brand);
-        cacheService.put(cacheKey, results);
-
-        return results.stream().map(Product::copy).toList();
+        return cacheService.get(cacheKey, CacheDependency.brand(brand), () -> repository.findByBrand(brand));
     }
 
     @Override
     public List<Product> filterByPriceRange(double minPrice, double maxPrice) {
         String cacheKey = String.format("filter_price_%.2f_%.2f", minPrice, maxPrice);
+        return cacheService.get(cacheKey, CacheDependency.priceRange(minPrice, maxPrice),
+                () -> repository.findByPriceRange(minPrice, maxPrice));
+    }
+
+    @Override
+    public List<Product> query(ProductQuery query) {
+        String cacheKey = "query_" + query;
+        return cacheService.get(cacheKey, query.dependency(), () -> repository.query(query));
+    }
 
-        List<Product> cached = cacheService.get(cacheKey);
-        if (cached != null) {
-            return cached;
+    // PAGINATION
+    @Override
+    public ProductPage getProductsPage(int cursor, int limit) {
+        return repository.findPage(cursor, limit);
+    }
+
+    @Override
+    public ProductPage searchByNamePage(String username, String keyword, int cursor, int limit) {
+        ProductPage page = repository.searchByNamePage(keyword, cursor, limit);
+        if (cursor == ProductPage.FIRST_PAGE) {
+            auditService.log(username, Action.SEARCH, "Searched by name: " + keyword);
         }
+        return page;
+    }
 
-        List<Product> results = repository.findByPriceRange(minPrice, maxPrice);
-        cacheService.put(cacheKey, results);
+    @Override
+    public ProductPage filterByCategoryPage(String category, int cursor, int limit) {
+        return repository.findByCategoryPage(category, cursor, limit);
+    }
 
-        return results.stream().map(Product::copy).toList();
+    @Override
+    public ProductPage filterByBrandPage(String brand, int cursor, int limit) {
+        return repository.findByBrandPage(brand, cursor, limit);
+    }
+
+    @Override
+    public Stream<Product> streamProducts() {
+        return Stream.iterate(repository.findPage(ProductPage.FIRST_PAGE, STREAM_PAGE_SIZE),
+                        Objects::nonNull,
+                        page -> page.hasNext() ? repository.findPage(page.nextCursor(), STREAM_PAGE_SIZE) : null)
+                .flatMap(page -> page.items().stream());
     }
 
     // METRICS
@@ -187,6 +194,16 @@ public class CatalogServiceImpl implements CatalogService {
         return List.copyOf(repository.getAllBrands());
     }
 
+    @Override
+    public Map<String, Integer> getCategoryCounts(String brand) {
+        return repository.countByCategory(brand);
+    }
+
+    @Override
+    public Map<String, Integer> getBrandCounts(String category) {
+        return repository.countByBrand(category);
+    }
+
     // VALIDATION
     private void validateProductData(String name, String category,
                                      String brand, double price) {
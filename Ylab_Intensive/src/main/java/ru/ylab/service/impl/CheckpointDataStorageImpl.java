@@ -0,0 +1,423 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.DataChangeListener;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.User;
+import main.java.ru.ylab.service.DataStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Хранилище с фоновым сохранением изменений инкрементальными контрольными точками.
+ * <p>
+ * После {@link #load()} хранилище подписывается на изменения {@link AppData} и лишь помечает
+ * изменённые товары и пользователей (по id и логину), а новые записи аудита ставит в очередь.
+ * Фоновый поток раз в {@code flushIntervalMillis} или при накоплении {@code dirtyThreshold} изменений
+ * записывает контрольную точку: текущее состояние каждого помеченного объекта и новые записи аудита.
+ * Повторные изменения одного товара между контрольными точками схлопываются в одну запись,
+ * а операции каталога не ждут диска.
+ * </p>
+ * <p>
+ * Каждые {@code checkpointsPerSnapshot} контрольных точек (и при {@link #save(AppData)}) пишется
+ * полный бинарный снимок, и уже вошедшие в него контрольные точки удаляются.
+ * Снимок получает номер последней вошедшей в него контрольной точки ({@link EpochFiles}):
+ * при загрузке читается снимок с наибольшим номером и поверх него по порядку применяются только
+ * контрольные точки с большими номерами. Поэтому сбой между записью снимка и удалением старых
+ * контрольных точек не применит их поверх более нового снимка.
+ * </p>
+ * <p>
+ * Аудит снимка копируется под монитором списка аудита (под ним же записи добавляются и публикуются,
+ * см. {@link AppData#addAuditRecords(List)}), и в том же срезе очищается очередь новых записей аудита:
+ * всё, что вошло в снимок, не попадёт в следующую контрольную точку, а всё, что придёт позже, — попадёт.
+ * Поэтому запись аудита не может оказаться и в снимке, и в контрольной точке после него.
+ * Помеченные товары и пользователи остаются помеченными: их повторное применение при загрузке безопасно.
+ * </p>
+ * <p>
+ * Если снимок или контрольная точка не читается, {@link #load()} завершается исключением, а не возвращает
+ * пустые данные: иначе следующий снимок записал бы их поверх сохранённых данных.
+ * Контрольная точка, которую не удалось записать, возвращает свои изменения в очередь следующей.
+ * </p>
+ */
+public class CheckpointDataStorageImpl implements DataStorage, DataChangeListener {
+    private static final String SNAPSHOT_FILE = "marketplace_checkpoint_snapshot.bin";
+    private static final String CHECKPOINT_PREFIX = "marketplace_checkpoint_";
+    private static final String CHECKPOINT_SUFFIX = ".log";
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5_000;
+    private static final int DEFAULT_DIRTY_THRESHOLD = 1_000;
+    private static final int DEFAULT_CHECKPOINTS_PER_SNAPSHOT = 20;
+
+    private final Path snapshotPath; // снимок без номера; снимки с номерами — рядом
+    private final long flushIntervalMillis;
+    private final int dirtyThreshold;
+    private final int checkpointsPerSnapshot;
+
+    // Помеченные объекты: при сбросе пишется их текущее состояние (отсутствие — удаление)
+    private final Set<Integer> dirtyProducts = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final Queue<AuditRecord> newAuditRecords = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Object ioLock = new Object(); // контрольные точки и снимки не пересекаются
+
+    private volatile ScheduledExecutorService scheduler; // запускается при первой загрузке
+    private AppData data;
+    private long lastCheckpoint;
+    private int checkpointsSinceSnapshot;
+
+    public CheckpointDataStorageImpl(String snapshotFile, long flushIntervalMillis, int dirtyThreshold,
+                                     int checkpointsPerSnapshot) {
+        if (flushIntervalMillis <= 0 || dirtyThreshold <= 0 || checkpointsPerSnapshot <= 0) {
+            throw new IllegalArgumentException("Параметры сохранения должны быть положительными");
+        }
+        this.snapshotPath = Path.of(snapshotFile);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.dirtyThreshold = dirtyThreshold;
+        this.checkpointsPerSnapshot = checkpointsPerSnapshot;
+    }
+
+    public CheckpointDataStorageImpl(long flushIntervalMillis, int dirtyThreshold) {
+        this(SNAPSHOT_FILE, flushIntervalMillis, dirtyThreshold, DEFAULT_CHECKPOINTS_PER_SNAPSHOT);
+    }
+
+    public CheckpointDataStorageImpl() {
+        this(DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_DIRTY_THRESHOLD);
+    }
+
+    /**
+     * Загружает последний снимок и применяет поверх него контрольные точки, записанные после него.
+     *
+     * @throws IllegalStateException если снимок или контрольную точку не удалось прочитать
+     */
+    @Override
+    public AppData load() {
+        AppData loaded;
+        synchronized (ioLock) {
+            try {
+                if (data != null) {
+                    // повторная загрузка: изменения прежних данных сбрасываются, подписка снимается
+                    data.removeChangeListener(this);
+                    writeCheckpoint();
+                }
+                NavigableSet<Long> snapshots = EpochFiles.list(snapshotPath);
+                long covered = snapshots.isEmpty() ? 0 : snapshots.last();
+                loaded = snapshots.isEmpty()
+                        ? new AppData()
+                        : BinarySnapshotCodec.read(EpochFiles.path(snapshotPath, covered));
+
+                SortedMap<Long, Path> checkpoints = listCheckpoints().tailMap(covered + 1);
+                for (Path checkpoint : checkpoints.values()) {
+                    JournalCodec.replay(checkpoint, loaded);
+                }
+                lastCheckpoint = checkpoints.isEmpty() ? covered : checkpoints.lastKey();
+                checkpointsSinceSnapshot = checkpoints.size();
+
+                // Остаются, если сбой случился сразу после записи снимка
+                deleteCovered(covered);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось загрузить снимок и контрольные точки, запуск остановлен, "
+                        + "чтобы не перезаписать сохранённые данные: " + e.getMessage(), e);
+            }
+            data = loaded;
+        }
+
+        loaded.addChangeListener(this);
+        startScheduler();
+        System.out.println("Данные загружены из снимка и контрольных точек: " + loaded);
+        return loaded;
+    }
+
+    /**
+     * Сбрасывает накопленные изменения и записывает полный снимок.
+     */
+    @Override
+    public void save(AppData data) {
+        synchronized (ioLock) {
+            this.data = data;
+            try {
+                writeCheckpoint();
+                writeSnapshot();
+                System.out.println("Данные сохранены: " + data);
+            } catch (IOException e) {
+                System.err.println("Ошибка сохранения: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public boolean dataExists() {
+        try {
+            return !EpochFiles.list(snapshotPath).isEmpty() || !listCheckpoints().isEmpty();
+        } catch (IOException e) {
+            return Files.exists(snapshotPath);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        synchronized (ioLock) {
+            try {
+                EpochFiles.deleteBefore(snapshotPath, Long.MAX_VALUE);
+                for (Path checkpoint : listCheckpoints().values()) {
+                    Files.deleteIfExists(checkpoint);
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка удаления файлов: " + e.getMessage());
+            }
+            checkpointsSinceSnapshot = 0;
+        }
+        System.out.println("Все файлы данных удалены");
+    }
+
+    // ==================== ПОДПИСКА НА ИЗМЕНЕНИЯ ====================
+
+    @Override
+    public void onProductSaved(Product product) {
+        if (dirtyProducts.add(product.getId())) {
+            markDirty();
+        }
+    }
+
+    @Override
+    public void onProductDeleted(int productId) {
+        if (dirtyProducts.add(productId)) {
+            markDirty();
+        }
+    }
+
+    @Override
+    public void onUserSaved(User user) {
+        if (dirtyUsers.add(user.getUsername())) {
+            markDirty();
+        }
+    }
+
+    @Override
+    public void onAuditRecorded(AuditRecord record) {
+        newAuditRecords.add(record);
+        markDirty();
+    }
+
+    /**
+     * Учитывает изменение и при достижении порога запрашивает внеочередной сброс (не более одного сразу).
+     */
+    private void markDirty() {
+        if (dirtyCount.incrementAndGet() >= dirtyThreshold && scheduler != null
+                && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    // ==================== ФОНОВОЕ СОХРАНЕНИЕ ====================
+
+    private synchronized void startScheduler() {
+        if (scheduler != null) {
+            return; // повторная загрузка: поток записи уже запущен
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        synchronized (ioLock) {
+            try {
+                if (writeCheckpoint() && checkpointsSinceSnapshot >= checkpointsPerSnapshot) {
+                    writeSnapshot();
+                }
+            } catch (IOException | RuntimeException e) {
+                // исключение остановило бы периодическую задачу — только логируем
+                System.err.println("Ошибка фонового сохранения: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Записывает помеченные изменения новой контрольной точкой.
+     * Метка снимается до чтения состояния, поэтому изменение, пришедшее во время записи,
+     * попадёт в следующую контрольную точку. Если запись не удалась, метки и записи аудита
+     * возвращаются, и изменения попадут в следующую контрольную точку.
+     *
+     * @return {@code true}, если контрольная точка записана
+     */
+    private boolean writeCheckpoint() throws IOException {
+        if (data == null) {
+            return false;
+        }
+        dirtyCount.set(0);
+        List<byte[]> records = new ArrayList<>();
+
+        List<Integer> products = new ArrayList<>();
+        for (Iterator<Integer> it = dirtyProducts.iterator(); it.hasNext(); ) {
+            Integer id = it.next();
+            it.remove();
+            products.add(id);
+            Product product = data.getProducts().get(id);
+            // Удаление продвигает nextProductId при загрузке, поэтому id не выдаётся повторно,
+            // даже если товар добавлен и удалён между контрольными точками
+            records.add(product != null ? JournalCodec.productSaved(product) : JournalCodec.productDeleted(id));
+        }
+        List<String> users = new ArrayList<>();
+        for (Iterator<String> it = dirtyUsers.iterator(); it.hasNext(); ) {
+            String username = it.next();
+            it.remove();
+            users.add(username);
+            User user = data.getUsers().get(username);
+            if (user != null) {
+                records.add(JournalCodec.userSaved(user));
+            }
+        }
+        List<AuditRecord> audit = new ArrayList<>();
+        AuditRecord record;
+        while ((record = newAuditRecords.poll()) != null) {
+            audit.add(record);
+            records.add(JournalCodec.auditRecorded(record));
+        }
+
+        if (records.isEmpty()) {
+            return false;
+        }
+
+        try {
+            writeCheckpointFile(records);
+        } catch (IOException e) {
+            restore(products, users, audit);
+            throw e;
+        }
+        return true;
+    }
+
+    private void writeCheckpointFile(List<byte[]> records) throws IOException {
+        long sequence = lastCheckpoint + 1;
+        Path target = checkpointPath(sequence);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer frames = JournalCodec.frames(records);
+            while (frames.hasRemaining()) {
+                channel.write(frames);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastCheckpoint = sequence;
+        checkpointsSinceSnapshot++;
+    }
+
+    /**
+     * Возвращает изменения незаписанной контрольной точки: записи аудита — перед пришедшими позже.
+     */
+    private void restore(List<Integer> products, List<String> users, List<AuditRecord> audit) {
+        List<AuditRecord> later = new ArrayList<>();
+        AuditRecord record;
+        while ((record = newAuditRecords.poll()) != null) {
+            later.add(record);
+        }
+        newAuditRecords.addAll(audit);
+        newAuditRecords.addAll(later);
+        dirtyProducts.addAll(products);
+        dirtyUsers.addAll(users);
+        dirtyCount.addAndGet(products.size() + users.size() + audit.size());
+    }
+
+    /**
+     * Записывает полный снимок с номером последней контрольной точки и удаляет вошедшие в него
+     * контрольные точки и прежние снимки. Записи аудита из очереди, вошедшие в снимок, снимаются
+     * с очереди в момент среза; если снимок не записан, они возвращаются в её начало.
+     * Товары и пользователи, изменённые во время записи снимка, уже помечены
+     * и попадут в следующую контрольную точку; повторное применение при загрузке безопасно.
+     */
+    private void writeSnapshot() throws IOException {
+        long covered = lastCheckpoint;
+        Path snapshot = EpochFiles.path(snapshotPath, covered);
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        List<AuditRecord> audit;
+        List<AuditRecord> captured = new ArrayList<>();
+        synchronized (data.getAuditRecords()) { // срез
+            audit = new ArrayList<>(data.getAuditRecords());
+            AuditRecord record;
+            while ((record = newAuditRecords.poll()) != null) {
+                captured.add(record);
+            }
+        }
+        try {
+            BinarySnapshotCodec.write(data, audit, tmp);
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            restore(List.of(), List.of(), captured);
+            throw e;
+        }
+        EpochFiles.syncDirectory(snapshot);
+
+        deleteCovered(covered);
+        checkpointsSinceSnapshot = 0;
+    }
+
+    /**
+     * Удаляет снимки с меньшими номерами и контрольные точки, вошедшие в снимок {@code covered}.
+     */
+    private void deleteCovered(long covered) throws IOException {
+        EpochFiles.deleteBefore(snapshotPath, covered);
+        for (Path checkpoint : listCheckpoints().headMap(covered, true).values()) {
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    // ==================== ФАЙЛЫ ====================
+
+    private Path checkpointPath(long sequence) {
+        return snapshotPath.resolveSibling(String.format("%s%08d%s", CHECKPOINT_PREFIX, sequence, CHECKPOINT_SUFFIX));
+    }
+
+    /**
+     * Контрольные точки рядом со снимком, упорядоченные по номеру.
+     */
+    private TreeMap<Long, Path> listCheckpoints() {
+        TreeMap<Long, Path> checkpoints = new TreeMap<>();
+        Path dir = snapshotPath.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(CHECKPOINT_PREFIX.length(), name.length() - CHECKPOINT_SUFFIX.length());
+                try {
+                    checkpoints.put(Long.parseLong(number), file);
+                } catch (NumberFormatException ignored) {
+                    // посторонний файл с похожим именем
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения каталога данных: " + e.getMessage());
+        }
+        return checkpoints;
+    }
+}
@@ -10,6 +10,18 @@ public class DataStorageImpl implements DataStorage {
     private static final String DATA_FILE = "marketplace_data.ser";
     private static final String BACKUP_FILE = "marketplace_data_backup.ser";
 
+    private final String dataFile;
+    private final String backupFile;
+
+    public DataStorageImpl(String dataFile, String backupFile) {
+        this.dataFile = dataFile;
+        this.backupFile = backupFile;
+    }
+
+    public DataStorageImpl() {
+        this(DATA_FILE, BACKUP_FILE);
+    }
+
 
     @Override
     public void save(AppData data) {
@@ -19,7 +31,7 @@ public class DataStorageImpl implements DataStorage {
 
             // Сохраняем новые данные
             try (ObjectOutputStream oos = new ObjectOutputStream(
-                    new FileOutputStream(DATA_FILE))) {
+                    new FileOutputStream(dataFile))) {
                 oos.writeObject(data);
                 System.out.println("Данные сохранены: " + data);
             }
@@ -32,7 +44,7 @@ public class DataStorageImpl implements DataStorage {
 
     @Override
     public AppData load() {
-        File file = new File(DATA_FILE);
+        File file = new File(dataFile);
 
         if (!file.exists()) {
             System.out.println("Файл данных не найден. Создаём новую базу данных.");
@@ -40,7 +52,7 @@ public class DataStorageImpl implements DataStorage {
         }
 
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(DATA_FILE))) {
+                new FileInputStream(dataFile))) {
             AppData data = (AppData) ois.readObject();
             System.out.println("Данные загружены: " + data);
             return data;
@@ -54,8 +66,8 @@ public class DataStorageImpl implements DataStorage {
 
 
     private void createBackup() {
-        File current = new File(DATA_FILE);
-        File backup = new File(BACKUP_FILE);
+        File current = new File(dataFile);
+        File backup = new File(backupFile);
 
         if (current.exists()) {
             try {
@@ -68,7 +80,7 @@ public class DataStorageImpl implements DataStorage {
 
 
     private AppData loadBackup() {
-        File backup = new File(BACKUP_FILE);
+        File backup = new File(backupFile);
 
         if (!backup.exists()) {
             System.err.println("Резервная копия не найдена. Создаём новую базу.");
@@ -76,7 +88,7 @@ public class DataStorageImpl implements DataStorage {
         }
 
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(BACKUP_FILE))) {
+                new FileInputStream(backupFile))) {
             AppData data = (AppData) ois.readObject();
             System.out.println("Данные восстановлены из резервной копии: " + data);
             return data;
@@ -101,14 +113,14 @@ public class DataStorageImpl implements DataStorage {
 
     @Override
     public boolean dataExists() {
-        return new File(DATA_FILE).exists();
+        return new File(dataFile).exists();
     }
 
 
     @Override
     public void deleteAll() {
-        new File(DATA_FILE).delete();
-        new File(BACKUP_FILE).delete();
+        new File(dataFile).delete();
+        new File(backupFile).delete();
         System.out.println("Все файлы данных удалены");
     }
 }
@@ -0,0 +1,96 @@
+package main.java.ru.ylab.service.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Нумерованные файлы хранилищ: снимки и журналы, которые сменяют друг друга.
+ * <p>
+ * Номер 0 — сам базовый файл ({@code marketplace_journal.log}), остальные номера вставляются
+ * перед расширением ({@code marketplace_journal.3.log}). Поэтому файлы, записанные до появления
+ * нумерации, читаются как номер 0.
+ * </p>
+ */
+final class EpochFiles {
+
+    private EpochFiles() {
+    }
+
+    /**
+     * Файл с номером {@code epoch}: для 0 — сам {@code base}, иначе номер вставляется перед расширением.
+     */
+    static Path path(Path base, long epoch) {
+        if (epoch == 0) {
+            return base;
+        }
+        String name = base.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String numbered = dot > 0
+                ? name.substring(0, dot) + "." + epoch + name.substring(dot)
+                : name + "." + epoch;
+        return base.resolveSibling(numbered);
+    }
+
+    /**
+     * Номера, для которых существует файл {@link #path(Path, long)}, по возрастанию.
+     */
+    static NavigableSet<Long> list(Path base) throws IOException {
+        NavigableSet<Long> result = new TreeSet<>();
+        if (Files.exists(base)) {
+            result.add(0L);
+        }
+        String name = base.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String prefix = (dot > 0 ? name.substring(0, dot) : name) + ".";
+        String suffix = dot > 0 ? name.substring(dot) : "";
+        Path dir = base.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(file -> file.length() > prefix.length() + suffix.length()
+                            && file.startsWith(prefix) && file.endsWith(suffix))
+                    .forEach(file -> {
+                        String number = file.substring(prefix.length(), file.length() - suffix.length());
+                        try {
+                            long epoch = Long.parseLong(number);
+                            if (epoch > 0) {
+                                result.add(epoch);
+                            }
+                        } catch (NumberFormatException e) {
+                            // посторонний файл с похожим именем
+                        }
+                    });
+        }
+        return result;
+    }
+
+    /**
+     * Сбрасывает на диск каталог файла, чтобы созданные и переименованные в нём файлы пережили сбой.
+     * Там, где каталог нельзя открыть как файл (Windows), шаг пропускается.
+     */
+    static void syncDirectory(Path file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return; // каталог не открывается для чтения на этой платформе
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Удаляет файлы с номерами меньше {@code bound}.
+     */
+    static void deleteBefore(Path base, long bound) throws IOException {
+        for (long epoch : list(base).headSet(bound, false)) {
+            Files.deleteIfExists(path(base, epoch));
+        }
+    }
+}
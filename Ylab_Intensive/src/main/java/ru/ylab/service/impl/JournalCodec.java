@@ -0,0 +1,227 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.User;
+import main.java.ru.ylab.model.enums.Action;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * Формат записей журнала изменений.
+ * <p>
+ * Каждая запись — кадр {@code [int длина][int CRC32][payload]}, payload начинается с байта типа.
+ * Оборванный или повреждённый хвост файла (сбой во время записи) определяется по длине и CRC
+ * и при воспроизведении отбрасывается.
+ * </p>
+ */
+final class JournalCodec {
+
+    static final byte PRODUCT_SAVED = 1;
+    static final byte PRODUCT_DELETED = 2;
+    static final byte USER_SAVED = 3;
+    static final byte AUDIT_RECORDED = 4;
+
+    static final int FRAME_HEADER_SIZE = 8;
+
+    private JournalCodec() {
+    }
+
+    // ==================== КОДИРОВАНИЕ ====================
+
+    static byte[] productSaved(Product product) {
+        return encode(out -> {
+            out.writeByte(PRODUCT_SAVED);
+            writeProduct(out, product);
+        });
+    }
+
+    static byte[] productDeleted(int productId) {
+        return encode(out -> {
+            out.writeByte(PRODUCT_DELETED);
+            out.writeInt(productId);
+        });
+    }
+
+    static byte[] userSaved(User user) {
+        return encode(out -> {
+            out.writeByte(USER_SAVED);
+            out.writeUTF(user.getUsername());
+            out.writeUTF(user.getPasswordHash());
+        });
+    }
+
+    static byte[] auditRecorded(AuditRecord record) {
+        return encode(out -> {
+            out.writeByte(AUDIT_RECORDED);
+            writeDateTime(out, record.getTimestamp());
+            writeNullableString(out, record.getUsername());
+            out.writeByte(record.getAction().ordinal());
+            writeNullableString(out, record.getDetails());
+        });
+    }
+
+    /**
+     * Упаковывает записи в кадры одним буфером для последовательной записи в канал.
+     */
+    static ByteBuffer frames(Collection<byte[]> payloads) {
+        int total = 0;
+        for (byte[] payload : payloads) {
+            total += FRAME_HEADER_SIZE + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(payload);
+        }
+        return buffer.flip();
+    }
+
+    // ==================== ВОСПРОИЗВЕДЕНИЕ ====================
+
+    /**
+     * Применяет записи файла к данным.
+     *
+     * @return длина корректной части файла в байтах (всё, что дальше, — оборванный хвост)
+     */
+    static long replay(Path file, AppData data) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                int expectedCrc;
+                try {
+                    int length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length <= 0) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+
+                apply(payload, data);
+                validLength += FRAME_HEADER_SIZE + payload.length;
+            }
+        }
+        return validLength;
+    }
+
+    private static void apply(byte[] payload, AppData data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case PRODUCT_SAVED -> {
+                Product product = readProduct(in);
+                data.getProducts().put(product.getId(), product);
+                if (product.getId() >= data.getNextProductId()) {
+                    data.setNextProductId(product.getId() + 1);
+                }
+            }
+            case PRODUCT_DELETED -> {
+                int id = in.readInt();
+                data.getProducts().remove(id);
+                // id удалённого товара уже выдан: контрольная точка могла не содержать его добавления
+                if (id >= data.getNextProductId()) {
+                    data.setNextProductId(id + 1);
+                }
+            }
+            case USER_SAVED -> {
+                String username = in.readUTF();
+                data.getUsers().put(username, new User(username, in.readUTF()));
+            }
+            case AUDIT_RECORDED -> {
+                data.getAuditRecords().add(new AuditRecord(readDateTime(in), readNullableString(in),
+                        Action.values()[in.readByte()], readNullableString(in)));
+            }
+            default -> throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    // ==================== ПОЛЯ ====================
+
+    static void writeProduct(DataOutput out, Product product) throws IOException {
+        out.writeInt(product.getId());
+        out.writeUTF(product.getName());
+        out.writeUTF(product.getCategory());
+        out.writeUTF(product.getBrand());
+        out.writeDouble(product.getPrice());
+        writeNullableString(out, product.getDescription());
+        writeDateTime(out, product.getCreatedDate());
+        writeDateTime(out, product.getModifiedDate());
+    }
+
+    static Product readProduct(DataInput in) throws IOException {
+        return new Product(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(), in.readDouble(),
+                readNullableString(in), readDateTime(in), readDateTime(in));
+    }
+
+    static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeDateTime(DataOutput out, LocalDateTime value) throws IOException {
+        if (value == null) {
+            out.writeLong(Long.MIN_VALUE);
+            return;
+        }
+        out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(value.getNano());
+    }
+
+    static LocalDateTime readDateTime(DataInput in) throws IOException {
+        long seconds = in.readLong();
+        if (seconds == Long.MIN_VALUE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(seconds, in.readInt(), ZoneOffset.UTC);
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // запись в память не бросает IOException
+        }
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,335 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.DataChangeListener;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.User;
+import main.java.ru.ylab.service.DataStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Хранилище на основе журнала изменений (write-ahead log).
+ * <p>
+ * После {@link #load()} хранилище подписывается на изменения {@link AppData} и дописывает каждое
+ * изменение товара, пользователя или аудита в конец журнала. Запись выполняет фоновый поток:
+ * он забирает все накопившиеся записи одной пачкой и делает один {@code fsync} на пачку (group commit),
+ * поэтому вызывающий поток не ждёт диска, а при сбое теряется не больше одной незавершённой пачки.
+ * Пачка, которую не удалось записать, не отбрасывается: она повторяется раньше следующих записей.
+ * </p>
+ * <p>
+ * Снимки и журналы нумеруются эпохами ({@link EpochFiles}): снимок эпохи N содержит всё,
+ * что было записано в журналы эпох меньше N, а журнал эпохи N — изменения после него
+ * (эпоха 0 — файлы без номера, {@code marketplace_journal.log}, затем {@code marketplace_journal.1.log} и т. д.).
+ * Когда журнал накапливает {@code compactionThreshold} записей (и при {@link #save(AppData)}),
+ * он сжимается: текущее состояние записывается снимком следующей эпохи, запись продолжается
+ * в новый журнал, и только после этого удаляются файлы прошлой эпохи.
+ * Атомарное переименование снимка — точка фиксации (после него каталог сбрасывается на диск):
+ * после сбоя на любом шаге загрузка берёт последний снимок и воспроизводит только журналы
+ * его эпохи и новее, поэтому старый журнал никогда не применяется поверх более нового снимка.
+ * </p>
+ * <p>
+ * Снимок и смена журнала делаются по одному срезу под блокировкой записи. Записи забираются из очереди
+ * только под этой блокировкой, поэтому вне её нет «забранных, но не записанных» записей.
+ * Под монитором списка аудита (под ним же записи аудита добавляются и публикуются,
+ * см. {@link AppData#addAuditRecords(List)}) копируется аудит снимка и забирается вся очередь:
+ * она дописывается в текущий журнал, а всё, что придёт позже, попадёт только в новый.
+ * Поэтому запись аудита не может оказаться и в снимке, и в следующем журнале.
+ * Товары и пользователи снимка копируются сразу после среза; их записи в новом журнале,
+ * если изменение успело попасть и в снимок, при воспроизведении просто применяются повторно.
+ * </p>
+ * <p>
+ * Если снимок или журнал не читается, {@link #load()} завершается исключением, а не возвращает
+ * пустые данные: иначе следующее сжатие записало бы пустой снимок поверх сохранённых данных.
+ * </p>
+ */
+public class JournalDataStorageImpl implements DataStorage, DataChangeListener {
+    private static final String SNAPSHOT_FILE = "marketplace_journal_snapshot.bin";
+    private static final String JOURNAL_FILE = "marketplace_journal.log";
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+    private static final int MAX_BATCH = 4096;
+    private static final long RETRY_DELAY_MS = 1_000;
+
+    private final Path snapshotPath; // файл эпохи 0, остальные эпохи — рядом с номером в имени
+    private final Path journalPath;
+    private final int compactionThreshold;
+
+    private final BlockingQueue<byte[]> pending = new LinkedBlockingQueue<>(); // забираются только под ioLock
+    private final Object ioLock = new Object(); // запись пачек и сжатие не пересекаются
+    private final List<byte[]> unwritten = new ArrayList<>(); // забраны из очереди, но ещё не записаны; под ioLock
+
+    private FileChannel journal;
+    private long epoch; // эпоха текущего журнала
+    private AppData data;
+    private int recordsSinceCompaction;
+    private volatile Thread writer; // запускается при первой загрузке
+
+    public JournalDataStorageImpl(String snapshotFile, String journalFile, int compactionThreshold) {
+        this.snapshotPath = Path.of(snapshotFile);
+        this.journalPath = Path.of(journalFile);
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public JournalDataStorageImpl() {
+        this(SNAPSHOT_FILE, JOURNAL_FILE, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Загружает последний снимок и воспроизводит поверх него журналы той же эпохи и новее.
+     *
+     * @throws IllegalStateException если снимок или журнал не удалось прочитать
+     */
+    @Override
+    public AppData load() {
+        AppData loaded;
+        synchronized (ioLock) {
+            try {
+                if (data != null) {
+                    // повторная загрузка: изменения прежних данных дописываются, подписка снимается
+                    data.removeChangeListener(this);
+                    pending.drainTo(unwritten);
+                    writeUnwritten();
+                }
+                if (journal != null) {
+                    journal.close();
+                    journal = null;
+                }
+
+                NavigableSet<Long> snapshots = EpochFiles.list(snapshotPath);
+                long snapshotEpoch = snapshots.isEmpty() ? 0 : snapshots.last();
+                loaded = snapshots.isEmpty()
+                        ? new AppData()
+                        : BinarySnapshotCodec.read(EpochFiles.path(snapshotPath, snapshotEpoch));
+
+                NavigableSet<Long> journals = EpochFiles.list(journalPath).tailSet(snapshotEpoch, true);
+                long validLength = 0;
+                for (long journalEpoch : journals) {
+                    validLength = JournalCodec.replay(EpochFiles.path(journalPath, journalEpoch), loaded);
+                }
+                epoch = journals.isEmpty() ? snapshotEpoch : journals.last();
+
+                journal = FileChannel.open(EpochFiles.path(journalPath, epoch),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                if (journal.size() > validLength) {
+                    System.err.println("Журнал содержит оборванную запись, хвост отброшен");
+                    journal.truncate(validLength);
+                }
+                journal.position(validLength);
+                recordsSinceCompaction = 0;
+
+                // Файлы прошлых эпох остаются, если сбой случился сразу после фиксации снимка
+                deleteBefore(snapshotEpoch);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось загрузить снимок и журнал, запуск остановлен, "
+                        + "чтобы не перезаписать сохранённые данные: " + e.getMessage(), e);
+            }
+            data = loaded;
+            loaded.addChangeListener(this);
+            if (writer == null) {
+                writer = new Thread(this::writeLoop, "journal-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+        }
+
+        System.out.println("Данные загружены из снимка и журнала: " + loaded);
+        return loaded;
+    }
+
+    /**
+     * Сбрасывает накопленные записи и сжимает журнал в снимок.
+     * Если записать их не удалось, они остаются в очереди на повтор.
+     */
+    @Override
+    public void save(AppData data) {
+        synchronized (ioLock) {
+            this.data = data;
+            try {
+                pending.drainTo(unwritten);
+                writeUnwritten();
+                compact();
+                System.out.println("Данные сохранены: " + data);
+            } catch (IOException e) {
+                System.err.println("Ошибка сохранения: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public boolean dataExists() {
+        try {
+            return !EpochFiles.list(snapshotPath).isEmpty() || !EpochFiles.list(journalPath).isEmpty();
+        } catch (IOException e) {
+            return Files.exists(snapshotPath) || Files.exists(journalPath);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        synchronized (ioLock) {
+            try {
+                if (journal != null) {
+                    journal.close();
+                    journal = null;
+                }
+                pending.clear();
+                unwritten.clear();
+                deleteBefore(Long.MAX_VALUE);
+                epoch = 0;
+            } catch (IOException e) {
+                System.err.println("Ошибка удаления файлов: " + e.getMessage());
+            }
+        }
+        System.out.println("Все файлы данных удалены");
+    }
+
+    // ==================== ПОДПИСКА НА ИЗМЕНЕНИЯ ====================
+
+    @Override
+    public void onProductSaved(Product product) {
+        enqueue(JournalCodec.productSaved(product));
+    }
+
+    @Override
+    public void onProductDeleted(int productId) {
+        enqueue(JournalCodec.productDeleted(productId));
+    }
+
+    @Override
+    public void onUserSaved(User user) {
+        enqueue(JournalCodec.userSaved(user));
+    }
+
+    @Override
+    public void onAuditRecorded(AuditRecord record) {
+        enqueue(JournalCodec.auditRecorded(record));
+    }
+
+    private void enqueue(byte[] payload) {
+        pending.add(payload);
+        Thread thread = writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // ==================== ЗАПИСЬ ====================
+
+    /**
+     * Забирает записи из очереди только под {@code ioLock}; ждёт новых записей, не забирая их
+     * ({@link #enqueue(byte[])} будит поток).
+     */
+    private void writeLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                synchronized (ioLock) {
+                    pending.drainTo(unwritten, MAX_BATCH);
+                    writeUnwritten();
+                    if (recordsSinceCompaction >= compactionThreshold) {
+                        compact();
+                    }
+                }
+                if (pending.isEmpty()) {
+                    LockSupport.park(this);
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка записи журнала, записи будут записаны повторно: " + e.getMessage());
+                // Ждём не дольше RETRY_DELAY_MS и повторяем незаписанную пачку
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MS));
+            }
+        }
+    }
+
+    /**
+     * Дописывает незаписанные записи одной пачкой и делает один fsync на всю пачку.
+     * При ошибке частично записанная пачка обрезается, а записи остаются для повтора.
+     */
+    private void writeUnwritten() throws IOException {
+        if (journal == null) {
+            unwritten.clear(); // файлы данных удалены (deleteAll)
+            return;
+        }
+        if (unwritten.isEmpty()) {
+            return;
+        }
+        long start = journal.position();
+        try {
+            ByteBuffer frames = JournalCodec.frames(unwritten);
+            while (frames.hasRemaining()) {
+                journal.write(frames);
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            try {
+                journal.truncate(start);
+                journal.position(start);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+        recordsSinceCompaction += unwritten.size();
+        unwritten.clear();
+    }
+
+    /**
+     * Записывает текущее состояние снимком следующей эпохи и переключает запись на новый журнал.
+     * Записи до среза дописываются в текущий журнал, поэтому при ошибке ничего не теряется.
+     * Снимок пишется во временный файл и атомарно переименовывается; файлы прошлой эпохи
+     * удаляются только после этого.
+     */
+    private void compact() throws IOException {
+        List<AuditRecord> audit;
+        synchronized (data.getAuditRecords()) { // срез
+            audit = new ArrayList<>(data.getAuditRecords());
+            pending.drainTo(unwritten);
+        }
+        writeUnwritten();
+
+        long next = epoch + 1;
+        Path snapshot = EpochFiles.path(snapshotPath, next);
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        BinarySnapshotCodec.write(data, audit, tmp);
+
+        FileChannel nextJournal = FileChannel.open(EpochFiles.path(journalPath, next),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            nextJournal.close();
+            throw e;
+        }
+
+        if (journal != null) {
+            journal.close();
+        }
+        journal = nextJournal;
+        epoch = next;
+        recordsSinceCompaction = 0;
+        EpochFiles.syncDirectory(snapshot); // переименование снимка и новый журнал переживут сбой
+        deleteBefore(next);
+    }
+
+    /**
+     * Удаляет снимки и журналы эпох меньше {@code bound}.
+     */
+    private void deleteBefore(long bound) throws IOException {
+        EpochFiles.deleteBefore(snapshotPath, bound);
+        EpochFiles.deleteBefore(journalPath, bound);
+    }
+}
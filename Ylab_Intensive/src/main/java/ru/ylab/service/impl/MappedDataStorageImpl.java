@@ -0,0 +1,31 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Режим {@link BinaryDataStorageImpl}, в котором раздел товаров снимка отображается в память
+ * ({@link MappedProductMap}) вместо чтения целиком.
+ * <p>
+ * Товары создаются при первом обращении: при запуске файл только проверяется последовательным проходом
+ * (контрольная сумма, границы колонок) без создания объектов; индексы {@code ProductRepository} строятся при первом запросе, которому они нужны.
+ * Сохранение использует тот же формат и те же файлы, что и {@link BinaryDataStorageImpl}.
+ * </p>
+ */
+public class MappedDataStorageImpl extends BinaryDataStorageImpl {
+
+    public MappedDataStorageImpl(String dataFile, String backupFile) {
+        super(dataFile, backupFile);
+    }
+
+    public MappedDataStorageImpl() {
+        super();
+    }
+
+    @Override
+    protected AppData readSnapshot(Path file) throws IOException {
+        return BinarySnapshotCodec.map(file);
+    }
+}
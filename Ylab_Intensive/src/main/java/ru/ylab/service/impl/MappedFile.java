@@ -0,0 +1,115 @@
+package main.java.ru.ylab.service.impl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Файл только для чтения, отображённый в память частями по 1 ГБ.
+ * <p>
+ * Один {@link MappedByteBuffer} адресуется {@code int} и не превышает 2 ГБ, поэтому позиции здесь — {@code long},
+ * а файл отображается несколькими частями. Соседние части перекрываются на 8 байт: значение фиксированной
+ * ширины всегда целиком лежит в части, где начинается, и читается одним обращением.
+ * Массив байт, пересекающий границу, копируется по частям.
+ * </p>
+ * <p>
+ * Потокобезопасно: используются только абсолютные операции буферов.
+ * Отображение остаётся действительным после закрытия канала.
+ * </p>
+ */
+final class MappedFile {
+    private static final int CHUNK_SHIFT = 30; // 1 ГБ
+    private static final int OVERLAP = Long.BYTES;
+
+    private final MappedByteBuffer[] chunks;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final long size;
+
+    MappedFile(FileChannel channel) throws IOException {
+        this(channel, CHUNK_SHIFT);
+    }
+
+    /**
+     * @param chunkShift размер части — {@code 2^chunkShift} байт (меньшие части — только для проверки границ)
+     */
+    MappedFile(FileChannel channel, int chunkShift) throws IOException {
+        if (chunkShift < 3 || chunkShift > CHUNK_SHIFT) {
+            throw new IllegalArgumentException("Размер части должен быть от 8 байт до 1 ГБ");
+        }
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        this.size = channel.size();
+        long chunkSize = 1L << chunkShift;
+        int count = (int) ((size + chunkSize - 1) >>> chunkShift);
+        this.chunks = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << chunkShift;
+            long length = Math.min(size - start, chunkSize + OVERLAP);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long position) {
+        return chunk(position).get(offset(position));
+    }
+
+    int getInt(long position) {
+        return chunk(position).getInt(offset(position));
+    }
+
+    long getLong(long position) {
+        return chunk(position).getLong(offset(position));
+    }
+
+    double getDouble(long position) {
+        return chunk(position).getDouble(offset(position));
+    }
+
+    /**
+     * Копирует {@code target.length} байт начиная с {@code position}.
+     */
+    void get(long position, byte[] target) {
+        int copied = 0;
+        while (copied < target.length) {
+            long at = position + copied;
+            MappedByteBuffer chunk = chunk(at);
+            int offset = offset(at);
+            int length = Math.min(target.length - copied, chunk.capacity() - offset);
+            chunk.get(offset, target, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * CRC32 первых {@code length} байт файла.
+     */
+    int checksum(long length) {
+        CRC32 crc = new CRC32();
+        long position = 0;
+        while (position < length) {
+            MappedByteBuffer chunk = chunk(position);
+            int offset = offset(position);
+            int count = (int) Math.min(length - position, chunkMask + 1 - offset);
+            crc.update(chunk.duplicate().position(offset).limit(offset + count));
+            position += count;
+        }
+        return (int) crc.getValue();
+    }
+
+    private MappedByteBuffer chunk(long position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Позиция " + position + " за пределами файла размером " + size);
+        }
+        return chunks[(int) (position >>> chunkShift)];
+    }
+
+    private int offset(long position) {
+        return (int) (position & chunkMask);
+    }
+}
@@ -0,0 +1,372 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.Product;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Хранилище товаров поверх отображённого в память раздела товаров бинарного снимка
+ * ({@link BinarySnapshotCodec}).
+ * <p>
+ * При открытии проверяются размеры колонок по длине файла, порядок колонки id и коды словарей —
+ * один последовательный проход по колонкам фиксированной ширины без создания объектов, поэтому
+ * повреждённый раздел даёт {@link IOException} сразу, а не при обращении к товару.
+ * {@link #get(Object)} находит строку бинарным поиском по отсортированной колонке id и декодирует
+ * {@link Product} при каждом обращении, не запоминая его: иначе чтения постепенно собрали бы в куче
+ * копию всего каталога. В наложенной карте хранятся только добавленные и изменённые товары,
+ * удалённые из снимка — в множестве удалений; полный обход (сохранение, индексы) тоже декодирует
+ * строки без кэширования.
+ * </p>
+ * <p>
+ * Позиции в файле — {@code long}, а файл отображается частями ({@link MappedFile}),
+ * поэтому снимок может быть больше 2 ГБ.
+ * </p>
+ * <p>
+ * Чтения потокобезопасны (используются только абсолютные операции буфера);
+ * изменения выполняет {@code ProductRepository} под своей блокировкой записи.
+ * </p>
+ */
+final class MappedProductMap extends AbstractMap<Integer, Product> implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final long NULL_SECONDS = Long.MIN_VALUE;
+
+    private final transient MappedFile buffer;
+    private final transient int rows;
+    private final transient long idsPos;
+    private final transient long pricesPos;
+    private final transient long createdSecondsPos;
+    private final transient long createdNanosPos;
+    private final transient long modifiedSecondsPos;
+    private final transient long modifiedNanosPos;
+    private final transient StringColumn names;
+    private final transient TextColumn categories;
+    private final transient TextColumn brands;
+    private final transient StringColumn descriptions;
+
+    private final transient Map<Integer, Product> overlay = new ConcurrentHashMap<>();
+    private final transient Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+    private final transient AtomicInteger size;
+
+    /**
+     * @param dictionaryEncoded категории и бренды записаны словарными колонками (снимок версии 2)
+     */
+    MappedProductMap(MappedFile buffer, long sectionStart, boolean dictionaryEncoded) throws IOException {
+        this.buffer = buffer;
+        this.rows = buffer.getInt(sectionStart);
+        if (rows < 0) {
+            throw new IOException("Снимок повреждён: недопустимое количество товаров " + rows);
+        }
+        this.idsPos = sectionStart + Integer.BYTES;
+        this.pricesPos = idsPos + (long) rows * Integer.BYTES;
+        this.createdSecondsPos = pricesPos + (long) rows * Double.BYTES;
+        this.createdNanosPos = createdSecondsPos + (long) rows * Long.BYTES;
+        this.modifiedSecondsPos = createdNanosPos + (long) rows * Integer.BYTES;
+        this.modifiedNanosPos = modifiedSecondsPos + (long) rows * Long.BYTES;
+        this.names = new StringColumn(checkBounds(modifiedNanosPos + (long) rows * Integer.BYTES), rows);
+        this.categories = dictionaryEncoded ? new DictionaryColumn(names.end) : new StringColumn(names.end, rows);
+        this.brands = dictionaryEncoded ? new DictionaryColumn(categories.end()) : new StringColumn(categories.end(), rows);
+        this.descriptions = new StringColumn(brands.end(), rows);
+        this.size = new AtomicInteger(rows);
+        for (int row = 0; row < rows; row++) {
+            int id = idAt(row);
+            if (id < 0 || (row > 0 && id <= idAt(row - 1))) {
+                throw new IOException("Снимок повреждён: колонка id не отсортирована");
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что позиция конца колонки не выходит за файл.
+     */
+    private long checkBounds(long end) throws EOFException {
+        if (end > buffer.size()) {
+            throw new EOFException("Неожиданный конец снимка");
+        }
+        return end;
+    }
+
+    /**
+     * Позиция в файле сразу после раздела товаров.
+     */
+    long sectionEnd() {
+        return descriptions.end;
+    }
+
+    @Override
+    public Product get(Object key) {
+        if (!(key instanceof Integer id) || deleted.contains(id)) {
+            return null;
+        }
+        Product product = overlay.get(id);
+        if (product != null) {
+            return product;
+        }
+        int row = rowOf(id);
+        if (row < 0) {
+            return null;
+        }
+        return decode(row);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof Integer id) || deleted.contains(id)) {
+            return false;
+        }
+        return overlay.containsKey(id) || rowOf(id) >= 0;
+    }
+
+    @Override
+    public Product put(Integer id, Product product) {
+        Product previous = get(id);
+        overlay.put(id, product);
+        deleted.remove(id);
+        if (previous == null) {
+            size.incrementAndGet();
+        }
+        return previous;
+    }
+
+    @Override
+    public Product remove(Object key) {
+        Product previous = get(key);
+        if (previous == null) {
+            return null;
+        }
+        Integer id = (Integer) key;
+        overlay.remove(id);
+        if (rowOf(id) >= 0) {
+            deleted.add(id);
+        }
+        size.decrementAndGet();
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        overlay.clear();
+        for (int row = 0; row < rows; row++) {
+            deleted.add(idAt(row));
+        }
+        size.set(0);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Set<Entry<Integer, Product>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Integer, Product>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size.get();
+            }
+        };
+    }
+
+    /**
+     * Вместо отображения в память сериализуется обычная карта (например, при смене хранилища).
+     */
+    @Serial
+    private Object writeReplace() {
+        return new HashMap<>(this);
+    }
+
+    // ==================== ДОСТУП К КОЛОНКАМ ====================
+
+    private int idAt(int row) {
+        return buffer.getInt(idsPos + (long) row * Integer.BYTES);
+    }
+
+    private int rowOf(int id) {
+        int low = 0;
+        int high = rows - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = idAt(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private Product decode(int row) {
+        return new Product(idAt(row),
+                names.get(row),
+                categories.get(row),
+                brands.get(row),
+                buffer.getDouble(pricesPos + (long) row * Double.BYTES),
+                descriptions.get(row),
+                dateTimeAt(createdSecondsPos, createdNanosPos, row),
+                dateTimeAt(modifiedSecondsPos, modifiedNanosPos, row));
+    }
+
+    private LocalDateTime dateTimeAt(long secondsPos, long nanosPos, int row) {
+        long seconds = buffer.getLong(secondsPos + (long) row * Long.BYTES);
+        if (seconds == NULL_SECONDS) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(seconds, buffer.getInt(nanosPos + (long) row * Integer.BYTES), ZoneOffset.UTC);
+    }
+
+    private interface TextColumn {
+        String get(int row);
+
+        /**
+         * Позиция сразу после колонки.
+         */
+        long end();
+    }
+
+    /**
+     * Строковая колонка: {@code int[n+1]} смещений, {@code byte[n]} признак null, байты UTF-8.
+     * Смещения отсчитываются от начала байтов колонки, поэтому {@code int} достаточно.
+     */
+    private final class StringColumn implements TextColumn {
+        private final long offsetsPos;
+        private final long nullsPos;
+        private final long blobPos;
+        private final long end;
+
+        private StringColumn(long start, int count) throws IOException {
+            this.offsetsPos = start;
+            this.nullsPos = offsetsPos + (count + 1L) * Integer.BYTES;
+            this.blobPos = checkBounds(nullsPos + count);
+            int length = buffer.getInt(offsetsPos + (long) count * Integer.BYTES);
+            if (length < 0 || buffer.getInt(offsetsPos) != 0) {
+                throw new IOException("Снимок повреждён: недопустимые смещения строковой колонки");
+            }
+            this.end = checkBounds(blobPos + length);
+        }
+
+        @Override
+        public long end() {
+            return end;
+        }
+
+        @Override
+        public String get(int row) {
+            if (buffer.get(nullsPos + row) != 0) {
+                return null;
+            }
+            int from = buffer.getInt(offsetsPos + (long) row * Integer.BYTES);
+            int to = buffer.getInt(offsetsPos + (row + 1L) * Integer.BYTES);
+            byte[] bytes = new byte[to - from];
+            buffer.get(blobPos + from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Словарная колонка: {@code int d}, строковая колонка значений, {@code int[n]} кодов.
+     * Значения словаря (их немного) декодируются сразу, поэтому все товары одной категории
+     * получают один экземпляр строки.
+     */
+    private final class DictionaryColumn implements TextColumn {
+        private final String[] values;
+        private final long codesPos;
+
+        private DictionaryColumn(long start) throws IOException {
+            int size = buffer.getInt(start);
+            if (size < 0 || size > buffer.size() - start) {
+                throw new IOException("Снимок повреждён: недопустимый размер словаря " + size);
+            }
+            StringColumn dictionary = new StringColumn(start + Integer.BYTES, size);
+            this.values = new String[size];
+            for (int code = 0; code < size; code++) {
+                values[code] = dictionary.get(code);
+            }
+            this.codesPos = dictionary.end();
+            checkBounds(end());
+            for (int row = 0; row < rows; row++) {
+                int code = buffer.getInt(codesPos + (long) row * Integer.BYTES);
+                if (code < -1 || code >= size) {
+                    throw new IOException("Снимок повреждён: код словаря " + code + " вне словаря из " + size);
+                }
+            }
+        }
+
+        @Override
+        public long end() {
+            return codesPos + (long) rows * Integer.BYTES;
+        }
+
+        @Override
+        public String get(int row) {
+            int code = buffer.getInt(codesPos + (long) row * Integer.BYTES);
+            return code < 0 ? null : values[code];
+        }
+    }
+
+    /**
+     * Сначала строки снимка (с учётом изменений и удалений), затем товары, добавленные после загрузки.
+     */
+    private final class EntryIterator implements Iterator<Entry<Integer, Product>> {
+        private int row;
+        private Iterator<Entry<Integer, Product>> added;
+        private Entry<Integer, Product> next;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<Integer, Product> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<Integer, Product> result = next;
+            next = null;
+            return result;
+        }
+
+        private Entry<Integer, Product> advance() {
+            while (row < rows) {
+                int id = idAt(row);
+                int current = row++;
+                if (deleted.contains(id)) {
+                    continue;
+                }
+                Product product = overlay.get(id);
+                return new SimpleImmutableEntry<>(id, product != null ? product : decode(current));
+            }
+            if (added == null) {
+                added = overlay.entrySet().iterator();
+            }
+            while (added.hasNext()) {
+                Entry<Integer, Product> entry = added.next();
+                if (rowOf(entry.getKey()) < 0) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.metrics.MetricsRegistry;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.enums.Action;
+import main.java.ru.ylab.service.AuditService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Декоратор {@link AuditService}, замеряющий каждый вызов в {@link MetricsRegistry}
+ * под именем {@code audit.<метод>}.
+ */
+public class MeteredAuditServiceImpl implements AuditService {
+    private final AuditService delegate;
+    private final MetricsRegistry metrics;
+
+    public MeteredAuditServiceImpl(AuditService delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void log(String username, Action action, String details) {
+        metrics.measure("audit.log", () -> delegate.log(username, action, details));
+    }
+
+    @Override
+    public List<AuditRecord> getAllRecords() {
+        return metrics.measure("audit.getAllRecords", delegate::getAllRecords);
+    }
+
+    @Override
+    public List<AuditRecord> getRecordsByUser(String username) {
+        return metrics.measure("audit.getRecordsByUser", () -> delegate.getRecordsByUser(username));
+    }
+
+    @Override
+    public List<AuditRecord> getRecordsByAction(String action) {
+        return metrics.measure("audit.getRecordsByAction", () -> delegate.getRecordsByAction(action));
+    }
+
+    @Override
+    public List<AuditRecord> getRecordsAfter(LocalDateTime dateTime) {
+        return metrics.measure("audit.getRecordsAfter", () -> delegate.getRecordsAfter(dateTime));
+    }
+
+    @Override
+    public int getRecordCount() {
+        return metrics.measure("audit.getRecordCount", delegate::getRecordCount);
+    }
+}
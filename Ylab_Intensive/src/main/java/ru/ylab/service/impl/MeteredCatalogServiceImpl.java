@@ -0,0 +1,135 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.metrics.MetricsRegistry;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.ProductPage;
+import main.java.ru.ylab.model.ProductQuery;
+import main.java.ru.ylab.service.CatalogService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Декоратор {@link CatalogService}, замеряющий каждый вызов в {@link MetricsRegistry}
+ * под именем {@code catalog.<метод>}.
+ * <p>
+ * Для {@link #streamProducts()} замеряется только создание ленивого потока.
+ * </p>
+ */
+public class MeteredCatalogServiceImpl implements CatalogService {
+    private final CatalogService delegate;
+    private final MetricsRegistry metrics;
+
+    public MeteredCatalogServiceImpl(CatalogService delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Product addProduct(String username, String name, String category, String brand,
+                              double price, String description) {
+        return metrics.measure("catalog.addProduct",
+                () -> delegate.addProduct(username, name, category, brand, price, description));
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        return metrics.measure("catalog.getAllProducts", delegate::getAllProducts);
+    }
+
+    @Override
+    public Optional<Product> getProductById(int id) {
+        return metrics.measure("catalog.getProductById", () -> delegate.getProductById(id));
+    }
+
+    @Override
+    public boolean updateProduct(String username, int id, String name, String category, String brand,
+                                 double price, String description) {
+        return metrics.measure("catalog.updateProduct",
+                () -> delegate.updateProduct(username, id, name, category, brand, price, description));
+    }
+
+    @Override
+    public boolean deleteProduct(String username, int id) {
+        return metrics.measure("catalog.deleteProduct", () -> delegate.deleteProduct(username, id));
+    }
+
+    @Override
+    public List<Product> searchByName(String username, String keyword) {
+        return metrics.measure("catalog.searchByName", () -> delegate.searchByName(username, keyword));
+    }
+
+    @Override
+    public List<Product> filterByCategory(String category) {
+        return metrics.measure("catalog.filterByCategory", () -> delegate.filterByCategory(category));
+    }
+
+    @Override
+    public List<Product> filterByBrand(String brand) {
+        return metrics.measure("catalog.filterByBrand", () -> delegate.filterByBrand(brand));
+    }
+
+    @Override
+    public List<Product> filterByPriceRange(double minPrice, double maxPrice) {
+        return metrics.measure("catalog.filterByPriceRange", () -> delegate.filterByPriceRange(minPrice, maxPrice));
+    }
+
+    @Override
+    public List<Product> query(ProductQuery query) {
+        return metrics.measure("catalog.query", () -> delegate.query(query));
+    }
+
+    @Override
+    public ProductPage getProductsPage(int cursor, int limit) {
+        return metrics.measure("catalog.getProductsPage", () -> delegate.getProductsPage(cursor, limit));
+    }
+
+    @Override
+    public ProductPage searchByNamePage(String username, String keyword, int cursor, int limit) {
+        return metrics.measure("catalog.searchByNamePage",
+                () -> delegate.searchByNamePage(username, keyword, cursor, limit));
+    }
+
+    @Override
+    public ProductPage filterByCategoryPage(String category, int cursor, int limit) {
+        return metrics.measure("catalog.filterByCategoryPage",
+                () -> delegate.filterByCategoryPage(category, cursor, limit));
+    }
+
+    @Override
+    public ProductPage filterByBrandPage(String brand, int cursor, int limit) {
+        return metrics.measure("catalog.filterByBrandPage", () -> delegate.filterByBrandPage(brand, cursor, limit));
+    }
+
+    @Override
+    public Stream<Product> streamProducts() {
+        return metrics.measure("catalog.streamProducts", delegate::streamProducts);
+    }
+
+    @Override
+    public int getTotalProductCount() {
+        return metrics.measure("catalog.getTotalProductCount", delegate::getTotalProductCount);
+    }
+
+    @Override
+    public List<String> getAllCategories() {
+        return metrics.measure("catalog.getAllCategories", delegate::getAllCategories);
+    }
+
+    @Override
+    public List<String> getAllBrands() {
+        return metrics.measure("catalog.getAllBrands", delegate::getAllBrands);
+    }
+
+    @Override
+    public Map<String, Integer> getCategoryCounts(String brand) {
+        return metrics.measure("catalog.getCategoryCounts", () -> delegate.getCategoryCounts(brand));
+    }
+
+    @Override
+    public Map<String, Integer> getBrandCounts(String category) {
+        return metrics.measure("catalog.getBrandCounts", () -> delegate.getBrandCounts(category));
+    }
+}
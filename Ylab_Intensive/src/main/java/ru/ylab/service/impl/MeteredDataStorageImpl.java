@@ -0,0 +1,39 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.metrics.MetricsRegistry;
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.service.DataStorage;
+
+/**
+ * Декоратор {@link DataStorage}, замеряющий каждый вызов в {@link MetricsRegistry}
+ * под именем {@code storage.<метод>}.
+ */
+public class MeteredDataStorageImpl implements DataStorage {
+    private final DataStorage delegate;
+    private final MetricsRegistry metrics;
+
+    public MeteredDataStorageImpl(DataStorage delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void save(AppData data) {
+        metrics.measure("storage.save", () -> delegate.save(data));
+    }
+
+    @Override
+    public AppData load() {
+        return metrics.measure("storage.load", delegate::load);
+    }
+
+    @Override
+    public boolean dataExists() {
+        return metrics.measure("storage.dataExists", delegate::dataExists);
+    }
+
+    @Override
+    public void deleteAll() {
+        metrics.measure("storage.deleteAll", delegate::deleteAll);
+    }
+}
@@ -0,0 +1,81 @@
+package main.java.ru.ylab.service.impl;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченный кольцевой буфер: много производителей, один потребитель.
+ * <p>
+ * Производитель занимает ячейку одним CAS по счётчику хвоста и публикует элемент в неё;
+ * потребитель читает ячейки по порядку, пока не встретит ещё не опубликованную.
+ * Блокировок нет, ёмкость округляется вверх до степени двойки.
+ * </p>
+ */
+final class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // следующая занимаемая ячейка
+    private final AtomicLong head = new AtomicLong(); // следующая читаемая ячейка (пишет только потребитель)
+
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость буфера должна быть положительной");
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return {@code false}, если буфер заполнен
+     */
+    boolean offer(E element) {
+        while (true) {
+            long t = tail.get();
+            if (t - head.get() > mask) {
+                return false;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) (t & mask), element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Переносит в {@code batch} до {@code limit} опубликованных элементов. Вызывается только потребителем.
+     *
+     * @return количество перенесённых элементов
+     */
+    int drainTo(List<E> batch, int limit) {
+        long h = head.get();
+        int drained = 0;
+        while (drained < limit) {
+            int index = (int) (h & mask);
+            E element = slots.get(index);
+            if (element == null) {
+                break; // ячейка занята, но ещё не опубликована, или буфер пуст
+            }
+            slots.lazySet(index, null);
+            batch.add(element);
+            h++;
+            drained++;
+        }
+        if (drained > 0) {
+            head.lazySet(h);
+        }
+        return drained;
+    }
+
+    /**
+     * Сколько элементов было занято производителями с момента создания.
+     */
+    long claimed() {
+        return tail.get();
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
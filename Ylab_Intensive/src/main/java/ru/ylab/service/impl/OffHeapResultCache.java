@@ -0,0 +1,287 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.Product;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Второй уровень кэша результатов: списки id товаров вне кучи.
+ * <p>
+ * Результат хранится прямым {@link ByteBuffer} по 4 байта на товар вместо списка объектов {@link Product},
+ * поэтому большие результаты не нагружают сборщик мусора. В куче остаются только ключ, время
+ * и {@link CacheDependency} записи. Размер ограничен бюджетом байт вне кучи, вытесняются давно
+ * не использованные записи.
+ * </p>
+ * <p>
+ * Загрузка регистрируется до чтения каталога ({@link #begin(String, CacheDependency)}). Инвалидация помечает
+ * устаревшими только загрузки, которых она касается: того же ключа или с зависимостью от изменённого товара.
+ * Помеченная загрузка не сохранит свой результат ({@link #put(String, List, Load)}), а остальные сохранят,
+ * поэтому постоянный поток изменений одних товаров не мешает заполнять второй уровень результатами по другим.
+ * </p>
+ * <p>
+ * Формат файла ({@link #writeTo}): {@code int MAGIC, long fingerprint, int n}, затем n записей
+ * {@code UTF key, long timestamp, Object dependency, int count, int[count] ids}.
+ * </p>
+ */
+final class OffHeapResultCache {
+    private static final int MAGIC = 0x594C4331; // "YLC1"
+
+    private final Map<String, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Load> loads = new HashSet<>(); // начатые загрузки, результат которых ещё не сохранён
+    private final long maxBytes;
+    private long bytes; // занято вне кучи
+
+    OffHeapResultCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Бюджет второго уровня кэша должен быть положительным");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Запись второго уровня. Буфер id после создания не меняется, поэтому читается без блокировки
+     * (только абсолютными {@link ByteBuffer#getInt(int)}).
+     */
+    record Slot(ByteBuffer ids, long timestamp, CacheDependency dependency) {
+        int count() {
+            return ids.capacity() / Integer.BYTES;
+        }
+
+        int id(int index) {
+            return ids.getInt(index * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Загрузка результата для второго уровня. Поля меняются только под монитором кэша.
+     */
+    static final class Load {
+        private final String key;
+        private final CacheDependency dependency;
+        private boolean stale; // инвалидирована после начала загрузки
+
+        private Load(String key, CacheDependency dependency) {
+            this.key = key;
+            this.dependency = dependency;
+        }
+    }
+
+    /**
+     * Регистрирует загрузку ключа; вызывается до чтения каталога. Каждую начатую загрузку нужно
+     * завершить {@link #put(String, List, Load)} или {@link #cancel(Load)}.
+     */
+    synchronized Load begin(String key, CacheDependency dependency) {
+        Load load = new Load(key, dependency);
+        loads.add(load);
+        return load;
+    }
+
+    /**
+     * Завершает загрузку без сохранения (например, загрузчик бросил исключение).
+     */
+    synchronized void cancel(Load load) {
+        loads.remove(load);
+    }
+
+    synchronized Slot get(String key) {
+        return slots.get(key);
+    }
+
+    void put(String key, List<Product> data, CacheDependency dependency) {
+        store(key, new Slot(encode(data), System.currentTimeMillis(), dependency), null);
+    }
+
+    /**
+     * Сохраняет id товаров результата загрузки {@code load}, если после её начала не было инвалидаций,
+     * которые её касаются. Результат больше всего бюджета не сохраняется, прежнее значение ключа при этом удаляется.
+     */
+    void put(String key, List<Product> data, Load load) {
+        // Кодируем вне монитора: для больших результатов это самая долгая часть
+        store(key, new Slot(encode(data), System.currentTimeMillis(), load.dependency), load);
+    }
+
+    private static ByteBuffer encode(List<Product> data) {
+        ByteBuffer ids = ByteBuffer.allocateDirect(data.size() * Integer.BYTES);
+        for (int i = 0; i < data.size(); i++) {
+            ids.putInt(i * Integer.BYTES, data.get(i).getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @param load загрузка, результат которой сохраняется ({@code null} — сохранить безусловно)
+     */
+    private synchronized void store(String key, Slot slot, Load load) {
+        if (load != null && (!loads.remove(load) || load.stale)) {
+            return;
+        }
+        remove(key);
+        if (slot.ids().capacity() > maxBytes) {
+            return;
+        }
+        slots.put(key, slot);
+        bytes += slot.ids().capacity();
+        Iterator<Slot> eldest = slots.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().ids().capacity();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Удаляет запись, если ключ всё ещё указывает на неё (не заменён новым результатом).
+     */
+    synchronized void remove(String key, Slot slot) {
+        if (slots.remove(key, slot)) {
+            bytes -= slot.ids().capacity();
+        }
+    }
+
+    synchronized void invalidate(String key) {
+        for (Load load : loads) {
+            if (load.key.equals(key)) {
+                load.stale = true;
+            }
+        }
+        remove(key);
+    }
+
+    synchronized void invalidateAffected(Product product) {
+        for (Load load : loads) {
+            if (load.dependency.dependsOn(product)) {
+                load.stale = true;
+            }
+        }
+        Iterator<Slot> iterator = slots.values().iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next();
+            if (slot.dependency().dependsOn(product)) {
+                bytes -= slot.ids().capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        for (Load load : loads) {
+            load.stale = true;
+        }
+        slots.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Сохраняет записи в файл (через временный файл с атомарной заменой).
+     *
+     * @param fingerprint контрольная сумма каталога, к которому относятся результаты
+     */
+    synchronized void writeTo(Path file, long fingerprint) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(slots.size());
+            for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+                Slot slot = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(slot.timestamp());
+                out.writeObject(slot.dependency());
+                out.writeInt(slot.count());
+                for (int i = 0; i < slot.count(); i++) {
+                    out.writeInt(slot.id(i));
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Загружает записи из файла, если он сохранён для того же каталога.
+     * <p>
+     * Совпадение контрольной суммы означает, что каталог не менялся и результаты верны сейчас,
+     * поэтому время записей отсчитывается заново от момента загрузки.
+     * Файл пишется только из записей в пределах бюджета, поэтому запись, не помещающаяся в остаток бюджета
+     * (или с отрицательным числом id), означает повреждённый файл: буфер под неё не выделяется,
+     * а уже прочитанные записи отбрасываются.
+     * </p>
+     *
+     * @return количество загруженных записей ({@code 0}, если каталог изменился)
+     * @throws IOException если файл не читается или повреждён
+     */
+    synchronized int readFrom(Path file, long fingerprint) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Неверный формат файла кэша: " + file);
+            }
+            if (in.readLong() != fingerprint) {
+                return 0;
+            }
+            long now = System.currentTimeMillis();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String key = in.readUTF();
+                in.readLong(); // время записи до перезапуска
+                CacheDependency dependency = (CacheDependency) in.readObject();
+                int count = in.readInt();
+                if (count < 0 || (long) count * Integer.BYTES > maxBytes - bytes) {
+                    throw new IOException("Повреждённый файл кэша: запись " + key + " из " + count
+                            + " id не помещается в бюджет " + maxBytes + " байт");
+                }
+                ByteBuffer ids = ByteBuffer.allocateDirect(count * Integer.BYTES);
+                for (int j = 0; j < count; j++) {
+                    ids.putInt(j * Integer.BYTES, in.readInt());
+                }
+                store(key, new Slot(ids, now, dependency), null);
+            }
+            return slots.size();
+        } catch (ClassNotFoundException | RuntimeException e) {
+            clearLoaded();
+            throw new IOException("Неверный формат файла кэша: " + file, e);
+        } catch (IOException e) {
+            clearLoaded();
+            throw e;
+        }
+    }
+
+    /**
+     * Отбрасывает частично прочитанный файл: записи до повреждённой тоже могут быть неверны.
+     */
+    private void clearLoaded() {
+        slots.clear();
+        bytes = 0;
+    }
+
+    private void remove(String key) {
+        Slot removed = slots.remove(key);
+        if (removed != null) {
+            bytes -= removed.ids().capacity();
+        }
+    }
+}
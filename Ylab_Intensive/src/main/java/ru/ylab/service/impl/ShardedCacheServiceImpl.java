@@ -0,0 +1,367 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.CacheEntry;
+import main.java.ru.ylab.model.CacheRefreshPolicy;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.service.CacheService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Потокобезопасный кэш без глобальной блокировки.
+ * <p>
+ * Ключи распределяются по сегментам ({@link ConcurrentHashMap} на сегмент), чтение не берёт блокировок:
+ * попадание только обновляет время последнего обращения записи. Вытеснение — приближённый LRU:
+ * число записей считается общим счётчиком для всех сегментов, и при переполнении кэша удаляется запись
+ * с самым старым обращением в сегменте, куда добавлялась запись (если в нём нет других записей —
+ * во всём кэше). Поэтому после добавления в кэше не больше {@code maxSize} записей при любом числе сегментов.
+ * Бюджет памяти общий для всех сегментов: пока суммарный вес превышен, удаляется запись
+ * с самым старым обращением среди всех сегментов, поэтому в кэш помещается любая запись
+ * не тяжелее всего бюджета.
+ * Счётчики метрик построены на {@link LongAdder} и не создают конкуренции между потоками.
+ * Одновременные промахи по одному ключу в {@link #get(String, CacheDependency, Supplier)}
+ * выполняют загрузчик один раз, а с {@link CacheRefreshPolicy} записи перезагружаются в фоне.
+ * </p>
+ */
+public class ShardedCacheServiceImpl implements CacheService {
+
+    private static final int DEFAULT_SHARDS = 16;
+
+    private final Shard[] shards;
+    private final long ttlMillis; // время жизни кэша
+    private final int maxSize; // максимальный размер кэша
+    private final long maxWeightBytes; // бюджет памяти кэша
+    private final CacheRefreshPolicy refreshPolicy; // фоновая перезагрузка записей с загрузчиком
+    private final Executor refreshExecutor;
+    private final SingleFlight loads = new SingleFlight(); // загрузки, выполняемые сейчас
+    private final AtomicLong weight = new AtomicLong(); // суммарный вес записей всех сегментов
+    private final AtomicInteger count = new AtomicInteger(); // число записей всех сегментов
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder totalQueryTimeNs = new LongAdder();
+
+    public ShardedCacheServiceImpl(long ttlMillis, int maxSize, long maxWeightBytes, int shardCount,
+                                   CacheRefreshPolicy refreshPolicy, Executor refreshExecutor) {
+        if (shardCount <= 0 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Количество сегментов должно быть степенью двойки");
+        }
+        if (maxWeightBytes <= 0) {
+            throw new IllegalArgumentException("Бюджет памяти кэша должен быть положительным");
+        }
+        if (refreshPolicy.refreshAheadMillis() >= ttlMillis) {
+            throw new IllegalArgumentException("Упреждающее обновление должно начинаться раньше окончания TTL");
+        }
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.maxWeightBytes = maxWeightBytes;
+        this.refreshPolicy = refreshPolicy;
+        this.refreshExecutor = Objects.requireNonNull(refreshExecutor);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    public ShardedCacheServiceImpl(long ttlMillis, int maxSize, long maxWeightBytes, int shardCount,
+                                   CacheRefreshPolicy refreshPolicy) {
+        this(ttlMillis, maxSize, maxWeightBytes, shardCount, refreshPolicy, ForkJoinPool.commonPool());
+    }
+
+    public ShardedCacheServiceImpl(long ttlMillis, int maxSize, int shardCount) {
+        this(ttlMillis, maxSize, UNLIMITED_WEIGHT, shardCount, CacheRefreshPolicy.DISABLED);
+    }
+
+    public ShardedCacheServiceImpl() {
+        this(1000 * 60 * 5, 100, DEFAULT_SHARDS); // 5 минут, 100 записей
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    @Override
+    public long getMaxWeightBytes() {
+        return maxWeightBytes;
+    }
+
+    @Override
+    public List<Product> get(String key) {
+        CacheEntry entry = lookup(key, false);
+        return entry != null ? entry.data() : null;
+    }
+
+    @Override
+    public List<Product> get(String key, CacheDependency dependency, Supplier<List<Product>> loader) {
+        Objects.requireNonNull(dependency);
+        Objects.requireNonNull(loader);
+        CacheEntry entry = lookup(key, true);
+        if (entry == null) {
+            return loads.load(key, dependency, loader, data -> put(key, data, dependency));
+        }
+        if (refreshPolicy.needsRefresh(System.currentTimeMillis() - entry.timestamp(), ttlMillis)
+                && loads.refresh(key, dependency, loader, data -> put(key, data, dependency), refreshExecutor)) {
+            refreshes.increment();
+        }
+        return entry.data();
+    }
+
+    /**
+     * Ищет запись и учитывает обращение в метриках.
+     * Устаревшая запись удаляется, только когда истекло и окно stale-while-revalidate.
+     *
+     * @param allowStale можно ли отдать устаревшую запись (есть загрузчик для её перезагрузки)
+     */
+    private CacheEntry lookup(String key, boolean allowStale) {
+        long start = System.nanoTime();
+        Shard shard = shardFor(key);
+        Node node = shard.map.get(key);
+
+        // Проверка срока действия
+        if (node != null) {
+            long age = System.currentTimeMillis() - node.entry.timestamp();
+            if (refreshPolicy.isExpired(age, ttlMillis)) {
+                if (!refreshPolicy.isServable(age, ttlMillis)) {
+                    shard.remove(key, node);
+                    node = null;
+                } else if (!allowStale) {
+                    node = null;
+                } else {
+                    staleHits.increment();
+                }
+            }
+        }
+
+        if (node == null) {
+            misses.increment();
+            totalQueryTimeNs.add(System.nanoTime() - start);
+            return null;
+        }
+
+        node.lastAccessNs = start;
+        hits.increment();
+        totalQueryTimeNs.add(System.nanoTime() - start);
+        return node.entry;
+    }
+
+    @Override
+    public void put(String key, List<Product> data, CacheDependency dependency) {
+        Shard shard = shardFor(key);
+        Node node = new Node(new CacheEntry(data, System.currentTimeMillis(), dependency));
+        shard.store(key, node);
+        evictOversize(shard, node);
+        evictOverweight();
+    }
+
+    /**
+     * Удаляет самые давно использованные записи, пока записей больше {@code maxSize}.
+     * Сначала вытесняются записи сегмента, куда добавлена запись: сегменты небольшие, поэтому проход
+     * по одному сегменту дешевле поддержки общего списка доступа. Только что добавленная запись
+     * не вытесняется, пока есть другие; если в сегменте других нет, просматривается весь кэш.
+     */
+    private void evictOversize(Shard shard, Node added) {
+        while (count.get() > maxSize) {
+            Map.Entry<String, Node> eldest = shard.eldest(added);
+            Shard eldestShard = shard;
+            if (eldest == null) {
+                for (Shard other : shards) {
+                    Map.Entry<String, Node> candidate = other.eldest(null);
+                    if (candidate != null && (eldest == null
+                            || candidate.getValue().lastAccessNs < eldest.getValue().lastAccessNs)) {
+                        eldest = candidate;
+                        eldestShard = other;
+                    }
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            eldestShard.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Удаляет самые давно использованные записи всего кэша, пока превышен бюджет памяти.
+     * Проход по всем сегментам нужен только при превышении бюджета, то есть после добавления тяжёлой записи.
+     */
+    private void evictOverweight() {
+        while (weight.get() > maxWeightBytes) {
+            Shard eldestShard = null;
+            Map.Entry<String, Node> eldest = null;
+            for (Shard shard : shards) {
+                for (Map.Entry<String, Node> candidate : shard.map.entrySet()) {
+                    if (eldest == null || candidate.getValue().lastAccessNs < eldest.getValue().lastAccessNs) {
+                        eldest = candidate;
+                        eldestShard = shard;
+                    }
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            eldestShard.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    @Override
+    public void invalidateAffected(Product product) {
+        // Загрузки помечаются устаревшими до удаления записей, иначе они могут сохранить старый результат
+        loads.invalidateAffected(product);
+        for (Shard shard : shards) {
+            for (Map.Entry<String, Node> entry : shard.map.entrySet()) {
+                if (entry.getValue().entry.dependency().dependsOn(product)) {
+                    shard.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        loads.invalidate(key);
+        Shard shard = shardFor(key);
+        Node node = shard.map.get(key);
+        if (node != null) {
+            shard.remove(key, node);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        loads.invalidateAll();
+        for (Shard shard : shards) {
+            for (Map.Entry<String, Node> entry : shard.map.entrySet()) {
+                shard.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.map.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long getWeightBytes() {
+        return weight.get();
+    }
+
+    @Override
+    public int getHits() {
+        return hits.intValue();
+    }
+
+    @Override
+    public int getMisses() {
+        return misses.intValue();
+    }
+
+    @Override
+    public int getStaleHits() {
+        return staleHits.intValue();
+    }
+
+    @Override
+    public int getRefreshes() {
+        return refreshes.intValue();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.sum();
+        long m = misses.sum();
+        return (h + m) == 0 ? 0 : (double) h / (h + m);
+    }
+
+    @Override
+    public double getAverageQueryTimeMs() {
+        long requests = hits.sum() + misses.sum();
+        return requests == 0 ? 0 : totalQueryTimeNs.sum() / 1_000_000.0 / requests;
+    }
+
+    private Shard shardFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[h & (shards.length - 1)];
+    }
+
+    private static final class Node {
+        private final CacheEntry entry;
+        private volatile long lastAccessNs;
+
+        private Node(CacheEntry entry) {
+            this.entry = entry;
+            this.lastAccessNs = System.nanoTime();
+        }
+    }
+
+    /**
+     * Сегмент кэша. Записи добавляются и удаляются только через {@link #store} и {@link #remove},
+     * чтобы общие число и вес записей кэша совпадали с суммой по сегментам.
+     */
+    private final class Shard {
+        private final Map<String, Node> map = new ConcurrentHashMap<>();
+
+        /**
+         * Сохраняет запись. Запись тяжелее всего бюджета не сохраняется,
+         * но прежнее значение ключа всё равно удаляется.
+         */
+        private void store(String key, Node node) {
+            Node previous;
+            if (node.entry.weight() > maxWeightBytes) {
+                previous = map.remove(key);
+            } else {
+                previous = map.put(key, node);
+                weight.addAndGet(node.entry.weight());
+                count.incrementAndGet();
+            }
+            if (previous != null) {
+                weight.addAndGet(-previous.entry.weight());
+                count.decrementAndGet();
+            }
+        }
+
+        private void remove(String key, Node node) {
+            if (map.remove(key, node)) {
+                weight.addAndGet(-node.entry.weight());
+                count.decrementAndGet();
+            }
+        }
+
+        /**
+         * Запись сегмента с самым старым обращением, кроме {@code except}.
+         */
+        private Map.Entry<String, Node> eldest(Node except) {
+            Map.Entry<String, Node> eldest = null;
+            for (Map.Entry<String, Node> candidate : map.entrySet()) {
+                if (candidate.getValue() != except
+                        && (eldest == null || candidate.getValue().lastAccessNs < eldest.getValue().lastAccessNs)) {
+                    eldest = candidate;
+                }
+            }
+            return eldest;
+        }
+    }
+}
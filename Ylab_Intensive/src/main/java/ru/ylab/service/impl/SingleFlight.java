@@ -0,0 +1,145 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.Product;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных загрузок одного ключа (single-flight) для реализаций кэша.
+ * <p>
+ * Первый промахнувшийся поток вычисляет результат, остальные ждут его и получают тот же список.
+ * Если во время вычисления запись инвалидирована, результат отдаётся ожидающим,
+ * но в кэш не сохраняется: он мог быть прочитан до изменения каталога.
+ * Фоновые перезагрузки ({@link #refresh}) используют те же записи, поэтому не дублируют
+ * синхронные загрузки того же ключа.
+ * </p>
+ * <p>
+ * Кэш должен вызывать методы инвалидации <em>до</em> удаления своих записей:
+ * тогда сохранение либо произойдёт раньше и будет удалено, либо будет отменено.
+ * </p>
+ */
+final class SingleFlight {
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Загружает значение ключа, объединяя одновременные вызовы.
+     *
+     * @param store сохраняет результат в кэш, если загрузка не была инвалидирована
+     */
+    List<Product> load(String key, CacheDependency dependency, Supplier<List<Product>> loader,
+                       Consumer<List<Product>> store) {
+        Flight flight = new Flight(dependency);
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+        return run(key, flight, loader, store);
+    }
+
+    /**
+     * Запускает фоновую перезагрузку ключа, если он уже не загружается.
+     * Ошибка фоновой загрузки не пробрасывается: запись остаётся прежней до следующей попытки.
+     *
+     * @return {@code true}, если перезагрузка запущена этим вызовом
+     */
+    boolean refresh(String key, CacheDependency dependency, Supplier<List<Product>> loader,
+                    Consumer<List<Product>> store, Executor executor) {
+        Flight flight = new Flight(dependency);
+        if (flights.putIfAbsent(key, flight) != null) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    run(key, flight, loader, store);
+                } catch (RuntimeException e) {
+                    // Ожидающие получили исключение через flight, устаревшая запись продолжает обслуживать запросы
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            flights.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    private List<Product> run(String key, Flight flight, Supplier<List<Product>> loader,
+                              Consumer<List<Product>> store) {
+        try {
+            List<Product> result = List.copyOf(loader.get());
+            synchronized (flight) {
+                if (!flight.stale) {
+                    store.accept(result);
+                }
+            }
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    void invalidate(String key) {
+        Flight flight = flights.get(key);
+        if (flight != null) {
+            flight.markStale();
+        }
+    }
+
+    void invalidateAffected(Product product) {
+        for (Flight flight : flights.values()) {
+            if (flight.dependency.dependsOn(product)) {
+                flight.markStale();
+            }
+        }
+    }
+
+    void invalidateAll() {
+        for (Flight flight : flights.values()) {
+            flight.markStale();
+        }
+    }
+
+    private static List<Product> await(Flight flight) {
+        try {
+            return flight.result.join();
+        } catch (CompletionException e) {
+            // Пробрасываем исключение загрузчика в исходном виде
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<List<Product>> result = new CompletableFuture<>();
+        private final CacheDependency dependency;
+        private boolean stale; // защищено монитором Flight
+
+        private Flight(CacheDependency dependency) {
+            this.dependency = dependency;
+        }
+
+        private synchronized void markStale() {
+            stale = true;
+        }
+    }
+}
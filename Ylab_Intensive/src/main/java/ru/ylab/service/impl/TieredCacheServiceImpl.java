@@ -0,0 +1,261 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.CacheRefreshPolicy;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.repository.ProductRepository;
+import main.java.ru.ylab.service.CacheService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Двухуровневый кэш: L1 — переданный кэш в куче ({@link CacheServiceImpl} или {@link ShardedCacheServiceImpl}),
+ * L2 — списки id товаров вне кучи ({@link OffHeapResultCache}).
+ * <p>
+ * Результаты записываются в оба уровня. Когда запись вытеснена из L1 или ещё не загружена после перезапуска,
+ * загрузочный {@link #get(String, CacheDependency, Supplier)} восстанавливает её из L2 по id через
+ * {@link ProductRepository} и возвращает в L1 (TTL в L1 при этом отсчитывается заново).
+ * Запись L2 используется, пока по {@link CacheRefreshPolicy} её не пора перезагружать, поэтому фоновая
+ * перезагрузка L1 всегда вычисляет результат заново. Если товара из записи уже нет, запись удаляется.
+ * </p>
+ * <p>
+ * Инвалидация применяется сначала к L2, затем к L1: загрузка из L2 выполняется внутри загрузки L1,
+ * которую L1 отменит, если инвалидация пришлась на её время.
+ * </p>
+ * <p>
+ * Если задан файл, L2 сохраняется в него при {@link #close()} и читается при создании кэша — после
+ * перезапуска кэш сразу «тёплый». Файл применяется, только если контрольная сумма каталога
+ * ({@link ProductRepository#fingerprint()}) не изменилась.
+ * </p>
+ */
+public class TieredCacheServiceImpl implements CacheService, AutoCloseable {
+    private final CacheService l1;
+    private final OffHeapResultCache l2;
+    private final ProductRepository repository;
+    private final CacheRefreshPolicy refreshPolicy; // та же политика, что у L1
+    private final Path file; // null — без сохранения на диск
+
+    private final LongAdder l2Hits = new LongAdder();
+
+    public TieredCacheServiceImpl(CacheService l1, ProductRepository repository, long l2MaxBytes,
+                                  CacheRefreshPolicy refreshPolicy, Path file) {
+        this.l1 = Objects.requireNonNull(l1);
+        this.l2 = new OffHeapResultCache(l2MaxBytes);
+        this.repository = Objects.requireNonNull(repository);
+        this.refreshPolicy = Objects.requireNonNull(refreshPolicy);
+        this.file = file;
+        if (file != null && Files.exists(file)) {
+            load();
+        }
+    }
+
+    public TieredCacheServiceImpl(CacheService l1, ProductRepository repository, long l2MaxBytes,
+                                  CacheRefreshPolicy refreshPolicy) {
+        this(l1, repository, l2MaxBytes, refreshPolicy, null);
+    }
+
+    @Override
+    public int getMaxSize() {
+        return l1.getMaxSize();
+    }
+
+    @Override
+    public long getTtlMillis() {
+        return l1.getTtlMillis();
+    }
+
+    @Override
+    public long getMaxWeightBytes() {
+        return l1.getMaxWeightBytes();
+    }
+
+    /**
+     * Промах L1 проверяется в L2, но найденная запись в L1 не переносится:
+     * без загрузчика перенос нельзя согласовать с инвалидацией.
+     */
+    @Override
+    public List<Product> get(String key) {
+        List<Product> cached = l1.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        OffHeapResultCache.Slot slot = l2.get(key);
+        if (slot == null || refreshPolicy.isExpired(System.currentTimeMillis() - slot.timestamp(), getTtlMillis())) {
+            return null;
+        }
+        return resolve(key, slot);
+    }
+
+    @Override
+    public List<Product> get(String key, CacheDependency dependency, Supplier<List<Product>> loader) {
+        Objects.requireNonNull(loader);
+        return l1.get(key, dependency, () -> {
+            List<Product> promoted = fromL2(key);
+            if (promoted != null) {
+                return promoted;
+            }
+            OffHeapResultCache.Load load = l2.begin(key, dependency);
+            List<Product> loaded;
+            try {
+                loaded = List.copyOf(loader.get());
+            } catch (RuntimeException e) {
+                l2.cancel(load);
+                throw e;
+            }
+            l2.put(key, loaded, load);
+            return loaded;
+        });
+    }
+
+    @Override
+    public void put(String key, List<Product> data, CacheDependency dependency) {
+        l1.put(key, data, dependency);
+        l2.put(key, data, dependency);
+    }
+
+    @Override
+    public void invalidateAffected(Product product) {
+        l2.invalidateAffected(product);
+        l1.invalidateAffected(product);
+    }
+
+    @Override
+    public void invalidate(String key) {
+        l2.invalidate(key);
+        l1.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        l2.invalidateAll();
+        l1.invalidateAll();
+    }
+
+    @Override
+    public int size() {
+        return l1.size();
+    }
+
+    @Override
+    public long getWeightBytes() {
+        return l1.getWeightBytes();
+    }
+
+    /**
+     * Попадания в L1 и в L2.
+     */
+    @Override
+    public int getHits() {
+        return l1.getHits() + l2Hits.intValue();
+    }
+
+    /**
+     * Промахи L1, которые не нашлись и в L2.
+     */
+    @Override
+    public int getMisses() {
+        return Math.max(0, l1.getMisses() - l2Hits.intValue());
+    }
+
+    @Override
+    public int getStaleHits() {
+        return l1.getStaleHits();
+    }
+
+    @Override
+    public int getRefreshes() {
+        return l1.getRefreshes();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = getHits();
+        long m = getMisses();
+        return (h + m) == 0 ? 0 : (double) h / (h + m);
+    }
+
+    @Override
+    public double getAverageQueryTimeMs() {
+        return l1.getAverageQueryTimeMs();
+    }
+
+    public int getL2Size() {
+        return l2.size();
+    }
+
+    public long getL2Bytes() {
+        return l2.getBytes();
+    }
+
+    public long getL2MaxBytes() {
+        return l2.getMaxBytes();
+    }
+
+    public int getL2Hits() {
+        return l2Hits.intValue();
+    }
+
+    /**
+     * Сохраняет L2 в файл, если он задан.
+     */
+    @Override
+    public void close() {
+        if (file == null) {
+            return;
+        }
+        try {
+            l2.writeTo(file, repository.fingerprint());
+            System.out.println("Кэш результатов сохранён: " + l2.size() + " записей");
+        } catch (IOException e) {
+            System.err.println("Ошибка сохранения кэша: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        try {
+            int loaded = l2.readFrom(file, repository.fingerprint());
+            System.out.println(loaded > 0
+                    ? "Кэш результатов загружен: " + loaded + " записей"
+                    : "Каталог изменился, сохранённый кэш результатов не используется");
+        } catch (IOException e) {
+            System.err.println("Ошибка загрузки кэша: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Запись L2 для переноса в L1: только такая, которую ещё рано перезагружать.
+     */
+    private List<Product> fromL2(String key) {
+        OffHeapResultCache.Slot slot = l2.get(key);
+        if (slot == null || refreshPolicy.needsRefresh(System.currentTimeMillis() - slot.timestamp(), getTtlMillis())) {
+            return null;
+        }
+        return resolve(key, slot);
+    }
+
+    /**
+     * Восстанавливает товары по id записи; если какого-то товара уже нет, удаляет запись.
+     */
+    private List<Product> resolve(String key, OffHeapResultCache.Slot slot) {
+        int count = slot.count();
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Optional<Product> product = repository.findById(slot.id(i));
+            if (product.isEmpty()) {
+                l2.remove(key, slot);
+                return null;
+            }
+            products.add(product.get());
+        }
+        l2Hits.increment();
+        return List.copyOf(products);
+    }
+}
@@ -10,8 +10,10 @@ import java.util.Map;
 public class UserServiceImpl implements UserService {
 
     private final Map<String, User> users;
+    private final AppData appData;
 
     public UserServiceImpl(AppData appData) {
+        this.appData = appData;
         this.users = appData.getUsers();
     }
 
@@ -22,12 +24,11 @@ public class UserServiceImpl implements UserService {
         if (password == null || password.length() < 4) {
             throw new IllegalArgumentException("Пароль должен содержать минимум 4 символа");
         }
-        if (users.containsKey(username)) {
+        User user = new User(username, hashPassword(password));
+        if (users.putIfAbsent(username, user) != null) {
             throw new IllegalArgumentException("Пользователь с таким логином уже существует");
         }
-
-        User user = new User(username, hashPassword(password));
-        users.put(username, user);
+        appData.fireUserSaved(user);
     }
 
     public boolean authenticate(String username, String password) {
@@ -1,17 +1,27 @@
 package main.java.ru.ylab.ui;
 
 
+import main.java.ru.ylab.metrics.MetricsRegistry;
+import main.java.ru.ylab.metrics.OperationSnapshot;
 import main.java.ru.ylab.model.AuditRecord;
 import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.ProductPage;
+import main.java.ru.ylab.model.ProductQuery;
 import main.java.ru.ylab.model.enums.Action;
 import main.java.ru.ylab.service.AuditService;
 import main.java.ru.ylab.service.CacheService;
 import main.java.ru.ylab.service.CatalogService;
 import main.java.ru.ylab.service.UserService;
+import main.java.ru.ylab.service.impl.TieredCacheServiceImpl;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.function.IntFunction;
 
 
 /**
@@ -26,21 +36,30 @@ import java.util.Scanner;
  * - Вывод данных: printProductTable(), printProductDetails(), printMetrics()
  */
 public class ConsoleMenu {
+    private static final int PAGE_SIZE = 20;
 
     private final CatalogService catalogService;
     private final UserService userService;
     private final AuditService auditService;
     private final Scanner scanner;
     private final CacheService cacheService;
+    private final MetricsRegistry metrics; // null, если метрики вызовов отключены
     private String currentUser = null;
 
     public ConsoleMenu(CatalogService catalogService, UserService userService,
-                       AuditService auditService, Scanner scanner, CacheService cacheService) {
+                       AuditService auditService, Scanner scanner, CacheService cacheService,
+                       MetricsRegistry metrics) {
         this.catalogService = catalogService;
         this.userService = userService;
         this.auditService = auditService;
         this.scanner = scanner;
         this.cacheService = cacheService;
+        this.metrics = metrics;
+    }
+
+    public ConsoleMenu(CatalogService catalogService, UserService userService,
+                       AuditService auditService, Scanner scanner, CacheService cacheService) {
+        this(catalogService, userService, auditService, scanner, cacheService, null);
     }
 
     /**
@@ -136,6 +155,7 @@ public class ConsoleMenu {
         System.out.println("1. По категории");
         System.out.println("2. По бренду");
         System.out.println("3. По цене");
+        System.out.println("4. По нескольким условиям");
         System.out.println("0. Назад");
 
         int choice = readInt("Выбор: ");
@@ -144,6 +164,7 @@ public class ConsoleMenu {
             case 1 -> filterProductsByCategory();
             case 2 -> filterProductsByBrand();
             case 3 -> filterProductsByPrice();
+            case 4 -> filterProductsByQuery();
             case 0 -> { /* вернёмся в главное меню */ }
             default -> System.out.println("Неверный выбор!");
         }
@@ -158,6 +179,39 @@ public class ConsoleMenu {
         System.out.println("Категорий: " + catalogService.getAllCategories().size());
         System.out.println("Брендов: " + catalogService.getAllBrands().size());
         printCacheMetrics();
+        if (metrics == null) {
+            return;
+        }
+        printOperationMetrics();
+
+        System.out.println("1. Сохранить метрики в JSON");
+        System.out.println("2. Сбросить метрики");
+        System.out.println("0. Назад");
+        int choice = readInt("Выбор: ");
+
+        switch (choice) {
+            case 1 -> saveMetrics();
+            case 2 -> {
+                metrics.reset();
+                System.out.println("Метрики сброшены.");
+            }
+            case 0 -> { /* вернёмся в главное меню */ }
+            default -> System.out.println("Неверный выбор!");
+        }
+    }
+
+    /**
+     * Сохранение снимка метрик в JSON-файл.
+     */
+    private void saveMetrics() {
+        String file = readString("Файл (Enter — metrics.json): ");
+        Path path = Path.of(file.isEmpty() ? "metrics.json" : file);
+        try {
+            metrics.writeJson(path);
+            System.out.println("Метрики сохранены в " + path.toAbsolutePath());
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Ошибка сохранения метрик: " + e.getMessage());
+        }
     }
 
     // ==================== ОПЕРАЦИИ С АВТОРИЗАЦИЕЙ ====================
@@ -205,13 +259,15 @@ public class ConsoleMenu {
      * Просмотр всех товаров.
      */
     private void displayAllProducts() {
-        List<Product> products = catalogService.getAllProducts();
-        if (products.isEmpty()) {
+        int total = catalogService.getTotalProductCount();
+        if (total == 0) {
             System.out.println("Товаров не найдено.");
             return;
         }
-        printProductTable(products);
-        auditService.log(currentUser, Action.SEARCH, "Просмотр всех товаров. Результат: " + products.size() + " товаров");
+        System.out.println("\nВсего товаров: " + total);
+        printProductPages(catalogService.getProductsPage(ProductPage.FIRST_PAGE, PAGE_SIZE),
+                cursor -> catalogService.getProductsPage(cursor, PAGE_SIZE));
+        auditService.log(currentUser, Action.SEARCH, "Просмотр всех товаров. Результат: " + total + " товаров");
     }
 
     /**
@@ -228,8 +284,7 @@ public class ConsoleMenu {
         String description = scanner.nextLine().trim();
 
         try {
-            catalogService.setCurrentUser(currentUser);
-            Product product = catalogService.addProduct(name, category, brand, price, description);
+            Product product = catalogService.addProduct(currentUser, name, category, brand, price, description);
             System.out.println("Товар добавлен! ID: " + product.getId());
         } catch (IllegalArgumentException e) {
             System.out.println("Ошибка: " + e.getMessage());
@@ -283,8 +338,7 @@ public class ConsoleMenu {
 
         // Если хоть что-то заполнено — обновляем
         if (!name.isEmpty() || !category.isEmpty() || !brand.isEmpty() || price >= 0 || !description.isEmpty()) {
-            catalogService.setCurrentUser(currentUser);
-            boolean updated = catalogService.updateProduct(id, name, category, brand, price, description);
+            boolean updated = catalogService.updateProduct(currentUser, id, name, category, brand, price, description);
             if (updated) {
                 System.out.println("Товар обновлен!");
             } else {
@@ -307,8 +361,7 @@ public class ConsoleMenu {
 
         printProductDetails(product.get());
         if (confirmAction()) {
-            catalogService.setCurrentUser(currentUser);
-            if (catalogService.deleteProduct(id)) {
+            if (catalogService.deleteProduct(currentUser, id)) {
                 System.out.println("Товар удален!");
             } else {
                 System.out.println("Ошибка удаления!");
@@ -323,39 +376,40 @@ public class ConsoleMenu {
      */
     private void searchAndDisplayProducts() {
         String keyword = readString("Ключевое слово для поиска: ");
-        catalogService.setCurrentUser(currentUser);
-        List<Product> results = catalogService.searchByName(keyword);
+        ProductPage first = catalogService.searchByNamePage(currentUser, keyword, ProductPage.FIRST_PAGE, PAGE_SIZE);
 
-        if (results.isEmpty()) {
+        int shown = 0;
+        if (first.items().isEmpty()) {
             System.out.println("Результатов не найдено.");
         } else {
-            System.out.println("\nНайдено " + results.size() + " товаров:");
-            printProductTable(results);
+            System.out.println("\nРезультаты поиска:");
+            shown = printProductPages(first,
+                    cursor -> catalogService.searchByNamePage(currentUser, keyword, cursor, PAGE_SIZE));
         }
-        auditService.log(currentUser, Action.SEARCH, "Поиск по ключевому слову: " + keyword + ". Результат: " + results.size());
+        auditService.log(currentUser, Action.SEARCH, "Поиск по ключевому слову: " + keyword + ". Показано: " + shown);
     }
 
     /**
      * Фильтр по категории.
      */
     private void filterProductsByCategory() {
-        List<String> categories = catalogService.getAllCategories();
+        Map<String, Integer> counts = catalogService.getCategoryCounts(null);
+        List<String> categories = List.copyOf(counts.keySet());
         System.out.println("\nДоступные категории:");
         for (int i = 0; i < categories.size(); i++) {
-            System.out.println((i + 1) + ". " + categories.get(i));
+            System.out.println((i + 1) + ". " + categories.get(i) + " (" + counts.get(categories.get(i)) + ")");
         }
 
         int idx = readInt("Выберите категорию: ") - 1;
         if (idx >= 0 && idx < categories.size()) {
             String category = categories.get(idx);
-            catalogService.setCurrentUser(currentUser);
-            List<Product> filtered = catalogService.filterByCategory(category);
+            ProductPage first = catalogService.filterByCategoryPage(category, ProductPage.FIRST_PAGE, PAGE_SIZE);
 
-            if (filtered.isEmpty()) {
+            if (first.items().isEmpty()) {
                 System.out.println("Товаров в категории " + category + " не найдено.");
             } else {
                 System.out.println("\nТовары в категории '" + category + "':");
-                printProductTable(filtered);
+                printProductPages(first, cursor -> catalogService.filterByCategoryPage(category, cursor, PAGE_SIZE));
             }
         } else {
             System.out.println("Неверный выбор!");
@@ -366,23 +420,23 @@ public class ConsoleMenu {
      * Фильтр по бренду.
      */
     private void filterProductsByBrand() {
-        List<String> brands = catalogService.getAllBrands();
+        Map<String, Integer> counts = catalogService.getBrandCounts(null);
+        List<String> brands = List.copyOf(counts.keySet());
         System.out.println("\nДоступные бренды:");
         for (int i = 0; i < brands.size(); i++) {
-            System.out.println((i + 1) + ". " + brands.get(i));
+            System.out.println((i + 1) + ". " + brands.get(i) + " (" + counts.get(brands.get(i)) + ")");
         }
 
         int idx = readInt("Выберите бренд: ") - 1;
         if (idx >= 0 && idx < brands.size()) {
             String brand = brands.get(idx);
-            catalogService.setCurrentUser(currentUser);
-            List<Product> filtered = catalogService.filterByBrand(brand);
+            ProductPage first = catalogService.filterByBrandPage(brand, ProductPage.FIRST_PAGE, PAGE_SIZE);
 
-            if (filtered.isEmpty()) {
+            if (first.items().isEmpty()) {
                 System.out.println("Товаров бренда " + brand + " не найдено.");
             } else {
                 System.out.println("\nТовары бренда '" + brand + "':");
-                printProductTable(filtered);
+                printProductPages(first, cursor -> catalogService.filterByBrandPage(brand, cursor, PAGE_SIZE));
             }
         } else {
             System.out.println("Неверный выбор!");
@@ -396,7 +450,6 @@ public class ConsoleMenu {
         double min = readDouble("Минимальная цена: ");
         double max = readDouble("Максимальная цена: ");
 
-        catalogService.setCurrentUser(currentUser);
         List<Product> filtered = catalogService.filterByPriceRange(min, max);
 
         if (filtered.isEmpty()) {
@@ -407,6 +460,40 @@ public class ConsoleMenu {
         }
     }
 
+    /**
+     * Комбинированный фильтр: любые условия можно пропустить клавишей Enter.
+     */
+    private void filterProductsByQuery() {
+        System.out.println("\nУкажите условия (или Enter для пропуска):");
+        ProductQuery query = ProductQuery.all()
+                .withCategory(readString("Категория: "))
+                .withBrand(readString("Бренд: "))
+                .withNameContaining(readString("Ключевое слово в названии: "));
+
+        String min = readString("Минимальная цена: ");
+        String max = readString("Максимальная цена: ");
+        try {
+            if (!min.isEmpty() || !max.isEmpty()) {
+                query = query.withPriceRange(min.isEmpty() ? 0 : Double.parseDouble(min),
+                        max.isEmpty() ? Double.MAX_VALUE : Double.parseDouble(max));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Неверная цена!");
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+            return;
+        }
+
+        List<Product> filtered = catalogService.query(query);
+        if (filtered.isEmpty()) {
+            System.out.println("Товаров по заданным условиям не найдено.");
+        } else {
+            System.out.println("\nНайдено " + filtered.size() + " товаров:");
+            printProductTable(filtered);
+        }
+    }
+
     /**
      * Вывод истории аудита.
      */
@@ -435,6 +522,28 @@ public class ConsoleMenu {
 
     // ==================== ВЫВОД ДАННЫХ ====================
 
+    /**
+     * Постраничная печать: следующая страница загружается по курсору, только если пользователь её запросил.
+     *
+     * @return сколько товаров было показано
+     */
+    private int printProductPages(ProductPage first, IntFunction<ProductPage> nextPage) {
+        ProductPage page = first;
+        int shown = 0;
+        while (true) {
+            printProductTable(page.items());
+            shown += page.items().size();
+            if (!page.hasNext()) {
+                return shown;
+            }
+            System.out.print("Enter — следующая страница, q — выход: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return shown;
+            }
+            page = nextPage.apply(page.nextCursor());
+        }
+    }
+
     /**
      * Печать таблицы товаров.
      */
@@ -476,12 +585,55 @@ public class ConsoleMenu {
     private void printCacheMetrics() {
         System.out.println("\n========== МЕТРИКИ КЭША ==========");
         System.out.println("Размер кэша: " + cacheService.size() + "/" + cacheService.getMaxSize());
+        if (cacheService.getMaxWeightBytes() == CacheService.UNLIMITED_WEIGHT) {
+            System.out.printf("Память кэша (оценка): %.1f КБ%n", cacheService.getWeightBytes() / 1024.0);
+        } else {
+            System.out.printf("Память кэша (оценка): %.1f/%.1f КБ%n",
+                    cacheService.getWeightBytes() / 1024.0, cacheService.getMaxWeightBytes() / 1024.0);
+        }
+        if (cacheService instanceof TieredCacheServiceImpl tiered) {
+            System.out.printf("Второй уровень (вне кучи): %d записей, %.1f/%.1f КБ, попаданий: %d%n",
+                    tiered.getL2Size(), tiered.getL2Bytes() / 1024.0, tiered.getL2MaxBytes() / 1024.0,
+                    tiered.getL2Hits());
+        }
         System.out.println("Попадания: " + cacheService.getHits());
         System.out.println("Промахи: " + cacheService.getMisses());
+        System.out.println("Попадания в устаревшие записи: " + cacheService.getStaleHits());
+        System.out.println("Фоновые перезагрузки: " + cacheService.getRefreshes());
         System.out.printf("Hit Ratio: %.2f%%%n\n", cacheService.getHitRatio() * 100);
         System.out.printf("Среднее время запроса: %.3f ms\n%n", cacheService.getAverageQueryTimeMs());
     }
 
+    /**
+     * Задержки операций (p50/p99/p999/max в микросекундах), пропускная способность
+     * и выделение памяти (в среднем на вызов и в секунду).
+     */
+    private void printOperationMetrics() {
+        List<OperationSnapshot> snapshots = metrics.snapshot();
+        System.out.printf("%n========== МЕТРИКИ ОПЕРАЦИЙ (за %.0f с) ==========%n", metrics.getUptimeSeconds());
+        if (snapshots.isEmpty()) {
+            System.out.println("Вызовов ещё не было.\n");
+            return;
+        }
+        System.out.printf("%-30s %8s %9s %9s %9s %9s %10s %10s %9s %6s%n", "Операция", "Вызовы", "Опер/с",
+                "p50 мкс", "p99 мкс", "p999 мкс", "max мкс", "Байт/опер", "КБ/с", "Ошибки");
+        for (OperationSnapshot s : snapshots) {
+            boolean allocationKnown = s.allocatedBytesPerOp() >= 0;
+            System.out.printf("%-30s %8d %9.1f %9.1f %9.1f %9.1f %10.1f %10s %9s %6d%n",
+                    truncate(s.name(), 30),
+                    s.count(),
+                    s.throughputPerSecond(),
+                    s.p50Nanos() / 1_000.0,
+                    s.p99Nanos() / 1_000.0,
+                    s.p999Nanos() / 1_000.0,
+                    s.maxNanos() / 1_000.0,
+                    allocationKnown ? String.valueOf(s.allocatedBytesPerOp()) : "н/д",
+                    allocationKnown ? String.format("%.1f", s.allocationRate() / 1024) : "н/д",
+                    s.errors());
+        }
+        System.out.println();
+    }
+
     // ==================== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ====================
 
     /**
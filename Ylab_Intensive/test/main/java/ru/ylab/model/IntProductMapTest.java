@@ -0,0 +1,120 @@
+package main.java.ru.ylab.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IntProductMapTest {
+
+    @Test
+    void putGetRemove() {
+        IntProductMap map = new IntProductMap();
+        Product first = product(1);
+        assertNull(map.put(1, first));
+        assertSame(first, map.get(1));
+        assertSame(first, map.get(Integer.valueOf(1)));
+
+        Product replacement = product(1);
+        assertSame(first, map.put(1, replacement));
+        assertEquals(1, map.size());
+
+        assertSame(replacement, map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertNull(map.get(-5));
+        assertEquals(0, map.size());
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, product(1)));
+    }
+
+    @Test
+    void farIdDoesNotAllocateDenseArray() {
+        IntProductMap map = new IntProductMap();
+        map.put(1, product(1));
+        // Без ограничения плотности это выделило бы массив на 2^31 ссылок
+        Product far = product(Integer.MAX_VALUE - 1);
+        map.put(Integer.MAX_VALUE - 1, far);
+
+        assertSame(far, map.get(Integer.MAX_VALUE - 1));
+        assertEquals(2, map.size());
+        assertEquals(List.of(1, Integer.MAX_VALUE - 1), keys(map));
+
+        assertSame(far, map.remove(Integer.MAX_VALUE - 1));
+        assertEquals(1, map.size());
+        assertEquals(List.of(1), keys(map));
+    }
+
+    @Test
+    void sparseProductsMoveIntoArrayAsCatalogGrows() {
+        IntProductMap map = new IntProductMap();
+        map.put(5000, product(5000));
+        for (int id = 1; id <= 4000; id++) {
+            map.put(id, product(id));
+        }
+
+        assertEquals(4001, map.size());
+        assertEquals(5000, map.get(5000).getId());
+        List<Integer> keys = keys(map);
+        assertEquals(4001, keys.size());
+        assertEquals(4000, keys.get(3999));
+        assertEquals(5000, keys.get(4000));
+    }
+
+    @Test
+    void iteratorRemovesFromArrayAndSparseParts() {
+        IntProductMap map = new IntProductMap();
+        for (int id = 1; id <= 5; id++) {
+            map.put(id, product(id));
+        }
+        map.put(1_000_000, product(1_000_000));
+
+        for (Iterator<Map.Entry<Integer, Product>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            int id = it.next().getKey();
+            if (id % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(List.of(1, 3, 5), keys(map));
+    }
+
+    @Test
+    void serializationKeepsSparseProducts() throws Exception {
+        IntProductMap map = new IntProductMap();
+        map.put(2, product(2));
+        map.put(900_000, product(900_000));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(map);
+        }
+        IntProductMap restored;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = (IntProductMap) in.readObject();
+        }
+        assertEquals(List.of(2, 900_000), keys(restored));
+        assertEquals("Товар 900000", restored.get(900_000).getName());
+    }
+
+    private static Product product(int id) {
+        return new Product(id, "Товар " + id, "Books", "Acme", 1.0, null);
+    }
+
+    private static List<Integer> keys(IntProductMap map) {
+        List<Integer> keys = new ArrayList<>();
+        for (Map.Entry<Integer, Product> entry : map.entrySet()) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+}
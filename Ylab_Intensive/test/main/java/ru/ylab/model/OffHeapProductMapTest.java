@@ -0,0 +1,98 @@
+package main.java.ru.ylab.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapProductMapTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 1, 2, 3, 4, 5, 600_000_000);
+
+    @Test
+    void putGetRemoveRoundTrip() {
+        OffHeapProductMap map = new OffHeapProductMap();
+        Product laptop = new Product(1, "Ноутбук", "Electronics", "Lenovo", 999.5, "14 дюймов", CREATED, null);
+        Product mug = new Product(2, "Кружка", null, null, 5.0, null, null, CREATED);
+
+        assertNull(map.put(1, laptop));
+        assertNull(map.put(2, mug));
+        assertEquals(2, map.size());
+        assertProduct(laptop, map.get(1));
+        assertProduct(mug, map.get(2));
+
+        Product cheaper = new Product(1, "Ноутбук", "Electronics", "Lenovo", 899.0, "скидка", CREATED, CREATED);
+        assertProduct(laptop, map.put(1, cheaper));
+        assertEquals(2, map.size());
+        assertProduct(cheaper, map.get(1));
+
+        assertProduct(mug, map.remove(2));
+        assertNull(map.get(2));
+        assertNull(map.remove(2));
+        assertFalse(map.containsKey(2));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void growsPastInitialRowsAndIteratesById() {
+        OffHeapProductMap map = new OffHeapProductMap();
+        int[] ids = {5000, 3, 70_000, 1024};
+        for (int id : ids) {
+            map.put(id, new Product(id, "Товар " + id, "Books", "Acme", id, null, CREATED, CREATED));
+        }
+
+        List<Integer> iterated = new ArrayList<>();
+        for (Map.Entry<Integer, Product> entry : map.entrySet()) {
+            iterated.add(entry.getKey());
+            assertEquals("Товар " + entry.getKey(), entry.getValue().getName());
+        }
+        assertEquals(List.of(3, 1024, 5000, 70_000), iterated);
+        assertArrayEquals(new int[]{1024, 5000}, map.findIdsByPriceRange(1000, 5000));
+    }
+
+    @Test
+    void idsOutsideColumnBoundsAreRejected() {
+        OffHeapProductMap map = new OffHeapProductMap();
+        Product product = new Product(1, "Товар", "Books", "Acme", 1.0, null);
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, product));
+        assertThrows(IllegalArgumentException.class, () -> map.put(OffHeapProductMap.MAX_ROWS, product));
+        assertThrows(IllegalArgumentException.class, () -> map.put(Integer.MAX_VALUE, product));
+        assertNull(map.get(Integer.MAX_VALUE));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void decodedProductsShareAppDataStrings() {
+        AppData data = new AppData();
+        String category = data.getCategories().intern("Electronics");
+        String brand = data.getBrands().intern("Lenovo");
+        data.moveProductsTo(new OffHeapProductMap(data.getCategories(), data.getBrands()));
+
+        data.getProducts().put(1, new Product(1, "Ноутбук", new String("Electronics"), new String("Lenovo"), 1.0, null));
+        Product decoded = data.getProducts().get(1);
+        assertSame(category, decoded.getCategory());
+        assertSame(brand, decoded.getBrand());
+        assertEquals(1, data.getCategories().size());
+    }
+
+    private static void assertProduct(Product expected, Product actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getBrand(), actual.getBrand());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getCreatedDate(), actual.getCreatedDate());
+        assertEquals(expected.getModifiedDate(), actual.getModifiedDate());
+    }
+}
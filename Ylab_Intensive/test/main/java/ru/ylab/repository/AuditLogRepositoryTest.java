@@ -0,0 +1,114 @@
+package main.java.ru.ylab.repository;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.AuditRetentionPolicy;
+import main.java.ru.ylab.model.enums.Action;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogRepositoryTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 10, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void lateRecordsAreKeptInTimeOrder() {
+        AuditLogRepository repository = new AuditLogRepository(new AppData());
+        repository.add(record(0, "alice", Action.LOGIN));
+        repository.add(record(120, "bob", Action.SEARCH));
+        repository.add(record(60, "alice", Action.SEARCH)); // запоздала
+        repository.add(record(90 * 60, "alice", Action.LOGOUT)); // следующий сегмент
+        repository.add(record(30, "bob", Action.LOGIN)); // запоздала в первый сегмент
+
+        assertEquals(List.of(0L, 30L, 60L, 120L, 5400L), seconds(repository.findAll()));
+        assertEquals(List.of(0L, 60L, 5400L), seconds(repository.findByUser("alice")));
+        assertEquals(List.of(60L, 120L), seconds(repository.findByAction(Action.SEARCH)));
+        assertEquals(List.of(60L, 120L, 5400L), seconds(repository.findAfter(START.plusSeconds(30))));
+    }
+
+    @Test
+    void oldSegmentsMoveToArchiveAndFindAfterReadsThem() throws Exception {
+        AppData data = new AppData();
+        AuditLogRepository repository = new AuditLogRepository(data,
+                new AuditRetentionPolicy(null, 4), new AuditArchive(dir));
+        // Три часа по три записи: переполнение переносит старые часы в архив
+        for (int hour = 0; hour < 3; hour++) {
+            for (int i = 0; i < 3; i++) {
+                repository.add(record(hour * 3600 + i * 60, "user", Action.SEARCH));
+            }
+        }
+
+        assertEquals(3, repository.count());
+        assertEquals(3, data.getAuditRecords().size(), "архивные записи не попадают в сохраняемый снимок");
+        assertEquals(2, archiveFiles());
+
+        List<Long> after = seconds(repository.findAfter(START.plusSeconds(60)));
+        assertEquals(List.of(120L, 3600L, 3660L, 3720L, 7200L, 7260L, 7320L), after);
+        assertEquals(9, repository.findAfter(START.minusSeconds(1)).size());
+        assertEquals(List.of(7320L), seconds(repository.findAfter(START.plusSeconds(7260))));
+    }
+
+    @Test
+    void maxRecordsAlsoLimitsCurrentSegment() throws Exception {
+        AppData data = new AppData();
+        AuditLogRepository repository = new AuditLogRepository(data,
+                new AuditRetentionPolicy(null, 5), new AuditArchive(dir));
+        for (int i = 0; i < 23; i++) {
+            repository.add(record(i, "user", Action.SEARCH)); // все в одном часовом сегменте
+            assertTrue(repository.count() <= 5, "в памяти больше maxRecords: " + repository.count());
+        }
+
+        // Каждое переполнение переносит в архив весь текущий сегмент — по 6 записей
+        assertEquals(5, repository.count());
+        assertEquals(23, repository.findAfter(START.minusSeconds(1)).size());
+        assertEquals(3, archiveFiles());
+    }
+
+    @Test
+    void existingRecordsAreArchivedOnStartup() throws Exception {
+        AppData data = new AppData();
+        for (int i = 0; i < 10; i++) {
+            data.getAuditRecords().add(record(i * 3600, "user", Action.LOGIN));
+        }
+        AuditLogRepository repository = new AuditLogRepository(data,
+                new AuditRetentionPolicy(null, 2), new AuditArchive(dir));
+
+        assertEquals(2, repository.count());
+        assertEquals(2, data.getAuditRecords().size());
+        assertEquals(10, repository.findAfter(START.minusSeconds(1)).size());
+
+        // Новый экземпляр над тем же каталогом видит ранее заархивированные записи
+        AuditLogRepository reopened = new AuditLogRepository(data,
+                new AuditRetentionPolicy(null, 2), new AuditArchive(dir));
+        assertEquals(10, reopened.findAfter(START.minusSeconds(1)).size());
+    }
+
+    private static AuditRecord record(long seconds, String username, Action action) {
+        return new AuditRecord(START.plusSeconds(seconds), username, action, "t" + seconds);
+    }
+
+    private static List<Long> seconds(List<AuditRecord> records) {
+        return records.stream()
+                .map(record -> Duration.between(START, record.getTimestamp()).getSeconds())
+                .toList();
+    }
+
+    private long archiveFiles() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".gz")).count();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package main.java.ru.ylab.repository;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.OffHeapProductMap;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.ProductPage;
+import main.java.ru.ylab.model.ProductQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductRepositoryTest {
+
+    @Test
+    void pagesCoverCatalogOnceWhenSizeIsMultipleOfLimit() {
+        ProductRepository repository = repository(6);
+
+        ProductPage first = repository.findPage(ProductPage.FIRST_PAGE, 3);
+        assertEquals(List.of(1, 2, 3), ids(first));
+        assertTrue(first.hasNext());
+
+        // Последняя полная страница: следующей нет, хотя товаров ровно limit
+        ProductPage second = repository.findPage(first.nextCursor(), 3);
+        assertEquals(List.of(4, 5, 6), ids(second));
+        assertFalse(second.hasNext());
+        assertThrows(NoSuchElementException.class, second::nextCursor);
+    }
+
+    @Test
+    void changesBetweenPagesNeitherShiftNorDuplicate() {
+        ProductRepository repository = repository(5);
+        ProductPage first = repository.findPage(ProductPage.FIRST_PAGE, 2);
+        assertEquals(List.of(1, 2), ids(first));
+
+        repository.delete(1); // до курсора
+        repository.delete(3); // после курсора
+        repository.add(product("Новый", "Books", "Acme"));
+
+        List<Integer> rest = new ArrayList<>();
+        ProductPage page = first;
+        while (page.hasNext()) {
+            page = repository.findPage(page.nextCursor(), 2);
+            rest.addAll(ids(page));
+        }
+        assertEquals(List.of(4, 5, 6), rest);
+    }
+
+    @Test
+    void filteredPagesFollowIndexOrder() {
+        ProductRepository repository = repository(10); // чётные — Books, нечётные — Games
+
+        List<Integer> books = new ArrayList<>();
+        ProductPage page = repository.findByCategoryPage("Books", ProductPage.FIRST_PAGE, 2);
+        books.addAll(ids(page));
+        while (page.hasNext()) {
+            page = repository.findByCategoryPage("Books", page.nextCursor(), 2);
+            books.addAll(ids(page));
+        }
+        assertEquals(List.of(2, 4, 6, 8, 10), books);
+
+        assertEquals(ProductPage.EMPTY, repository.findByBrandPage("Нет такого", ProductPage.FIRST_PAGE, 5));
+    }
+
+    @Test
+    void searchPagesSkipNonMatchingTrigramCandidates() {
+        ProductRepository repository = new ProductRepository(new AppData());
+        repository.add(product("Ноутбук Pro 14", "Electronics", "Lenovo"));
+        repository.add(product("Proектор", "Electronics", "Epson")); // триграмма pro есть, слова pro 1 нет
+        repository.add(product("Телефон Pro 15", "Electronics", "Apple"));
+        repository.add(product("Pro 16", "Electronics", "Apple"));
+
+        ProductPage first = repository.searchByNamePage("pro 1", ProductPage.FIRST_PAGE, 2);
+        assertEquals(List.of(1, 3), ids(first));
+        assertTrue(first.hasNext());
+        ProductPage second = repository.searchByNamePage("pro 1", first.nextCursor(), 2);
+        assertEquals(List.of(4), ids(second));
+        assertFalse(second.hasNext());
+
+        assertEquals(ProductPage.EMPTY, repository.searchByNamePage("xyz", ProductPage.FIRST_PAGE, 2));
+    }
+
+    @Test
+    void emptyPageCannotHaveNext() {
+        assertThrows(IllegalArgumentException.class, () -> new ProductPage(List.of(), true));
+        assertThrows(IllegalArgumentException.class, () -> repository(1).findPage(ProductPage.FIRST_PAGE, 0));
+    }
+
+    @Test
+    void queryMatchesFullScanForEveryPlan() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ProductRepository repository = catalog(offHeap);
+            List<Product> all = repository.findAll();
+            List<ProductQuery> queries = List.of(
+                    ProductQuery.all(),
+                    // источник — пересечение категории и бренда
+                    ProductQuery.all().withCategory("Books").withBrand("Brand1"),
+                    // триграммы «редк» короче атрибутов: источник — триграмма, категория — фильтр
+                    ProductQuery.all().withCategory("Books").withNameContaining("Редкий"),
+                    // атрибуты короче триграмм «товар»: источник — бренд, триграммы — фильтры
+                    ProductQuery.all().withBrand("Brand2").withNameContaining("товар"),
+                    // цена проверяется только на кандидатах из индексов
+                    ProductQuery.all().withCategory("Games").withPriceRange(10, 20),
+                    // других индексных условий нет: источник — диапазон цен
+                    ProductQuery.all().withPriceRange(15, 25),
+                    new ProductQuery(null, null, 35.0, null, null),
+                    // подстрока короче триграммы проверяется на каждом кандидате
+                    ProductQuery.all().withCategory("Games").withNameContaining("1"),
+                    ProductQuery.all().withNameContaining("ий т"));
+            for (ProductQuery query : queries) {
+                List<Integer> expected = all.stream().filter(query::matches).map(Product::getId).sorted().toList();
+                List<Integer> actual = repository.query(query).stream().map(Product::getId).sorted().toList();
+                assertEquals(expected, actual, (offHeap ? "offheap: " : "heap: ") + query);
+                assertFalse(expected.isEmpty(), "запрос должен что-то находить: " + query);
+            }
+        }
+    }
+
+    @Test
+    void queryStopsOnEmptyIndexCondition() {
+        ProductRepository repository = catalog(false);
+
+        assertTrue(repository.query(ProductQuery.all().withCategory("Нет такой")).isEmpty());
+        assertTrue(repository.query(ProductQuery.all().withCategory("Books").withBrand("Нет такого")).isEmpty());
+        assertTrue(repository.query(ProductQuery.all().withBrand("Brand1").withNameContaining("xyz")).isEmpty());
+        assertTrue(repository.query(ProductQuery.all().withPriceRange(30, 10)).isEmpty());
+        // все триграммы есть в индексе, но подстроки целиком нет ни в одном названии
+        assertTrue(repository.query(ProductQuery.all().withNameContaining("товар редкий")).isEmpty());
+    }
+
+    /**
+     * 60 товаров: категории чередуются, бренды по кругу из трёх, цены 10–39;
+     * каждый десятый называется «Редкий товар».
+     */
+    private static ProductRepository catalog(boolean offHeap) {
+        AppData data = new AppData();
+        if (offHeap) {
+            data.moveProductsTo(new OffHeapProductMap(data.getCategories(), data.getBrands()));
+        }
+        ProductRepository repository = new ProductRepository(data);
+        for (int i = 1; i <= 60; i++) {
+            String name = (i % 10 == 0 ? "Редкий товар " : "Товар ") + i;
+            repository.add(new Product(0, name, i % 2 == 0 ? "Books" : "Games", "Brand" + (i % 3),
+                    10 + i % 30, null));
+        }
+        return repository;
+    }
+
+    static ProductRepository repository(int count) {
+        ProductRepository repository = new ProductRepository(new AppData());
+        for (int i = 1; i <= count; i++) {
+            repository.add(product("Товар " + i, i % 2 == 0 ? "Books" : "Games", "Brand" + (i % 3)));
+        }
+        return repository;
+    }
+
+    static Product product(String name, String category, String brand) {
+        return new Product(0, name, category, brand, 10.0, null);
+    }
+
+    static List<Integer> ids(ProductPage page) {
+        return page.items().stream().map(Product::getId).toList();
+    }
+}
@@ -0,0 +1,114 @@
+package main.java.ru.ylab.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoaringBitmapTest {
+
+    @Test
+    void arrayBecomesBitmapAbove4096AndBackAt2048() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 4096; i++) {
+            bitmap.add(i * 2);
+        }
+        assertEquals("ArrayContainer", containerType(bitmap, 0));
+
+        bitmap.add(1);
+        assertEquals("BitmapContainer", containerType(bitmap, 0));
+        assertEquals(4097, bitmap.cardinality());
+        assertTrue(bitmap.contains(1));
+        assertTrue(bitmap.contains(8190));
+        assertFalse(bitmap.contains(3));
+
+        // Ниже 4096, но выше 2048 — карта остаётся картой
+        bitmap.remove(1);
+        for (int i = 4095; i > 2048; i--) {
+            bitmap.remove(i * 2);
+        }
+        assertEquals(2049, bitmap.cardinality());
+        assertEquals("BitmapContainer", containerType(bitmap, 0));
+
+        bitmap.remove(4096);
+        assertEquals("ArrayContainer", containerType(bitmap, 0));
+        assertArrayEquals(IntStream.range(0, 2048).map(i -> i * 2).toArray(), bitmap.toArray());
+    }
+
+    @Test
+    void iteratorAfterCrossesContainerBoundaries() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        int[] values = {0, 65535, 65536, 65537, 131072, 5 * 65536 + 5};
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        // Второй контейнер — битовая карта, остальные — массивы
+        for (int low = 10; low < 5000; low++) {
+            bitmap.add(65536 + low);
+        }
+        assertEquals("BitmapContainer", containerType(bitmap, 1));
+
+        assertArrayEquals(new int[]{65536, 65537, 65546}, first(bitmap.iteratorAfter(65535), 3));
+        assertArrayEquals(new int[]{131072, 5 * 65536 + 5}, first(bitmap.iteratorAfter(65536 + 4999), 2));
+        // after внутри отсутствующего контейнера: обход начинается со следующего существующего
+        assertArrayEquals(new int[]{5 * 65536 + 5}, first(bitmap.iteratorAfter(3 * 65536 + 100), 1));
+        assertArrayEquals(new int[]{0, 65535}, first(bitmap.iteratorAfter(-1), 2));
+        assertFalse(bitmap.iteratorAfter(5 * 65536 + 5).hasNext());
+        assertFalse(bitmap.iteratorAfter(Integer.MAX_VALUE).hasNext());
+    }
+
+    @Test
+    void andCardinalityMatchesIntersectionForEveryContainerPair() {
+        RoaringBitmap sparseEven = new RoaringBitmap();
+        RoaringBitmap sparseThirds = new RoaringBitmap();
+        RoaringBitmap dense = new RoaringBitmap();
+        RoaringBitmap denseOdd = new RoaringBitmap();
+        for (int i = 0; i < 3000; i++) {
+            sparseEven.add(i * 2);
+            sparseThirds.add(i * 3);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            dense.add(i);
+            denseOdd.add(i * 2 + 1);
+        }
+        assertEquals("ArrayContainer", containerType(sparseEven, 0));
+        assertEquals("BitmapContainer", containerType(dense, 0));
+
+        RoaringBitmap[] bitmaps = {sparseEven, sparseThirds, dense, denseOdd};
+        for (RoaringBitmap left : bitmaps) {
+            for (RoaringBitmap right : bitmaps) {
+                int expected = left.and(right).cardinality();
+                assertEquals(expected, left.andCardinality(right));
+                assertEquals(expected, right.andCardinality(left));
+            }
+        }
+        assertEquals(1000, sparseEven.andCardinality(sparseThirds));
+        assertEquals(3000, sparseEven.andCardinality(dense));
+        assertEquals(0, sparseEven.andCardinality(denseOdd));
+    }
+
+    private static int[] first(PrimitiveIterator.OfInt it, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            assertTrue(it.hasNext());
+            result[i] = it.nextInt();
+        }
+        return result;
+    }
+
+    private static String containerType(RoaringBitmap bitmap, int index) {
+        try {
+            Field field = RoaringBitmap.class.getDeclaredField("containers");
+            field.setAccessible(true);
+            return ((Object[]) field.get(bitmap))[index].getClass().getSimpleName();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
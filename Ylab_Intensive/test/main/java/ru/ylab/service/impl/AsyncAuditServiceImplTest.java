@@ -0,0 +1,97 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.enums.Action;
+import main.java.ru.ylab.repository.AuditLogRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncAuditServiceImplTest {
+
+    @Test
+    void blockedProducersStoreEveryRecord() throws InterruptedException {
+        AuditLogRepository repository = new AuditLogRepository(new AppData());
+        int threads = 4;
+        int perThread = 5000;
+        try (AsyncAuditServiceImpl audit = new AsyncAuditServiceImpl(repository, 8,
+                AsyncAuditServiceImpl.Backpressure.BLOCK)) {
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String user = "user" + t;
+                producers.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        audit.log(user, Action.SEARCH, Integer.toString(i));
+                    }
+                }));
+            }
+            producers.forEach(Thread::start);
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            assertEquals(threads * perThread, audit.getRecordCount());
+            assertEquals(0, audit.getDroppedCount());
+            // Записи одного потока сохраняются в порядке вызовов
+            List<AuditRecord> own = audit.getRecordsByUser("user0");
+            for (int i = 0; i < perThread; i++) {
+                assertEquals(Integer.toString(i), own.get(i).getDetails());
+            }
+        }
+    }
+
+    @Test
+    void failedBatchIsCountedAsDropped() {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        AuditLogRepository repository = new AuditLogRepository(new AppData()) {
+            @Override
+            public void addAll(List<AuditRecord> records) {
+                if (fail.get()) {
+                    throw new IllegalStateException("диск недоступен");
+                }
+                super.addAll(records);
+            }
+        };
+        try (AsyncAuditServiceImpl audit = new AsyncAuditServiceImpl(repository)) {
+            audit.log("admin", Action.LOGIN, "первая");
+            audit.log("admin", Action.SEARCH, "вторая");
+            assertEquals(0, audit.getRecordCount(), "запросы не зависают на несохранённой пачке");
+            assertEquals(2, audit.getDroppedCount());
+
+            fail.set(false);
+            audit.log("admin", Action.LOGOUT, "третья");
+            assertEquals(1, audit.getRecordCount());
+            assertEquals(2, audit.getDroppedCount());
+        }
+    }
+
+    @Test
+    void dropPolicyCountsRejectedRecords() {
+        Object gate = new Object();
+        AuditLogRepository repository = new AuditLogRepository(new AppData()) {
+            @Override
+            public void addAll(List<AuditRecord> records) {
+                synchronized (gate) { // потребитель стоит, пока тест держит монитор
+                    super.addAll(records);
+                }
+            }
+        };
+        try (AsyncAuditServiceImpl audit = new AsyncAuditServiceImpl(repository, 4,
+                AsyncAuditServiceImpl.Backpressure.DROP)) {
+            int logged = 100;
+            synchronized (gate) {
+                for (int i = 0; i < logged; i++) {
+                    audit.log("admin", Action.SEARCH, Integer.toString(i));
+                }
+            }
+            assertEquals(logged, audit.getRecordCount() + audit.getDroppedCount());
+            assertTrue(audit.getDroppedCount() > 0);
+        }
+    }
+}
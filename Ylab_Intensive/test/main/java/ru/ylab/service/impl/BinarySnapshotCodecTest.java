@@ -0,0 +1,334 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.User;
+import main.java.ru.ylab.model.enums.Action;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinarySnapshotCodecTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_000_000);
+    private static final LocalDateTime MODIFIED = LocalDateTime.of(2024, 3, 2, 8, 0);
+
+    static final List<Product> PRODUCTS = List.of(
+            new Product(3, "Ноутбук", "Electronics", "Lenovo", 999.5, "14 дюймов", CREATED, MODIFIED),
+            new Product(7, "Кружка", "Home", null, 4.25, null, CREATED, null),
+            new Product(12, "Телефон", "Electronics", "Apple", 1299.0, "", CREATED, MODIFIED));
+    static final List<User> USERS = List.of(new User("admin", "hash-a"), new User("user", "hash-u"));
+    static final List<AuditRecord> AUDIT = List.of(
+            new AuditRecord(CREATED, "admin", Action.values()[0], "вход"),
+            new AuditRecord(MODIFIED, "user", Action.values()[Action.values().length - 1], null));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrip() throws IOException {
+        Path file = writeSample(dir.resolve("snapshot.bin"));
+
+        assertSnapshot(BinarySnapshotCodec.read(file));
+        assertSnapshot(BinarySnapshotCodec.map(file));
+    }
+
+    @Test
+    void mappedReadsKeepOnlyChangedProductsInHeap() throws IOException {
+        Map<Integer, Product> products = BinarySnapshotCodec.map(writeSample(dir.resolve("snapshot.bin"))).getProducts();
+        for (int i = 0; i < 3; i++) {
+            PRODUCTS.forEach(p -> assertEquals(p.getName(), products.get(p.getId()).getName()));
+        }
+        assertEquals(0, overlaySize(products), "прочитанные товары не запоминаются");
+
+        Product renamed = new Product(7, "Чашка", "Home", null, 4.25, null, CREATED, MODIFIED);
+        products.put(7, renamed);
+        products.put(20, new Product(20, "Новый", "Home", null, 1.0, null, CREATED, null));
+        products.remove(3);
+        assertEquals(2, overlaySize(products));
+        assertSame(renamed, products.get(7));
+        assertNull(products.get(3));
+        assertEquals(3, products.size());
+    }
+
+    @Test
+    void plainStringVersionIsReadable() throws IOException {
+        Path file = dir.resolve("snapshot_v1.bin");
+        writeLegacy(file, BinarySnapshotCodec.VERSION_PLAIN_STRINGS);
+
+        AppData read = BinarySnapshotCodec.read(file);
+        assertSnapshot(read);
+        // Снимок без словаря всё равно даёт общие строки категорий
+        assertSame(read.getProducts().get(3).getCategory(), read.getProducts().get(12).getCategory());
+        assertSnapshot(BinarySnapshotCodec.map(file));
+    }
+
+    @Test
+    void dictionaryVersionWithoutChecksumIsReadable() throws IOException {
+        Path file = dir.resolve("snapshot_v2.bin");
+        writeLegacy(file, BinarySnapshotCodec.VERSION_DICTIONARY);
+
+        AppData read = BinarySnapshotCodec.read(file);
+        assertSnapshot(read);
+        assertSame(read.getProducts().get(3).getCategory(), read.getProducts().get(12).getCategory());
+        assertSnapshot(BinarySnapshotCodec.map(file));
+    }
+
+    @Test
+    void truncatedSnapshotFails() throws IOException {
+        Path file = writeSample(dir.resolve("snapshot.bin"));
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length : new int[]{0, 8, 40, bytes.length / 2, bytes.length - 1}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> BinarySnapshotCodec.read(file), "длина " + length);
+            assertThrows(IOException.class, () -> BinarySnapshotCodec.map(file), "длина " + length);
+        }
+    }
+
+    @Test
+    void changedByteFailsChecksum() throws IOException {
+        Path file = writeSample(dir.resolve("snapshot.bin"));
+        byte[] bytes = Files.readAllBytes(file);
+        int nameAt = indexOf(bytes, "Ноутбук".getBytes(StandardCharsets.UTF_8), false);
+        bytes[nameAt] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> BinarySnapshotCodec.read(file));
+        assertThrows(IOException.class, () -> BinarySnapshotCodec.map(file));
+    }
+
+    /**
+     * Значения повреждаются вместе с пересчётом контрольной суммы: проверки границ срабатывают и без неё.
+     */
+    @Test
+    void invalidValuesFailWithIOException() throws IOException {
+        Path file = writeSample(dir.resolve("snapshot.bin"));
+        byte[] original = Files.readAllBytes(file);
+
+        // количество товаров
+        assertCorrupt(file, original, BinarySnapshotCodec.HEADER_SIZE, ByteBuffer.allocate(4).putInt(-5).array());
+        assertCorrupt(file, original, BinarySnapshotCodec.HEADER_SIZE,
+                ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array());
+
+        // код словаря категорий: после значений словаря "ElectronicsHome" идут коды товаров
+        int codesAt = indexOf(original, "ElectronicsHome".getBytes(StandardCharsets.UTF_8), false) + 15;
+        assertCorrupt(file, original, codesAt, ByteBuffer.allocate(4).putInt(7).array());
+
+        // действие аудита: перед колонкой имён пользователей аудита (2 смещения + конец, 2 признака null)
+        int auditUsersAt = indexOf(original, "adminuser".getBytes(StandardCharsets.UTF_8), true) - 3 * 4 - 2;
+        assertCorrupt(file, original, auditUsersAt - 1, new byte[]{99});
+        assertCorrupt(file, original, auditUsersAt - 1, new byte[]{-1});
+    }
+
+    @Test
+    void storageFallsBackToBackupOnCorruptSnapshot() throws IOException {
+        Path dataFile = dir.resolve("data.bin");
+        Path backupFile = dir.resolve("backup.bin");
+        BinaryDataStorageImpl storage = new BinaryDataStorageImpl(dataFile.toString(), backupFile.toString());
+        AppData data = sample();
+        storage.save(data);
+        storage.save(data); // предыдущий снимок становится резервной копией
+
+        byte[] bytes = Files.readAllBytes(dataFile);
+        Files.write(dataFile, Arrays.copyOf(bytes, bytes.length / 3));
+
+        assertSnapshot(storage.load());
+        assertSnapshot(new MappedDataStorageImpl(dataFile.toString(), backupFile.toString()).load());
+    }
+
+    private static int overlaySize(Map<Integer, Product> products) {
+        try {
+            Field field = MappedProductMap.class.getDeclaredField("overlay");
+            field.setAccessible(true);
+            return ((Map<?, ?>) field.get(products)).size();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static AppData sample() {
+        AppData data = new AppData();
+        PRODUCTS.forEach(p -> data.getProducts().put(p.getId(), p));
+        USERS.forEach(u -> data.getUsers().put(u.getUsername(), u));
+        data.getAuditRecords().addAll(AUDIT);
+        data.setNextProductId(13);
+        return data;
+    }
+
+    private static Path writeSample(Path file) throws IOException {
+        BinarySnapshotCodec.write(sample(), file);
+        return file;
+    }
+
+    static void assertSnapshot(AppData data) {
+        assertEquals(13, data.getNextProductId());
+        assertEquals(PRODUCTS.size(), data.getProducts().size());
+        for (Product expected : PRODUCTS) {
+            Product actual = data.getProducts().get(expected.getId());
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getBrand(), actual.getBrand());
+            assertEquals(expected.getPrice(), actual.getPrice());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getCreatedDate(), actual.getCreatedDate());
+            assertEquals(expected.getModifiedDate(), actual.getModifiedDate());
+        }
+        assertNull(data.getProducts().get(5));
+        for (User user : USERS) {
+            assertEquals(user.getPasswordHash(), data.getUsers().get(user.getUsername()).getPasswordHash());
+        }
+        assertEquals(AUDIT.size(), data.getAuditRecords().size());
+        for (int i = 0; i < AUDIT.size(); i++) {
+            AuditRecord expected = AUDIT.get(i);
+            AuditRecord actual = data.getAuditRecords().get(i);
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getUsername(), actual.getUsername());
+            assertEquals(expected.getAction(), actual.getAction());
+            assertEquals(expected.getDetails(), actual.getDetails());
+        }
+    }
+
+    /**
+     * Записывает {@code patch} в копию снимка, пересчитывает контрольную сумму и проверяет, что оба способа
+     * чтения завершаются {@link IOException}.
+     */
+    private static void assertCorrupt(Path file, byte[] original, int position, byte[] patch) throws IOException {
+        byte[] bytes = original.clone();
+        System.arraycopy(patch, 0, bytes, position, patch.length);
+        int checksumAt = bytes.length - 8;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, checksumAt);
+        ByteBuffer.wrap(bytes).putInt(checksumAt, (int) crc.getValue());
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> BinarySnapshotCodec.read(file), "позиция " + position);
+        assertThrows(IOException.class, () -> BinarySnapshotCodec.map(file), "позиция " + position);
+    }
+
+    /**
+     * Снимок прежней версии: 1 — категории и бренды обычными строковыми колонками, 2 — словарём;
+     * обе без контрольной суммы. Писателей этих версий больше нет, поэтому файл собирается по описанию формата.
+     */
+    private static void writeLegacy(Path file, int version) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(BinarySnapshotCodec.MAGIC);
+            out.writeInt(version);
+            out.writeInt(13);
+
+            out.writeInt(PRODUCTS.size());
+            for (Product p : PRODUCTS) {
+                out.writeInt(p.getId());
+            }
+            for (Product p : PRODUCTS) {
+                out.writeDouble(p.getPrice());
+            }
+            writeDateTimes(out, PRODUCTS.stream().map(Product::getCreatedDate).toList());
+            writeDateTimes(out, PRODUCTS.stream().map(Product::getModifiedDate).toList());
+            writeStrings(out, PRODUCTS.stream().map(Product::getName).toList());
+            List<String> categories = PRODUCTS.stream().map(Product::getCategory).toList();
+            List<String> brands = PRODUCTS.stream().map(Product::getBrand).toList();
+            if (version == BinarySnapshotCodec.VERSION_PLAIN_STRINGS) {
+                writeStrings(out, categories);
+                writeStrings(out, brands);
+            } else {
+                writeDictionary(out, categories);
+                writeDictionary(out, brands);
+            }
+            writeStrings(out, PRODUCTS.stream().map(Product::getDescription).toList());
+
+            out.writeInt(USERS.size());
+            writeStrings(out, USERS.stream().map(User::getUsername).toList());
+            writeStrings(out, USERS.stream().map(User::getPasswordHash).toList());
+
+            out.writeInt(AUDIT.size());
+            writeDateTimes(out, AUDIT.stream().map(AuditRecord::getTimestamp).toList());
+            for (AuditRecord record : AUDIT) {
+                out.writeByte(record.getAction().ordinal());
+            }
+            writeStrings(out, AUDIT.stream().map(AuditRecord::getUsername).toList());
+            writeStrings(out, AUDIT.stream().map(AuditRecord::getDetails).toList());
+
+            out.writeInt(BinarySnapshotCodec.END_MAGIC);
+        }
+    }
+
+    private static void writeDateTimes(DataOutputStream out, List<LocalDateTime> values) throws IOException {
+        for (LocalDateTime value : values) {
+            out.writeLong(value == null ? Long.MIN_VALUE : value.toEpochSecond(ZoneOffset.UTC));
+        }
+        for (LocalDateTime value : values) {
+            out.writeInt(value == null ? 0 : value.getNano());
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        List<byte[]> encoded = new ArrayList<>();
+        int offset = 0;
+        out.writeInt(offset);
+        for (String value : values) {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            offset += bytes.length;
+            out.writeInt(offset);
+        }
+        for (String value : values) {
+            out.writeByte(value == null ? 1 : 0);
+        }
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    private static void writeDictionary(DataOutputStream out, List<String> values) throws IOException {
+        Map<String, Integer> codes = new LinkedHashMap<>();
+        for (String value : values) {
+            if (value != null) {
+                codes.putIfAbsent(value, codes.size());
+            }
+        }
+        out.writeInt(codes.size());
+        writeStrings(out, new ArrayList<>(codes.keySet()));
+        for (String value : values) {
+            out.writeInt(value == null ? -1 : codes.get(value));
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, boolean last) {
+        int found = -1;
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + pattern.length, pattern, 0, pattern.length)) {
+                found = i;
+                if (!last) {
+                    break;
+                }
+            }
+        }
+        if (found < 0) {
+            throw new AssertionError("образец не найден");
+        }
+        return found;
+    }
+}
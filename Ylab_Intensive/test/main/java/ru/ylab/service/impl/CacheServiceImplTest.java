@@ -0,0 +1,91 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.CacheEntry;
+import main.java.ru.ylab.model.CacheRefreshPolicy;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.service.CacheService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CacheServiceImplTest {
+
+    private static final long TTL = 60_000;
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        CacheService cache = new CacheServiceImpl(TTL, 3);
+        cache.put("a", List.of(), CacheDependency.any());
+        cache.put("b", List.of(), CacheDependency.any());
+        cache.put("c", List.of(), CacheDependency.any());
+        assertNotNull(cache.get("a"));
+        cache.put("d", List.of(), CacheDependency.any());
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+    }
+
+    @Test
+    void weightBudgetEvictsEldestEntries() {
+        List<Product> one = List.of(product(1));
+        List<Product> two = List.of(product(1), product(2));
+        long budget = CacheEntry.estimateWeight(one) + CacheEntry.estimateWeight(two);
+        CacheService cache = new CacheServiceImpl(TTL, 100, budget, CacheRefreshPolicy.DISABLED);
+
+        cache.put("one", one, CacheDependency.any());
+        cache.put("two", two, CacheDependency.any());
+        assertEquals(budget, cache.getWeightBytes());
+
+        cache.put("three", one, CacheDependency.any());
+        assertNull(cache.get("one"));
+        assertEquals(2, cache.size());
+        assertEquals(budget, cache.getWeightBytes());
+
+        // Замена записи учитывает вес прежнего значения
+        cache.put("two", one, CacheDependency.any());
+        assertEquals(2 * CacheEntry.estimateWeight(one), cache.getWeightBytes());
+    }
+
+    @Test
+    void invalidationReleasesWeight() {
+        List<Product> data = List.of(product(1));
+        CacheService cache = new CacheServiceImpl(TTL, 100, 10 * CacheEntry.estimateWeight(data),
+                CacheRefreshPolicy.DISABLED);
+        cache.put("electronics", data, CacheDependency.category("Electronics"));
+        cache.put("home", data, CacheDependency.category("Home"));
+
+        cache.invalidateAffected(product(1));
+        assertNull(cache.get("electronics"));
+        assertNotNull(cache.get("home"));
+        assertEquals(CacheEntry.estimateWeight(data), cache.getWeightBytes());
+
+        cache.invalidate("home");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightBytes());
+    }
+
+    @Test
+    void entryHeavierThanBudgetIsNotStored() {
+        List<Product> light = List.of(product(1));
+        List<Product> heavy = List.of(product(1), product(2), product(3));
+        CacheService cache = new CacheServiceImpl(TTL, 100, CacheEntry.estimateWeight(light),
+                CacheRefreshPolicy.DISABLED);
+        cache.put("key", light, CacheDependency.any());
+        cache.put("key", heavy, CacheDependency.any());
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getWeightBytes());
+    }
+
+    private static Product product(int id) {
+        return new Product(id, "Товар " + id, "Electronics", "Lenovo", 100.0 * id, "описание " + id);
+    }
+}
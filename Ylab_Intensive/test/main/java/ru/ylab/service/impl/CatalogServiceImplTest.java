@@ -0,0 +1,44 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogServiceImplTest {
+
+    @Test
+    void updateInvalidatesWithStoredVersions() {
+        List<Product> invalidated = new ArrayList<>();
+        CacheServiceImpl cache = new CacheServiceImpl(60_000, 100) {
+            @Override
+            public void invalidateAffected(Product product) {
+                invalidated.add(product);
+                super.invalidateAffected(product);
+            }
+        };
+        AppData data = new AppData();
+        CatalogServiceImpl catalog = new CatalogServiceImpl(new ProductRepository(data),
+                new AuditServiceImpl(data), cache);
+        Product added = catalog.addProduct("admin", "Ноутбук", "Electronics", "Lenovo", 999.0, null);
+        assertTrue(catalog.filterByPriceRange(1500, 2000).isEmpty()); // пустой результат закэширован
+
+        invalidated.clear();
+        assertTrue(catalog.updateProduct("admin", added.getId(), "Ноутбук", "Electronics", "Lenovo", 1799.0, "новая цена"));
+
+        assertEquals(2, invalidated.size());
+        assertEquals(999.0, invalidated.get(0).getPrice());
+        Product current = invalidated.get(1);
+        assertEquals(added.getId(), current.getId());
+        assertEquals(1799.0, current.getPrice());
+        assertEquals(added.getCreatedDate(), current.getCreatedDate());
+        // Закэшированный пустой результат для нового диапазона цен сброшен
+        assertEquals(List.of(added.getId()), catalog.filterByPriceRange(1500, 2000).stream().map(Product::getId).toList());
+    }
+}
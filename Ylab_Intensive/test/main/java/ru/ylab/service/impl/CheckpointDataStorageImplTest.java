@@ -0,0 +1,185 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.User;
+import main.java.ru.ylab.model.enums.Action;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointDataStorageImplTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void changesSurviveCrashAfterCheckpoint() throws Exception {
+        // Порог — ровно четыре помеченных изменения примера: контрольная точка пишется после последнего
+        AppData data = storage(60_000, 4).load();
+        applySampleChanges(data);
+        awaitCheckpoint(1);
+
+        // Первый экземпляр не сохраняется и не закрывается — как при аварийном завершении
+        AppData restored = storage(60_000, 1_000_000).load();
+        assertSampleChanges(restored);
+        assertEquals(3, restored.getNextProductId(), "id удалённого товара не выдаётся повторно");
+    }
+
+    @Test
+    void saveFoldsCheckpointsIntoSnapshot() throws Exception {
+        CheckpointDataStorageImpl storage = storage(60_000, 1_000_000);
+        AppData data = storage.load();
+        applySampleChanges(data);
+        storage.save(data);
+
+        assertTrue(Files.exists(dir.resolve("snapshot.1.bin")));
+        assertTrue(checkpoints().isEmpty(), "вошедшие в снимок контрольные точки удалены");
+
+        AppData restored = storage(60_000, 1_000_000).load();
+        assertSampleChanges(restored);
+    }
+
+    @Test
+    void checkpointCoveredBySnapshotIsNotReplayed() throws Exception {
+        CheckpointDataStorageImpl storage = storage(60_000, 1_000_000);
+        AppData data = storage.load();
+        applySampleChanges(data);
+        storage.save(data);
+
+        // Контрольная точка 1 осталась после сбоя до удаления: она уже вошла в снимок 1
+        Product ghost = new Product(99, "Призрак", "Home", "None", 1.0, null);
+        Files.write(dir.resolve("marketplace_checkpoint_00000001.log"),
+                JournalCodec.frames(List.of(JournalCodec.productSaved(ghost))).array());
+
+        AppData restored = storage(60_000, 1_000_000).load();
+        assertSampleChanges(restored);
+        assertNull(restored.getProducts().get(99));
+        assertTrue(checkpoints().isEmpty());
+    }
+
+    @Test
+    void unreadableSnapshotStopsStartup() throws Exception {
+        CheckpointDataStorageImpl storage = storage(60_000, 1_000_000);
+        AppData data = storage.load();
+        applySampleChanges(data);
+        storage.save(data);
+        Path snapshot = dir.resolve("snapshot.1.bin");
+        Files.write(snapshot, Arrays.copyOf(Files.readAllBytes(snapshot), 20));
+
+        assertThrows(IllegalStateException.class, () -> storage(60_000, 1_000_000).load());
+    }
+
+    @Test
+    void auditBurstDuringSnapshotsIsStoredOnce() throws Exception {
+        // Контрольная точка каждые 50 изменений и снимок каждые 2 точки — много срезов во время записи
+        CheckpointDataStorageImpl storage = new CheckpointDataStorageImpl(dir.resolve("snapshot.bin").toString(),
+                5, 50, 2);
+        AppData data = storage.load();
+        int threads = 4;
+        int perThread = 2000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    data.addAuditRecords(List.of(new AuditRecord("user" + thread, Action.values()[0], thread + ":" + i)));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long writerThreads = countWriterThreads();
+
+        // Повторная загрузка сбрасывает очередь и читает снимок с контрольными точками с диска
+        AppData restored = storage.load();
+        assertEquals(writerThreads, countWriterThreads(), "повторная загрузка не запускает второй поток записи");
+
+        Set<String> details = new HashSet<>();
+        for (AuditRecord record : restored.getAuditRecords()) {
+            details.add(record.getDetails());
+        }
+        assertEquals(threads * perThread, restored.getAuditRecords().size());
+        assertEquals(threads * perThread, details.size());
+    }
+
+    private CheckpointDataStorageImpl storage(long flushIntervalMillis, int dirtyThreshold) {
+        return new CheckpointDataStorageImpl(dir.resolve("snapshot.bin").toString(),
+                flushIntervalMillis, dirtyThreshold, 1_000);
+    }
+
+    /**
+     * Изменения, которые сервисы публикуют через {@link AppData}.
+     */
+    private static void applySampleChanges(AppData data) {
+        Product laptop = new Product(1, "Ноутбук", "Electronics", "Lenovo", 999.0, "14 дюймов");
+        Product mug = new Product(2, "Кружка", "Home", "Ikea", 5.0, null);
+        Product updated = new Product(1, "Ноутбук", "Electronics", "Lenovo", 899.0, "скидка");
+        User user = new User("admin", "hash");
+
+        data.getProducts().put(1, laptop);
+        data.fireProductSaved(laptop);
+        data.getProducts().put(2, mug);
+        data.fireProductSaved(mug);
+        data.getProducts().put(1, updated);
+        data.fireProductSaved(updated);
+        data.getProducts().remove(2);
+        data.fireProductDeleted(2);
+        data.getUsers().put(user.getUsername(), user);
+        data.fireUserSaved(user);
+        data.addAuditRecords(List.of(new AuditRecord("admin", Action.values()[0], "вход")));
+        data.setNextProductId(3);
+    }
+
+    private static void assertSampleChanges(AppData data) {
+        assertEquals(899.0, data.getProducts().get(1).getPrice());
+        assertEquals("скидка", data.getProducts().get(1).getDescription());
+        assertNull(data.getProducts().get(2));
+        assertEquals("hash", data.getUsers().get("admin").getPasswordHash());
+        assertEquals(1, data.getAuditRecords().size());
+        assertEquals("вход", data.getAuditRecords().get(0).getDetails());
+    }
+
+    /**
+     * Ждёт, пока фоновый поток запишет контрольную точку с заданным номером.
+     */
+    private void awaitCheckpoint(long sequence) throws InterruptedException {
+        Path checkpoint = dir.resolve(String.format("marketplace_checkpoint_%08d.log", sequence));
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!Files.exists(checkpoint)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("контрольная точка не записана: " + checkpoint);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private List<Path> checkpoints() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("marketplace_checkpoint_")).toList();
+        }
+    }
+
+    private static long countWriterThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("checkpoint-writer"))
+                .count();
+    }
+}
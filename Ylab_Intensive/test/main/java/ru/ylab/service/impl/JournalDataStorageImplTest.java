@@ -0,0 +1,209 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.AuditRecord;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.model.User;
+import main.java.ru.ylab.model.enums.Action;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalDataStorageImplTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void changesSurviveCrashWithoutSave() throws Exception {
+        AppData data = storage(1000).load();
+        List<byte[]> written = applySampleChanges(data);
+        awaitSize(dir.resolve("journal.log"), JournalCodec.frames(written).remaining());
+
+        // Первый экземпляр не сохраняется и не закрывается — как при аварийном завершении
+        AppData restored = storage(1000).load();
+        assertSampleChanges(restored);
+        assertEquals(3, restored.getNextProductId(), "id удалённого товара не выдаётся повторно");
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws Exception {
+        AppData data = storage(1000).load();
+        List<byte[]> written = applySampleChanges(data);
+        Path journal = dir.resolve("journal.log");
+        long valid = JournalCodec.frames(written).remaining();
+        awaitSize(journal, valid);
+
+        byte[] frame = JournalCodec.frames(List.of(JournalCodec.productDeleted(1))).array();
+        Files.write(journal, Arrays.copyOf(frame, frame.length - 2), StandardOpenOption.APPEND);
+
+        AppData restored = storage(1000).load();
+        assertSampleChanges(restored);
+        assertEquals(valid, Files.size(journal));
+    }
+
+    @Test
+    void compactionStartsNewEpochAndIgnoresStaleJournal() throws Exception {
+        JournalDataStorageImpl storage = storage(1000);
+        AppData data = storage.load();
+        applySampleChanges(data);
+        storage.save(data);
+        assertTrue(Files.exists(dir.resolve("snapshot.1.bin")));
+        assertFalse(Files.exists(dir.resolve("journal.log")));
+
+        // Журнал прошлой эпохи остался после сбоя: он уже вошёл в снимок и не должен применяться
+        Product ghost = new Product(99, "Призрак", "Home", "None", 1.0, null);
+        Files.write(dir.resolve("journal.log"), JournalCodec.frames(List.of(JournalCodec.productSaved(ghost))).array());
+
+        AppData restored = storage(1000).load();
+        assertSampleChanges(restored);
+        assertNull(restored.getProducts().get(99));
+        assertFalse(Files.exists(dir.resolve("journal.log")));
+    }
+
+    @Test
+    void crashBeforeSnapshotRenameKeepsJournal() throws Exception {
+        JournalDataStorageImpl storage = storage(1000);
+        AppData data = storage.load();
+        applySampleChanges(data);
+        storage.save(data);
+
+        Product late = new Product(5, "Поздний", "Home", "Brand", 3.0, "после снимка");
+        data.getProducts().put(5, late);
+        data.fireProductSaved(late);
+        awaitSize(dir.resolve("journal.1.log"), JournalCodec.frames(List.of(JournalCodec.productSaved(late))).remaining());
+
+        // Сжатие оборвалось: новый журнал создан, снимок ещё не переименован
+        Files.write(dir.resolve("snapshot.2.bin.tmp"), new byte[]{1, 2, 3});
+        Files.createFile(dir.resolve("journal.2.log"));
+
+        AppData restored = storage(1000).load();
+        assertSampleChanges(restored);
+        assertEquals("после снимка", restored.getProducts().get(5).getDescription());
+        assertEquals(6, restored.getNextProductId());
+    }
+
+    @Test
+    void unreadableSnapshotStopsStartup() throws Exception {
+        JournalDataStorageImpl storage = storage(1000);
+        AppData data = storage.load();
+        applySampleChanges(data);
+        storage.save(data);
+        Path snapshot = dir.resolve("snapshot.1.bin");
+        Files.write(snapshot, Arrays.copyOf(Files.readAllBytes(snapshot), 20));
+
+        assertThrows(IllegalStateException.class, () -> storage(1000).load());
+    }
+
+    @Test
+    void auditBurstDuringCompactionIsStoredOnce() throws Exception {
+        JournalDataStorageImpl storage = storage(50); // сжатие каждые 50 записей — много срезов во время записи
+        AppData data = storage.load();
+        int threads = 4;
+        int perThread = 2000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    data.addAuditRecords(List.of(new AuditRecord("user" + thread, Action.values()[0], thread + ":" + i)));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long writerThreads = countWriterThreads();
+
+        // Повторная загрузка дописывает очередь и читает снимок с журналом с диска
+        AppData restored = storage.load();
+        assertEquals(writerThreads, countWriterThreads(), "повторная загрузка не запускает второй поток записи");
+
+        Set<String> details = new HashSet<>();
+        for (AuditRecord record : restored.getAuditRecords()) {
+            details.add(record.getDetails());
+        }
+        assertEquals(threads * perThread, restored.getAuditRecords().size());
+        assertEquals(threads * perThread, details.size());
+    }
+
+    private JournalDataStorageImpl storage(int compactionThreshold) {
+        return new JournalDataStorageImpl(dir.resolve("snapshot.bin").toString(),
+                dir.resolve("journal.log").toString(), compactionThreshold);
+    }
+
+    /**
+     * Изменения, которые сервисы публикуют через {@link AppData}.
+     *
+     * @return записи журнала, которые должны появиться на диске
+     */
+    private static List<byte[]> applySampleChanges(AppData data) {
+        Product laptop = new Product(1, "Ноутбук", "Electronics", "Lenovo", 999.0, "14 дюймов");
+        Product mug = new Product(2, "Кружка", "Home", "Ikea", 5.0, null);
+        Product updated = new Product(1, "Ноутбук", "Electronics", "Lenovo", 899.0, "скидка");
+        User user = new User("admin", "hash");
+        AuditRecord audit = new AuditRecord("admin", Action.values()[0], "вход");
+
+        data.getProducts().put(1, laptop);
+        data.fireProductSaved(laptop);
+        data.getProducts().put(2, mug);
+        data.fireProductSaved(mug);
+        data.getProducts().put(1, updated);
+        data.fireProductSaved(updated);
+        data.getProducts().remove(2);
+        data.fireProductDeleted(2);
+        data.getUsers().put(user.getUsername(), user);
+        data.fireUserSaved(user);
+        data.addAuditRecords(List.of(audit));
+        data.setNextProductId(3);
+
+        return List.of(JournalCodec.productSaved(laptop), JournalCodec.productSaved(mug),
+                JournalCodec.productSaved(updated), JournalCodec.productDeleted(2),
+                JournalCodec.userSaved(user), JournalCodec.auditRecorded(audit));
+    }
+
+    private static void assertSampleChanges(AppData data) {
+        assertEquals(899.0, data.getProducts().get(1).getPrice());
+        assertEquals("скидка", data.getProducts().get(1).getDescription());
+        assertNull(data.getProducts().get(2));
+        assertEquals("hash", data.getUsers().get("admin").getPasswordHash());
+        assertEquals(1, data.getAuditRecords().size());
+        assertEquals("вход", data.getAuditRecords().get(0).getDetails());
+    }
+
+    /**
+     * Ждёт, пока фоновый поток допишет журнал до заданной длины.
+     */
+    static void awaitSize(Path file, long size) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!Files.exists(file) || Files.size(file) < size) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("журнал не записан: " + file);
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(size, Files.size(file));
+    }
+
+    private static long countWriterThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("journal-writer"))
+                .count();
+    }
+}
@@ -0,0 +1,53 @@
+package main.java.ru.ylab.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MpscRingBufferTest {
+
+    @Test
+    void wrapsAroundPreservingOrder() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        List<Integer> batch = new ArrayList<>();
+        int next = 0;
+        int expected = 0;
+        // Каждый круг сдвигает начало на 3 ячейки, поэтому за 1000 кругов индексы много раз переходят через конец кольца
+        for (int round = 0; round < 1000; round++) {
+            while (buffer.offer(next)) {
+                next++;
+            }
+            assertEquals(4, next - expected, "заполненный буфер вмещает ровно свою ёмкость");
+
+            batch.clear();
+            assertEquals(3, buffer.drainTo(batch, 3));
+            for (int value : batch) {
+                assertEquals(expected++, value);
+            }
+            assertFalse(buffer.isEmpty());
+        }
+
+        batch.clear();
+        assertEquals(1, buffer.drainTo(batch, Integer.MAX_VALUE));
+        for (int value : batch) {
+            assertEquals(expected++, value);
+        }
+        assertTrue(buffer.isEmpty());
+        assertEquals(next, buffer.claimed());
+    }
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        MpscRingBuffer<String> buffer = new MpscRingBuffer<>(5);
+        int accepted = 0;
+        while (buffer.offer("x")) {
+            accepted++;
+        }
+        assertEquals(8, accepted);
+    }
+}
@@ -0,0 +1,100 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.CacheEntry;
+import main.java.ru.ylab.model.CacheRefreshPolicy;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.service.CacheService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedCacheServiceImplTest {
+
+    private static final long TTL = 60_000;
+
+    @Test
+    void sizeNeverExceedsMaxSize() {
+        CacheService cache = new ShardedCacheServiceImpl(TTL, 100, 16);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, List.of(), CacheDependency.any());
+            assertTrue(cache.size() <= 100, "записей больше maxSize: " + cache.size());
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void maxSizeBelowShardCountIsRespected() {
+        CacheService cache = new ShardedCacheServiceImpl(TTL, 5, 16);
+        for (int i = 0; i < 50; i++) {
+            cache.put("key" + i, List.of(), CacheDependency.any());
+        }
+        assertEquals(5, cache.size());
+        assertNotNull(cache.get("key49"), "только что добавленная запись не вытесняется");
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws InterruptedException {
+        CacheService cache = new ShardedCacheServiceImpl(TTL, 3, 1);
+        put(cache, "a");
+        put(cache, "b");
+        put(cache, "c");
+        assertNotNull(cache.get("a"));
+        Thread.sleep(1);
+        put(cache, "d");
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+    }
+
+    @Test
+    void weightBudgetIsSharedAcrossShards() {
+        List<Product> data = List.of(product(1));
+        long entryWeight = CacheEntry.estimateWeight(data);
+        CacheService cache = new ShardedCacheServiceImpl(TTL, 100, 2 * entryWeight, 16, CacheRefreshPolicy.DISABLED);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, data, CacheDependency.any());
+            assertTrue(cache.getWeightBytes() <= cache.getMaxWeightBytes());
+        }
+        assertEquals(2, cache.size());
+        assertEquals(2 * entryWeight, cache.getWeightBytes());
+        assertNotNull(cache.get("key9"));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightBytes());
+    }
+
+    @Test
+    void entryHeavierThanBudgetReplacesNothing() {
+        List<Product> light = List.of(product(1));
+        List<Product> heavy = List.of(product(1), product(2), product(3));
+        CacheService cache = new ShardedCacheServiceImpl(TTL, 100, CacheEntry.estimateWeight(light) + 1, 4,
+                CacheRefreshPolicy.DISABLED);
+        cache.put("other", light, CacheDependency.any());
+        cache.put("key", light, CacheDependency.any());
+        cache.invalidate("other");
+        cache.put("key", heavy, CacheDependency.any());
+
+        // Прежнее значение удалено: иначе кэш отдавал бы устаревший результат
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightBytes());
+    }
+
+    private static void put(CacheService cache, String key) throws InterruptedException {
+        cache.put(key, List.of(), CacheDependency.any());
+        Thread.sleep(1); // разное время обращения у соседних записей
+    }
+
+    private static Product product(int id) {
+        return new Product(id, "Товар " + id, "Electronics", "Lenovo", 100.0 * id, "описание " + id);
+    }
+}
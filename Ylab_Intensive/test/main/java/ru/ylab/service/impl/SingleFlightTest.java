@@ -0,0 +1,103 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final Product BOOK = new Product(1, "Книга", "Books", "Acme", 10.0, null);
+    private static final Product GAME = new Product(2, "Игра", "Games", "Acme", 20.0, null);
+
+    @Test
+    void loadInvalidatedWhileRunningIsReturnedButNotStored() throws Exception {
+        SingleFlight flights = new SingleFlight();
+        BlockedLoader loader = new BlockedLoader(List.of(BOOK));
+        List<List<Product>> stored = new ArrayList<>();
+
+        CompletableFuture<List<Product>> first = CompletableFuture.supplyAsync(
+                () -> flights.load("books", CacheDependency.category("Books"), loader, stored::add));
+        loader.awaitStarted();
+        flights.invalidateAffected(BOOK); // каталог изменился после начала чтения
+        loader.release();
+
+        assertEquals(List.of(BOOK), first.get(10, TimeUnit.SECONDS));
+        assertTrue(stored.isEmpty(), "результат, прочитанный до изменения, не сохраняется");
+    }
+
+    @Test
+    void unrelatedInvalidationDoesNotCancelStore() throws Exception {
+        SingleFlight flights = new SingleFlight();
+        BlockedLoader loader = new BlockedLoader(List.of(BOOK));
+        List<List<Product>> stored = new ArrayList<>();
+
+        CompletableFuture<List<Product>> load = CompletableFuture.supplyAsync(
+                () -> flights.load("books", CacheDependency.category("Books"), loader, stored::add));
+        loader.awaitStarted();
+        flights.invalidateAffected(GAME);
+        flights.invalidate("games");
+        loader.release();
+
+        load.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(List.of(BOOK)), stored);
+    }
+
+    @Test
+    void cacheDoesNotKeepResultOfLoadInvalidatedMidway() throws Exception {
+        CacheServiceImpl cache = new CacheServiceImpl(60_000, 10);
+        BlockedLoader loader = new BlockedLoader(List.of(BOOK));
+
+        CompletableFuture<List<Product>> load = CompletableFuture.supplyAsync(
+                () -> cache.get("books", CacheDependency.category("Books"), loader));
+        loader.awaitStarted();
+        cache.invalidateAll();
+        loader.release();
+
+        assertEquals(List.of(BOOK), load.get(10, TimeUnit.SECONDS));
+        assertNull(cache.get("books"));
+    }
+
+    /**
+     * Загрузчик, который сообщает о начале и ждёт разрешения завершиться.
+     */
+    private static final class BlockedLoader implements Supplier<List<Product>> {
+        private final List<Product> result;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private BlockedLoader(List<Product> result) {
+            this.result = result;
+        }
+
+        @Override
+        public List<Product> get() {
+            started.countDown();
+            try {
+                assertTrue(released.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return result;
+        }
+
+        void awaitStarted() throws InterruptedException {
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
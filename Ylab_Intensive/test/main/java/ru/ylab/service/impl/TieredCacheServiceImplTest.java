@@ -0,0 +1,129 @@
+package main.java.ru.ylab.service.impl;
+
+import main.java.ru.ylab.model.AppData;
+import main.java.ru.ylab.model.CacheDependency;
+import main.java.ru.ylab.model.CacheRefreshPolicy;
+import main.java.ru.ylab.model.Product;
+import main.java.ru.ylab.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TieredCacheServiceImplTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entryEvictedFromL1IsRestoredFromL2() {
+        ProductRepository repository = repository();
+        TieredCacheServiceImpl cache = tiered(repository, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Product> books = cache.get("books", CacheDependency.category("Books"), counting(loads, repository, "Books"));
+        cache.get("games", CacheDependency.category("Games"), counting(loads, repository, "Games")); // вытесняет books из L1
+        List<Product> restored = cache.get("books", CacheDependency.category("Books"), counting(loads, repository, "Books"));
+
+        assertEquals(2, loads.get(), "books восстановлен из L2 без загрузчика");
+        assertEquals(1, cache.getL2Hits());
+        assertEquals(ids(books), ids(restored));
+    }
+
+    @Test
+    void l2SurvivesRestartForUnchangedCatalog() {
+        ProductRepository repository = repository();
+        Path file = dir.resolve("cache.bin");
+        TieredCacheServiceImpl cache = tiered(repository, file);
+        cache.get("books", CacheDependency.category("Books"), () -> repository.findByCategory("Books"));
+        cache.close();
+
+        AtomicInteger loads = new AtomicInteger();
+        TieredCacheServiceImpl restarted = tiered(repository, file);
+        assertEquals(1, restarted.getL2Size());
+        List<Product> books = restarted.get("books", CacheDependency.category("Books"), counting(loads, repository, "Books"));
+        assertEquals(0, loads.get());
+        assertEquals(List.of(1, 3), ids(books));
+
+        // Каталог изменился — файл не применяется
+        repository.add(new Product(0, "Новая книга", "Books", "Acme", 1.0, null));
+        assertEquals(0, tiered(repository, file).getL2Size());
+    }
+
+    @Test
+    void corruptCountDoesNotAllocateAndLeavesL2Empty() throws Exception {
+        ProductRepository repository = repository();
+        Path file = dir.resolve("cache.bin");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x594C4331);
+            out.writeLong(repository.fingerprint());
+            out.writeInt(2);
+            out.writeUTF("books");
+            out.writeLong(0);
+            out.writeObject(CacheDependency.category("Books"));
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeUTF("all");
+            out.writeLong(0);
+            out.writeObject(CacheDependency.any());
+            out.writeInt(Integer.MAX_VALUE); // 8 ГБ вне кучи, если не проверить
+        }
+
+        TieredCacheServiceImpl cache = tiered(repository, file);
+        assertEquals(0, cache.getL2Size());
+        assertEquals(0, cache.getL2Bytes());
+    }
+
+    @Test
+    void unrelatedInvalidationDuringLoadStillFillsL2() {
+        ProductRepository repository = repository();
+        TieredCacheServiceImpl cache = tiered(repository, null);
+        Product game = repository.findById(2).orElseThrow();
+        Product book = repository.findById(1).orElseThrow();
+
+        cache.get("books", CacheDependency.category("Books"), () -> {
+            cache.invalidateAffected(game); // изменение другой категории во время загрузки
+            return repository.findByCategory("Books");
+        });
+        assertEquals(1, cache.getL2Size());
+
+        cache.invalidateAll();
+        cache.get("books", CacheDependency.category("Books"), () -> {
+            List<Product> stale = repository.findByCategory("Books");
+            cache.invalidateAffected(book); // результат мог устареть
+            return stale;
+        });
+        assertEquals(0, cache.getL2Size());
+    }
+
+    private TieredCacheServiceImpl tiered(ProductRepository repository, Path file) {
+        return new TieredCacheServiceImpl(new CacheServiceImpl(60_000, 1), repository, 1024 * 1024,
+                CacheRefreshPolicy.DISABLED, file);
+    }
+
+    private static ProductRepository repository() {
+        ProductRepository repository = new ProductRepository(new AppData());
+        repository.add(new Product(0, "Книга", "Books", "Acme", 10.0, null));
+        repository.add(new Product(0, "Игра", "Games", "Acme", 20.0, null));
+        repository.add(new Product(0, "Ещё книга", "Books", "Acme", 30.0, null));
+        return repository;
+    }
+
+    private static Supplier<List<Product>> counting(AtomicInteger loads, ProductRepository repository, String category) {
+        return () -> {
+            loads.incrementAndGet();
+            return repository.findByCategory(category);
+        };
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getId).toList();
+    }
+}